@@ -15,6 +15,8 @@ import com.blankj.utilcode.util.SpanUtils;
 import com.blankj.utilcode.util.ToastUtils;
 import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.chad.library.adapter.base.viewholder.BaseViewHolder;
+import com.kk.dlnacling.DeviceIndex;
+import com.kk.dlnacling.DlnaClingController;
 import com.kk.dlnacling.DlnaClingObserver;
 import com.kk.dlnacling.UpnpUtil;
 import com.zt.test.R;
@@ -23,8 +25,6 @@ import org.fourthline.cling.model.action.ActionInvocation;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.meta.Device;
 import org.fourthline.cling.model.meta.Service;
-import org.fourthline.cling.registry.DefaultRegistryListener;
-import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.support.avtransport.callback.GetTransportInfo;
 import org.fourthline.cling.support.avtransport.callback.Pause;
 import org.fourthline.cling.support.avtransport.callback.Play;
@@ -33,6 +33,7 @@ import org.fourthline.cling.support.model.TransportInfo;
 import org.fourthline.cling.support.model.TransportState;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -62,33 +63,33 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 play();
             }
         });
-        dlnaClingObserver = new DlnaClingObserver(this, new DefaultRegistryListener() {
-            @Override
-            public void deviceAdded(Registry registry, final Device device) {
-                runOnUiThread(() -> {
-                    devices.add(device);
-                    deviceAdapter.notifyItemInserted(devices.size() - 1);
-                });
-            }
-
-            @Override
-            public void deviceRemoved(Registry registry, final Device device) {
-                runOnUiThread(() -> {
-                    int position = devices.indexOf(device);
-                    devices.remove(device);
-                    deviceAdapter.notifyItemRemoved(position);
-                });
-            }
-        }, this);
+        dlnaClingObserver = new DlnaClingObserver(this, null, this);
         devices = new ArrayList<>();
         deviceAdapter = new DeviceAdapter(dlnaClingObserver, devices);
         rv_device.setAdapter(deviceAdapter);
+        // 设备变化按帧合并，在主线程回调
+        dlnaClingObserver.getDeviceIndex().addListener(diff -> {
+            devices.clear();
+            devices.addAll(diff.getDevices());
+            diff.dispatch(new DeviceIndex.Diff.UpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    deviceAdapter.notifyItemRangeInserted(position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    deviceAdapter.notifyItemRangeRemoved(position, count);
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                    deviceAdapter.notifyItemRangeChanged(position, count);
+                }
+            });
+        });
         deviceAdapter.setOnItemClickListener((adapter, view, position) -> {
-            int tempPosition = -1;
-            Device oldSelectionDevice = dlnaClingObserver.getSelectionDevice();
-            if (oldSelectionDevice != null) {
-                tempPosition = devices.indexOf(oldSelectionDevice);
-            }
+            int tempPosition = dlnaClingObserver.getDeviceIndex().indexOf(dlnaClingObserver.getSelectionDevice());
             dlnaClingObserver.setSelectionDevice(devices.get(position));
             if (tempPosition != -1) adapter.notifyItemChanged(tempPosition);
             adapter.notifyItemChanged(position);
@@ -96,15 +97,20 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         });
     }
 
-    // 投屏
+    // 投屏，本地文件通过内置 http 服务发布
     private void play() {
         String url = urlAdapter.getItem(urlAdapter.getSelection());
-        dlnaClingObserver.autoPlay(url, UpnpUtil.VIDEO_TYPE, new DlnaClingObserver.SimpleExecuteCallback() {
+        DlnaClingController.SimpleExecuteCallback callback = new DlnaClingController.SimpleExecuteCallback() {
             @Override
             public void callback(boolean success) {
                 ToastUtils.showLong("投屏" + (success ? "成功" : "失败"));
             }
-        });
+        };
+        if (url.startsWith("/")) {
+            dlnaClingObserver.autoPlay(new File(url), callback);
+        } else {
+            dlnaClingObserver.autoPlay(url, UpnpUtil.VIDEO_TYPE, callback);
+        }
     }
 
     @Override
@@ -151,7 +157,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 });
                 break;
             case R.id.btn_volumeSub:
-                dlnaClingObserver.setVolume(-1, new DlnaClingObserver.SimpleExecuteCallback() {
+                dlnaClingObserver.setVolume(-1, new DlnaClingController.SimpleExecuteCallback() {
                     @Override
                     public void callback(boolean success) {
                         ToastUtils.showLong("降低音量" + (success ? "成功" : "失败"));
@@ -159,7 +165,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 });
                 break;
             case R.id.btn_volumeAdd:
-                dlnaClingObserver.setVolume(1, new DlnaClingObserver.SimpleExecuteCallback() {
+                dlnaClingObserver.setVolume(1, new DlnaClingController.SimpleExecuteCallback() {
                     @Override
                     public void callback(boolean success) {
                         ToastUtils.showLong("音量增加" + (success ? "成功" : "失败"));
@@ -167,7 +173,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 });
                 break;
             case R.id.btn_seekSub5:
-                dlnaClingObserver.seek(-5, new DlnaClingObserver.SimpleExecuteCallback() {
+                dlnaClingObserver.seek(-5, new DlnaClingController.SimpleExecuteCallback() {
                     @Override
                     public void callback(boolean success) {
                         ToastUtils.showLong("快退" + (success ? "成功" : "失败"));
@@ -175,7 +181,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 });
                 break;
             case R.id.btn_seekAdd5:
-                dlnaClingObserver.seek(5, new DlnaClingObserver.SimpleExecuteCallback() {
+                dlnaClingObserver.seek(5, new DlnaClingController.SimpleExecuteCallback() {
                     @Override
                     public void callback(boolean success) {
                         ToastUtils.showLong("快进" + (success ? "成功" : "失败"));
@@ -1,72 +1,77 @@
-package com.kk.dlnacling;
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.UpnpUtil;
 
-import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.support.model.DIDLObject;
 import org.fourthline.cling.support.model.ProtocolInfo;
 import org.fourthline.cling.support.model.Res;
 import org.fourthline.cling.support.model.item.AudioItem;
 import org.fourthline.cling.support.model.item.ImageItem;
 import org.fourthline.cling.support.model.item.VideoItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
 import org.seamless.util.MimeType;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.util.UUID;
-
-public class UpnpUtil {
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次投屏都会生成的 DIDL-Lite 元数据；原先按 String.format 拼接的实现作为对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DidlBenchmark {
+
+    private static final String URL = "http://192.168.1.23:8192/media/video/3f9a2c?token=a1b2c3d4e5f6&quality=1080p";
+    // 标题需要转义
+    private static final String TITLE = "第 12 集 <预告> & 花絮";
+    private static final String DIDL_LITE_HEADER = "<?xml version=\"1.0\"?>" +
+            "<DIDL-Lite " + "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" " +
+            "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" " + "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\" " +
+            "xmlns:dlna=\"urn:schemas-dlna-org:metadata-1-0/\">";
+    private static final String DIDL_LITE_FOOTER = "</DIDL-Lite>";
 
-    public static UDN uniqueSystemIdentifier(String salt) {
-        StringBuilder systemSalt = new StringBuilder();
-        systemSalt.append(android.os.Build.MODEL);
-        systemSalt.append(android.os.Build.MANUFACTURER);
+    @Param({"0", "1", "2"})
+    int itemType;
 
-        try {
-            byte[] hash = MessageDigest.getInstance("MD5").digest(systemSalt.toString().getBytes());
-            return new UDN(new UUID(new BigInteger(-1, hash).longValue(), salt.hashCode()));
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+    @Benchmark
+    public String pushMediaToRender() {
+        return UpnpUtil.pushMediaToRender(URL, "3f9a2c", TITLE, "01:32:05", itemType);
     }
 
-    public static final int IMAGE_TYPE = 0;
-    public static final int VIDEO_TYPE = 1;
-    public static final int AUDIO_TYPE = 2;
-
-    public static String pushMediaToRender(String url, String id, String name, String duration, int ItemType) {
-        long size = 0;
-        Res res = new Res(new MimeType(ProtocolInfo.WILDCARD, ProtocolInfo.WILDCARD), size, url);
+    @Benchmark
+    public String pushMediaToRenderLegacy() {
+        return legacyPushMediaToRender(URL, "3f9a2c", TITLE, itemType);
+    }
 
+    /**
+     * 原先的 UpnpUtil.pushMediaToRender，不输出时长，也不转义标题
+     */
+    private static String legacyPushMediaToRender(String url, String id, String name, int itemType) {
+        Res res = new Res(new MimeType(ProtocolInfo.WILDCARD, ProtocolInfo.WILDCARD), 0L, url);
         String creator = "unknow";
-        String metadata = null;
-
-        switch (ItemType) {
-            case IMAGE_TYPE:
-                ImageItem imageItem = new ImageItem(id, "0", name, creator, res);
-                metadata = createItemMetadata(imageItem);
-                break;
-            case VIDEO_TYPE:
-                VideoItem videoItem = new VideoItem(id, "0", name, creator, res);
-                metadata = createItemMetadata(videoItem);
-                break;
-            case AUDIO_TYPE:
-                AudioItem audioItem = new AudioItem(id, "0", name, creator, res);
-                metadata = createItemMetadata(audioItem);
-                break;
+        switch (itemType) {
+            case UpnpUtil.IMAGE_TYPE:
+                return legacyCreateItemMetadata(new ImageItem(id, "0", name, creator, res));
+            case UpnpUtil.VIDEO_TYPE:
+                return legacyCreateItemMetadata(new VideoItem(id, "0", name, creator, res));
+            case UpnpUtil.AUDIO_TYPE:
+                return legacyCreateItemMetadata(new AudioItem(id, "0", name, creator, res));
+            default:
+                return null;
         }
-
-        return metadata;
     }
 
-    private static final String DIDL_LITE_FOOTER = "</DIDL-Lite>";
-    private static final String DIDL_LITE_HEADER = "<?xml version=\"1.0\"?>" +
-            "<DIDL-Lite " + "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" " +
-            "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" " + "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\" " +
-            "xmlns:dlna=\"urn:schemas-dlna-org:metadata-1-0/\">";
-
-    private static String createItemMetadata(DIDLObject item) {
+    private static String legacyCreateItemMetadata(DIDLObject item) {
         StringBuilder metadata = new StringBuilder();
         metadata.append(DIDL_LITE_HEADER);
 
@@ -82,36 +87,27 @@ public class UpnpUtil {
         metadata.append(String.format("<upnp:class>%s</upnp:class>", item.getClazz().getValue()));
 
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.getDefault());
-        Date now = new Date();
-        String time = sdf.format(now);
+        String time = sdf.format(new Date());
         metadata.append(String.format("<dc:date>%s</dc:date>", time));
 
         Res res = item.getFirstResource();
         if (res != null) {
-            // protocol info
             String protocolinfo = "";
             ProtocolInfo pi = res.getProtocolInfo();
             if (pi != null) {
                 protocolinfo = String.format("protocolInfo=\"%s:%s:%s:%s\"", pi.getProtocol(), pi.getNetwork(), pi.getContentFormatMimeType(), pi
                         .getAdditionalInfo());
             }
-            // resolution, extra info, not adding yet
             String resolution = "";
             if (res.getResolution() != null && res.getResolution().length() > 0) {
                 resolution = String.format("resolution=\"%s\"", res.getResolution());
             }
-            // duration
             String duration = "";
             if (res.getDuration() != null && res.getDuration().length() > 0) {
                 duration = String.format("duration=\"%s\"", res.getDuration());
             }
-            // res begin
-            //            metadata.append(String.format("<res %s>", protocolinfo)); // no resolution & duration yet
             metadata.append(String.format("<res %s %s %s>", protocolinfo, resolution, duration));
-            // url
-            String url = res.getValue();
-            metadata.append(url);
-            // res end
+            metadata.append(res.getValue());
             metadata.append("</res>");
         }
         metadata.append("</item>");
@@ -0,0 +1,77 @@
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.DesktopUpnpServiceConfiguration;
+import com.kk.dlnacling.DlnaClingController;
+import com.kk.dlnacling.GroupCastOptions;
+import com.kk.dlnacling.GroupCastResult;
+import com.kk.dlnacling.UpnpUtil;
+import com.kk.dlnacling.testing.StubRendererHost;
+import com.kk.dlnacling.testing.StubRendererOptions;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同时投屏到大量模拟渲染器的压测，渲染器有 30±10ms 的处理延迟和 1% 的失败率
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GroupCastBenchmark {
+
+    private static final long TIMEOUT_SECONDS = 60;
+    private static final String URL = "http://192.168.1.23:8192/media/video/3f9a2c?token=a1b2c3d4e5f6&quality=1080p";
+
+    @Param({"10", "100", "300"})
+    int renderers;
+
+    @Param({"4", "32"})
+    int parallelism;
+
+    private StubRendererHost host;
+    private UpnpService upnpService;
+    private DlnaClingController controller;
+    private final List<Device> devices = new ArrayList<>();
+    private GroupCastOptions options;
+
+    @Setup
+    public void setUp() throws Exception {
+        host = new StubRendererHost();
+        host.addRenderers(renderers, new StubRendererOptions()
+                .setLatencyMillis(20)
+                .setJitterMillis(20)
+                .setFailureRate(0.01));
+        upnpService = DesktopUpnpServiceConfiguration.start();
+        controller = new DlnaClingController();
+        controller.initService(upnpService, new DefaultRegistryListener());
+        controller.stopDiscovery();
+        devices.addAll(host.connect(upnpService, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS)));
+        options = new GroupCastOptions().setMaxParallelism(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.stopMaintenance();
+        upnpService.shutdown();
+        host.shutdown();
+    }
+
+    @Benchmark
+    public List<GroupCastResult> autoPlay() throws Exception {
+        return controller.autoPlay(devices, URL, UpnpUtil.VIDEO_TYPE, options).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.ActionExecutors;
+import com.kk.dlnacling.DesktopUpnpServiceConfiguration;
+import com.kk.dlnacling.DlnaClingController;
+import com.kk.dlnacling.UpnpUtil;
+import com.kk.dlnacling.testing.StubRendererHost;
+import com.kk.dlnacling.testing.StubRendererOptions;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.support.model.TransportInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制端到本机模拟渲染器的完整命令往返：SOAP 编码、HTTP、渲染器执行、响应解析。
+ * actionExecutor 对比命令执行方式：cling 的 dlna-control 线程池、固定线程池、JDK 21 的虚拟线程。
+ * <p>
+ * 构建使用的 JDK 没有虚拟线程，默认不跑 virtual；需要时用 JDK 21 运行 fork 出的测试进程：
+ * <pre>
+ * ./gradlew :dlnacling-benchmark:jmhJar
+ * java -jar dlnacling-benchmark/build/libs/dlnacling-benchmark-jmh.jar RoundTrip \
+ *         -p actionExecutor=cling,fixed,virtual -jvm /path/to/jdk-21/bin/java
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RoundTripBenchmark {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final String URL = "http://192.168.1.23:8192/media/video/3f9a2c?token=a1b2c3d4e5f6&quality=1080p";
+
+    @Param({"cling", "fixed"})
+    String actionExecutor;
+
+    private StubRendererHost host;
+    private UpnpService upnpService;
+    private DlnaClingController controller;
+    private Device device;
+    private ExecutorService executor;
+    private int volumeStep = 5;
+
+    @Setup
+    public void setUp() throws Exception {
+        host = new StubRendererHost();
+        host.addRenderer("Benchmark Renderer", new StubRendererOptions());
+        upnpService = DesktopUpnpServiceConfiguration.start();
+        controller = new DlnaClingController();
+        switch (actionExecutor) {
+            case "fixed":
+                executor = ActionExecutors.fixed(16);
+                break;
+            case "virtual":
+                executor = ActionExecutors.virtualThreads();
+                if (executor == null) throw new IllegalStateException("Virtual threads need JDK 21+, run the fork with -jvm");
+                break;
+        }
+        controller.setActionExecutor(executor);
+        controller.initService(upnpService, new DefaultRegistryListener());
+        // 渲染器直接按地址添加，不需要搜索
+        controller.stopDiscovery();
+        device = host.connect(upnpService, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS)).get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.stopMaintenance();
+        upnpService.shutdown();
+        host.shutdown();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Benchmark
+    public ActionInvocation autoPlay() throws Exception {
+        return controller.autoPlayAsync(device, URL, UpnpUtil.VIDEO_TYPE).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public ActionInvocation seek() throws Exception {
+        return controller.seekAsync(device, 10).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public ActionInvocation setVolume() throws Exception {
+        // 上下交替，音量不会停在边界
+        volumeStep = -volumeStep;
+        return controller.setVolumeAsync(device, volumeStep).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public TransportInfo getTransportInfoConcurrent() throws Exception {
+        return controller.getTransportInfoAsync(device).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
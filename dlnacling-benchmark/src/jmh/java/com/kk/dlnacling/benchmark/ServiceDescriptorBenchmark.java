@@ -0,0 +1,95 @@
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.DLNAUDA10ServiceDescriptorBinderSAXImpl;
+import com.kk.dlnacling.ServiceDescriptorCache;
+
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceId;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.model.types.UDN;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务描述(SCPD)解析，语料在 resources/scpd，文件名为 服务类型+版本[-说明].xml。
+ * cached=false 时关闭 {@link ServiceDescriptorCache}，测的是 SAX 解析本身
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceDescriptorBenchmark {
+
+    @Param({"AVTransport1.xml", "AVTransport1-vendor.xml", "RenderingControl1.xml", "ConnectionManager1.xml"})
+    String scpd;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    private final DLNAUDA10ServiceDescriptorBinderSAXImpl binder = new DLNAUDA10ServiceDescriptorBinderSAXImpl();
+    private RemoteService undescribed;
+    private String xml;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = readResource("/scpd/" + scpd);
+        int versionIndex = 0;
+        while (!Character.isDigit(scpd.charAt(versionIndex))) versionIndex++;
+        String type = scpd.substring(0, versionIndex);
+        int version = scpd.charAt(versionIndex) - '0';
+
+        RemoteService service = new RemoteService(new UDAServiceType(type, version), new UDAServiceId(type),
+                URI.create("/" + type + "/scpd.xml"), URI.create("/" + type + "/control"), URI.create("/" + type + "/event"));
+        RemoteDeviceIdentity identity = new RemoteDeviceIdentity(UDN.uniqueSystemIdentifier(scpd), 1800,
+                new URL("http://127.0.0.1:49152/description.xml"), null, null);
+        RemoteDevice device = new RemoteDevice(identity, new UDADeviceType("MediaRenderer", 1),
+                new DeviceDetails("Benchmark Renderer"), service);
+        undescribed = device.getServices()[0];
+
+        ServiceDescriptorCache cache = ServiceDescriptorCache.get();
+        cache.clear();
+        cache.setCapacity(cached ? 64 : 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ServiceDescriptorCache.get().setCapacity(64);
+    }
+
+    @Benchmark
+    public RemoteService describe() throws Exception {
+        return binder.describe(undescribed, xml);
+    }
+
+    private static String readResource(String name) throws IOException {
+        InputStream in = ServiceDescriptorBenchmark.class.getResourceAsStream(name);
+        if (in == null) throw new FileNotFoundException(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
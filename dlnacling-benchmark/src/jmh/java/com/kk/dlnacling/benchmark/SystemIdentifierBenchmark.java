@@ -0,0 +1,27 @@
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.UpnpUtil;
+
+import org.fourthline.cling.model.types.UDN;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本机设备 UDN，initService 时计算
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SystemIdentifierBenchmark {
+
+    @Benchmark
+    public UDN uniqueSystemIdentifier() {
+        return UpnpUtil.uniqueSystemIdentifier("GNaP-MediaServer");
+    }
+}
@@ -0,0 +1,53 @@
+package com.kk.dlnacling.benchmark;
+
+import com.kk.dlnacling.TimeCode;
+
+import org.fourthline.cling.model.ModelUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GetPositionInfo 的 RelTime/TrackDuration 解析，进度跟踪时每次取样都会调用；
+ * cling 的 ModelUtil 作为对照，它会丢弃小数部分
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimeCodeBenchmark {
+
+    @Param({"0:42:17", "01:02:03.500", "100:00:00.1/3"})
+    public String time;
+
+    private long millis;
+
+    @Benchmark
+    public long parse() {
+        return TimeCode.parseMillis(time);
+    }
+
+    @Benchmark
+    public long parseModelUtil() {
+        try {
+            return ModelUtil.fromTimeString(time) * 1000;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        return TimeCode.format(millis += 1000);
+    }
+
+    @Benchmark
+    public String formatModelUtil() {
+        return ModelUtil.toTimeString((millis += 1000) / 1000);
+    }
+}
@@ -0,0 +1,80 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 执行投屏命令的线程池，用于 {@link DlnaClingController#setActionExecutor(ExecutorService)}。
+ * <p>
+ * 每个命令在 SOAP 往返期间一直占用线程；在 JDK 21 及以上的服务端同时控制大量设备时，
+ * 使用虚拟线程可以让上千个进行中的命令不占用上千个系统线程
+ */
+public final class ActionExecutors {
+
+    private ActionExecutors() {
+    }
+
+    /**
+     * 可用时使用虚拟线程，否则使用固定大小的线程池
+     *
+     * @param fallbackThreads 没有虚拟线程时的线程数
+     */
+    @NotNull
+    public static ExecutorService create(int fallbackThreads) {
+        ExecutorService executor = virtualThreads();
+        return executor != null ? executor : fixed(fallbackThreads);
+    }
+
+    /**
+     * 每个命令一个虚拟线程，JDK 21 以下及 Android 上返回 null
+     */
+    @Nullable
+    public static ExecutorService virtualThreads() {
+        try {
+            // 按 Java 7 编译，通过反射调用
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 固定大小的线程池，空闲 30 秒后回收线程
+     */
+    @NotNull
+    public static ExecutorService fixed(int threads) {
+        int size = Math.max(1, threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "dlna-action-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
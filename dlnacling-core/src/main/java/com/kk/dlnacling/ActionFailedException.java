@@ -0,0 +1,39 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 投屏命令执行失败，携带与 {@link DlnaClingController.ExecuteCallback#failure} 相同的信息
+ */
+public class ActionFailedException extends Exception {
+
+    @Nullable
+    private final ActionInvocation invocation;
+    @Nullable
+    private final UpnpResponse response;
+
+    public ActionFailedException(@Nullable ActionInvocation invocation, @Nullable UpnpResponse response, String message) {
+        super(message);
+        this.invocation = invocation;
+        this.response = response;
+    }
+
+    /**
+     * 本地前置条件不满足（未选择设备、服务未连接等），没有发出任何请求
+     */
+    public static ActionFailedException precondition(String message) {
+        return new ActionFailedException(null, new UpnpResponse(UpnpResponse.Status.PRECONDITION_FAILED), message);
+    }
+
+    @Nullable
+    public ActionInvocation getInvocation() {
+        return invocation;
+    }
+
+    @Nullable
+    public UpnpResponse getResponse() {
+        return response;
+    }
+}
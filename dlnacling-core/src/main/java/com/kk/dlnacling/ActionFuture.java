@@ -0,0 +1,348 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 投屏命令的异步结果，可组合、限时、取消
+ * <p>
+ * minSdk 低于 24 不能使用 CompletableFuture，这里只实现投屏需要的部分：
+ * 监听 {@link #addListener}、串联 {@link #thenCompose}、超时 {@link #withTimeout}、汇总 {@link #allDone}。
+ * 监听在完成该 future 的线程中回调（通常是 cling 的执行线程）
+ *
+ * @param <T> 结果类型
+ */
+public class ActionFuture<T> implements Future<T> {
+
+    private static final Logger log = Logger.getLogger(ActionFuture.class.getName());
+
+    private boolean mDone;
+    private boolean mCancelled;
+    private T mValue;
+    private Throwable mFailure;
+    private List<Listener<T>> mListeners;
+    private List<Future<?>> mCancelTargets;
+
+    public static <T> ActionFuture<T> completed(T value) {
+        ActionFuture<T> future = new ActionFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    public static <T> ActionFuture<T> failed(@NotNull Throwable failure) {
+        ActionFuture<T> future = new ActionFuture<>();
+        future.fail(failure);
+        return future;
+    }
+
+    public boolean complete(T value) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mDone) return false;
+            mValue = value;
+            mDone = true;
+            listeners = takeListeners();
+        }
+        fire(listeners);
+        return true;
+    }
+
+    public boolean fail(@NotNull Throwable failure) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mDone) return false;
+            mFailure = failure;
+            mDone = true;
+            listeners = takeListeners();
+        }
+        fire(listeners);
+        return true;
+    }
+
+    /**
+     * 取消，同时取消正在执行的 cling 请求以及上下游的 future
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mDone) return false;
+            mCancelled = true;
+            mFailure = new CancellationException("投屏命令已取消");
+            mDone = true;
+            listeners = takeListeners();
+        }
+        cancelTargets(mayInterruptIfRunning);
+        fire(listeners);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    public synchronized boolean isSuccess() {
+        return mDone && mFailure == null;
+    }
+
+    /**
+     * 成功时的结果，未完成或失败时为 null
+     */
+    @Nullable
+    public synchronized T getValue() {
+        return mFailure == null ? mValue : null;
+    }
+
+    /**
+     * 失败原因，取消时为 {@link CancellationException}，超时时为 {@link TimeoutException}
+     */
+    @Nullable
+    public synchronized Throwable getFailure() {
+        return mFailure;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!mDone) wait();
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mDone) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (mCancelled) throw (CancellationException) mFailure;
+        if (mFailure != null) throw new ExecutionException(mFailure);
+        return mValue;
+    }
+
+    /**
+     * 完成后回调，已完成则立即在当前线程回调
+     */
+    public ActionFuture<T> addListener(@NotNull Listener<T> listener) {
+        synchronized (this) {
+            if (!mDone) {
+                if (mListeners == null) mListeners = new ArrayList<>(2);
+                mListeners.add(listener);
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    /**
+     * 兼容原有的回调方式
+     */
+    public ActionFuture<T> addCallback(@Nullable final DlnaClingController.ExecuteCallback callback) {
+        if (callback == null) return this;
+        return addListener(new Listener<T>() {
+            @Override
+            public void onComplete(ActionFuture<T> future) {
+                Throwable failure = future.getFailure();
+                if (failure == null) {
+                    T value = future.getValue();
+                    callback.success(value instanceof ActionInvocation ? (ActionInvocation) value : null);
+                } else if (failure instanceof ActionFailedException) {
+                    ActionFailedException e = (ActionFailedException) failure;
+                    callback.failure(e.getInvocation(), e.getResponse(), e.getMessage());
+                } else if (failure instanceof TimeoutException) {
+                    callback.failure(null, new UpnpResponse(UpnpResponse.Status.PRECONDITION_FAILED), "投屏命令超时");
+                } else {
+                    callback.failure(null, new UpnpResponse(UpnpResponse.Status.PRECONDITION_FAILED), failure.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * 成功后继续执行下一个命令，任一步失败则整体失败；取消返回的 future 会取消正在执行的那一步
+     */
+    public <R> ActionFuture<R> thenCompose(@NotNull final Continuation<? super T, R> continuation) {
+        final ActionFuture<R> next = new ActionFuture<>();
+        next.cancelWith(this);
+        addListener(new Listener<T>() {
+            @Override
+            public void onComplete(ActionFuture<T> future) {
+                Throwable failure = future.getFailure();
+                if (failure != null) {
+                    next.fail(failure);
+                    return;
+                }
+                ActionFuture<R> stage;
+                try {
+                    stage = continuation.then(future.getValue());
+                } catch (Exception e) {
+                    next.fail(e);
+                    return;
+                }
+                next.cancelWith(stage);
+                stage.addListener(new Listener<R>() {
+                    @Override
+                    public void onComplete(ActionFuture<R> future) {
+                        next.completeFrom(future);
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 成功后转换结果
+     */
+    public <R> ActionFuture<R> thenApply(@NotNull final Transform<? super T, ? extends R> transform) {
+        final ActionFuture<R> next = new ActionFuture<>();
+        next.cancelWith(this);
+        addListener(new Listener<T>() {
+            @Override
+            public void onComplete(ActionFuture<T> future) {
+                Throwable failure = future.getFailure();
+                if (failure != null) {
+                    next.fail(failure);
+                    return;
+                }
+                try {
+                    next.complete(transform.apply(future.getValue()));
+                } catch (Exception e) {
+                    next.fail(e);
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 限时，超时后以 {@link TimeoutException} 失败并中断正在执行的请求
+     */
+    public ActionFuture<T> withTimeout(long timeout, @NotNull TimeUnit unit) {
+        if (timeout <= 0 || isDone()) return this;
+        final ScheduledFuture<?> timer = DlnaScheduler.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (fail(new TimeoutException("投屏命令超时"))) cancelTargets(true);
+            }
+        }, timeout, unit);
+        return addListener(new Listener<T>() {
+            @Override
+            public void onComplete(ActionFuture<T> future) {
+                timer.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * 全部完成（无论成功失败）后返回原列表，逐个查看结果；取消会取消全部
+     */
+    public static <T> ActionFuture<List<ActionFuture<T>>> allDone(@NotNull final List<ActionFuture<T>> futures) {
+        final ActionFuture<List<ActionFuture<T>>> all = new ActionFuture<>();
+        if (futures.isEmpty()) {
+            all.complete(futures);
+            return all;
+        }
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (ActionFuture<T> future : futures) {
+            all.cancelWith(future);
+            future.addListener(new Listener<T>() {
+                @Override
+                public void onComplete(ActionFuture<T> future) {
+                    if (remaining.decrementAndGet() == 0) all.complete(futures);
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * 取消或超时时一并取消 target（cling 返回的执行 future 或上下游 future）
+     */
+    void cancelWith(@Nullable Future<?> target) {
+        if (target == null) return;
+        boolean cancelNow;
+        synchronized (this) {
+            cancelNow = mDone && mFailure != null;
+            if (!mDone) {
+                if (mCancelTargets == null) mCancelTargets = new ArrayList<>(2);
+                mCancelTargets.add(target);
+            }
+        }
+        if (cancelNow) target.cancel(true);
+    }
+
+    void completeFrom(ActionFuture<T> source) {
+        Throwable failure = source.getFailure();
+        if (failure == null) complete(source.getValue());
+        else fail(failure);
+    }
+
+    private void cancelTargets(boolean mayInterruptIfRunning) {
+        List<Future<?>> targets;
+        synchronized (this) {
+            targets = mCancelTargets;
+            mCancelTargets = null;
+        }
+        if (targets == null) return;
+        for (Future<?> target : targets) target.cancel(mayInterruptIfRunning);
+    }
+
+    private List<Listener<T>> takeListeners() {
+        notifyAll();
+        List<Listener<T>> listeners = mListeners;
+        mListeners = null;
+        if (mFailure == null) mCancelTargets = null;
+        return listeners;
+    }
+
+    private void fire(@Nullable List<Listener<T>> listeners) {
+        if (listeners == null) return;
+        for (Listener<T> listener : listeners) notifyListener(listener);
+    }
+
+    private void notifyListener(Listener<T> listener) {
+        try {
+            listener.onComplete(this);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "ActionFuture listener failed", e);
+        }
+    }
+
+    public interface Listener<T> {
+        void onComplete(ActionFuture<T> future);
+    }
+
+    public interface Continuation<T, R> {
+        ActionFuture<R> then(T value) throws Exception;
+    }
+
+    public interface Transform<T, R> {
+        R apply(T value) throws Exception;
+    }
+}
@@ -0,0 +1,260 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.controlpoint.ActionCallback;
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.Service;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经 {@link DlnaClingController#execute(ActionCallback)} 发出的每个命令的耗时和结果，按 设备型号、命令名、结果 分组，
+ * 每组一个 {@link LatencyHistogram}。耗时从提交开始计算，包括在线程池中排队的时间
+ * <pre>
+ * for (ActionMetrics.Sample sample : controller.getMetrics().snapshot()) {
+ *     Log.d(TAG, sample.toString());
+ * }
+ * String text = controller.getMetrics().toPrometheus();
+ * </pre>
+ */
+public final class ActionMetrics {
+
+    /**
+     * 分组数上限，超过后新的型号记为 {@link #OTHER_MODEL}，避免局域网中型号过多时无限增长
+     */
+    private static final int MAX_SERIES = 512;
+    static final String OTHER_MODEL = "other";
+    private static final String UNKNOWN = "unknown";
+    /**
+     * Prometheus 直方图的桶上界，秒
+     */
+    private static final double[] PROMETHEUS_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final ConcurrentMap<Key, LatencyHistogram> series = new ConcurrentHashMap<>();
+
+    /**
+     * 命令结果
+     */
+    public enum Outcome {
+        SUCCESS,
+        /**
+         * 设备返回了 UPnP 错误码，如 701 Transition not available
+         */
+        UPNP_ERROR,
+        /**
+         * 设备返回了其他 HTTP 错误
+         */
+        HTTP_ERROR,
+        /**
+         * 连接失败、超时等没有收到响应
+         */
+        NO_RESPONSE
+    }
+
+    /**
+     * 包装回调，成功或失败时记录耗时，再交给原回调
+     */
+    @NotNull
+    ActionCallback instrument(@NotNull final ActionCallback callback) {
+        final ActionInvocation invocation = callback.getActionInvocation();
+        final long start = System.nanoTime();
+        return new ActionCallback(invocation) {
+            @Override
+            public void success(ActionInvocation invocation) {
+                record(invocation, Outcome.SUCCESS, start);
+                callback.success(invocation);
+            }
+
+            @Override
+            public void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg) {
+                record(invocation, outcomeOf(invocation, operation), start);
+                callback.failure(invocation, operation, defaultMsg);
+            }
+        };
+    }
+
+    private void record(ActionInvocation invocation, Outcome outcome, long startNanos) {
+        Service service = invocation.getAction().getService();
+        String model = service == null ? UNKNOWN : modelOf(service.getDevice());
+        record(model, invocation.getAction().getName(), outcome, System.nanoTime() - startNanos);
+    }
+
+    void record(@NotNull String model, @NotNull String action, @NotNull Outcome outcome, long nanos) {
+        Key key = new Key(model, action, outcome);
+        LatencyHistogram histogram = series.get(key);
+        if (histogram == null) {
+            if (series.size() >= MAX_SERIES) key = new Key(OTHER_MODEL, action, outcome);
+            histogram = series.get(key);
+            if (histogram == null) {
+                LatencyHistogram created = new LatencyHistogram();
+                histogram = series.putIfAbsent(key, created);
+                if (histogram == null) histogram = created;
+            }
+        }
+        histogram.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static Outcome outcomeOf(@Nullable ActionInvocation invocation, @Nullable UpnpResponse operation) {
+        if (operation == null) return Outcome.NO_RESPONSE;
+        if (operation.getStatusCode() == UpnpResponse.Status.INTERNAL_SERVER_ERROR.getStatusCode()
+                && invocation != null && invocation.getFailure() != null) {
+            return Outcome.UPNP_ERROR;
+        }
+        return Outcome.HTTP_ERROR;
+    }
+
+    /**
+     * 制造商 + 型号名，取根设备的描述
+     */
+    @NotNull
+    static String modelOf(@Nullable Device device) {
+        if (device == null) return UNKNOWN;
+        DeviceDetails details = device.getRoot().getDetails();
+        if (details == null) return UNKNOWN;
+        String manufacturer = details.getManufacturerDetails() == null ? null : details.getManufacturerDetails().getManufacturer();
+        String modelName = details.getModelDetails() == null ? null : details.getModelDetails().getModelName();
+        if (manufacturer == null && modelName == null) return UNKNOWN;
+        if (manufacturer == null) return modelName;
+        if (modelName == null) return manufacturer;
+        return modelName.startsWith(manufacturer) ? modelName : manufacturer + " " + modelName;
+    }
+
+    /**
+     * 所有分组当前的统计，按型号、命令、结果排序
+     */
+    @NotNull
+    public List<Sample> snapshot() {
+        List<Sample> samples = new ArrayList<>(series.size());
+        for (Map.Entry<Key, LatencyHistogram> entry : series.entrySet()) {
+            Key key = entry.getKey();
+            samples.add(new Sample(key.model, key.action, key.outcome, entry.getValue().snapshot()));
+        }
+        Collections.sort(samples, new Comparator<Sample>() {
+            @Override
+            public int compare(Sample a, Sample b) {
+                int result = a.model.compareTo(b.model);
+                if (result == 0) result = a.action.compareTo(b.action);
+                if (result == 0) result = a.outcome.compareTo(b.outcome);
+                return result;
+            }
+        });
+        return samples;
+    }
+
+    public void reset() {
+        series.clear();
+    }
+
+    /**
+     * Prometheus 文本格式，指标为 dlna_action_duration_seconds(histogram)，
+     * 标签 model、action、outcome。桶按 {@link LatencyHistogram} 的精度统计，边界附近的记录可能计入下一个桶
+     */
+    @NotNull
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP dlna_action_duration_seconds DLNA control action round-trip time\n");
+        out.append("# TYPE dlna_action_duration_seconds histogram\n");
+        for (Sample sample : snapshot()) {
+            String labels = "model=\"" + escapeLabel(sample.model) + "\",action=\"" + escapeLabel(sample.action)
+                    + "\",outcome=\"" + sample.outcome.name().toLowerCase(Locale.US) + "\"";
+            LatencyHistogram.Snapshot histogram = sample.histogram;
+            for (double bound : PROMETHEUS_BUCKETS) {
+                out.append("dlna_action_duration_seconds_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+                        .append(histogram.countAtOrBelow(bound * 1000)).append('\n');
+            }
+            out.append("dlna_action_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                    .append(histogram.getCount()).append('\n');
+            out.append("dlna_action_duration_seconds_sum{").append(labels).append("} ")
+                    .append(histogram.getSumMillis() / 1000).append('\n');
+            out.append("dlna_action_duration_seconds_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * 一个分组的统计
+     */
+    public static final class Sample {
+        private final String model;
+        private final String action;
+        private final Outcome outcome;
+        private final LatencyHistogram.Snapshot histogram;
+
+        Sample(String model, String action, Outcome outcome, LatencyHistogram.Snapshot histogram) {
+            this.model = model;
+            this.action = action;
+            this.outcome = outcome;
+            this.histogram = histogram;
+        }
+
+        /**
+         * 制造商 + 型号名，分组过多时为 other
+         */
+        @NotNull
+        public String getModel() {
+            return model;
+        }
+
+        @NotNull
+        public String getAction() {
+            return action;
+        }
+
+        @NotNull
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        @NotNull
+        public LatencyHistogram.Snapshot getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return model + " " + action + " " + outcome + ": " + histogram;
+        }
+    }
+
+    private static final class Key {
+        final String model;
+        final String action;
+        final Outcome outcome;
+
+        Key(String model, String action, Outcome outcome) {
+            this.model = model;
+            this.action = action;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return model.equals(key.model) && action.equals(key.action) && outcome == key.outcome;
+        }
+
+        @Override
+        public int hashCode() {
+            return (model.hashCode() * 31 + action.hashCode()) * 31 + outcome.hashCode();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 投屏命令的超时、重试和熔断参数
+ *
+ * @see DlnaClingController#setActionPolicy(ActionPolicy)
+ * @see DeviceHealth
+ */
+public class ActionPolicy {
+
+    private boolean adaptiveTimeout = true;
+    private long initialTimeoutMillis = 3000;
+    private long minTimeoutMillis = 1500;
+    private long maxTimeoutMillis = 20000;
+    private int maxRetries = 2;
+    private long baseBackoffMillis = 200;
+    private long maxBackoffMillis = 2000;
+    private int failureThreshold = 3;
+    private long openMillis = 5000;
+    private long maxOpenMillis = 60000;
+    private final Set<String> retryableActions = Collections.synchronizedSet(new HashSet<String>());
+
+    public ActionPolicy() {
+        retryableActions.add("Stop");
+        retryableActions.add("Seek");
+    }
+
+    /**
+     * 按设备、命令的响应时间计算每次请求的超时(SRTT + 4 × RTTVAR)，默认开启。
+     * 只用于 {@link #isRetryable(String) 可重试} 的命令，超时后重发；其他命令和关闭时
+     * 只有 {@link DlnaClingController#setActionTimeout(long)} 的总超时
+     */
+    public ActionPolicy setAdaptiveTimeout(boolean adaptiveTimeout) {
+        this.adaptiveTimeout = adaptiveTimeout;
+        return this;
+    }
+
+    public boolean isAdaptiveTimeout() {
+        return adaptiveTimeout;
+    }
+
+    /**
+     * 还没有响应时间样本时的超时，默认 3s
+     */
+    public ActionPolicy setInitialTimeoutMillis(long initialTimeoutMillis) {
+        this.initialTimeoutMillis = Math.max(1, initialTimeoutMillis);
+        return this;
+    }
+
+    public long getInitialTimeoutMillis() {
+        return initialTimeoutMillis;
+    }
+
+    /**
+     * 自适应超时的范围，默认 1.5s ~ 20s。电视处理 SetAVTransportURI 时可能要先缓冲片源，下限不宜太小
+     */
+    public ActionPolicy setTimeoutRange(long minTimeoutMillis, long maxTimeoutMillis) {
+        this.minTimeoutMillis = Math.max(1, minTimeoutMillis);
+        this.maxTimeoutMillis = Math.max(this.minTimeoutMillis, maxTimeoutMillis);
+        return this;
+    }
+
+    public long getMinTimeoutMillis() {
+        return minTimeoutMillis;
+    }
+
+    public long getMaxTimeoutMillis() {
+        return maxTimeoutMillis;
+    }
+
+    /**
+     * 可重试命令在超时、无响应时最多重试的次数，默认 2，0 表示不重试
+     */
+    public ActionPolicy setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 第 n 次重试前等待 base × 2^(n-1)，不超过 max，再随机取其 50%~100%，默认 200ms ~ 2s
+     */
+    public ActionPolicy setBackoff(long baseBackoffMillis, long maxBackoffMillis) {
+        this.baseBackoffMillis = Math.max(0, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+        return this;
+    }
+
+    public long getBaseBackoffMillis() {
+        return baseBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * 连续多少次超时/无响应后熔断，熔断期间该设备的命令直接失败，默认 3，0 表示不熔断
+     */
+    public ActionPolicy setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(0, failureThreshold);
+        return this;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * 熔断时长，到期后放行一个探测请求，探测失败则时长翻倍，默认 5s，最长 60s
+     */
+    public ActionPolicy setOpenMillis(long openMillis, long maxOpenMillis) {
+        this.openMillis = Math.max(0, openMillis);
+        this.maxOpenMillis = Math.max(this.openMillis, maxOpenMillis);
+        return this;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public long getMaxOpenMillis() {
+        return maxOpenMillis;
+    }
+
+    /**
+     * 增加可重试的命令。默认只有重复执行结果不变的命令可重试：所有 Get*、Stop、Seek；
+     * SetAVTransportURI、Play 等重复发送可能导致重新缓冲，不重试
+     */
+    public ActionPolicy addRetryableAction(@NotNull String actionName) {
+        retryableActions.add(actionName);
+        return this;
+    }
+
+    public ActionPolicy removeRetryableAction(@NotNull String actionName) {
+        retryableActions.remove(actionName);
+        return this;
+    }
+
+    public boolean isRetryable(@NotNull String actionName) {
+        return actionName.startsWith("Get") || retryableActions.contains(actionName);
+    }
+}
@@ -0,0 +1,118 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.types.UDN;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * 按设备缓存 {@link RendererCapabilities}，发现设备时查询一次，投屏前据此选择片源格式，
+ * 开启严格检查后，不支持的格式不再发送 停止、设置片源、播放 命令。
+ * <p>
+ * 按根设备缓存，过期({@link #setTtl(long)})或设备离线后重新查询；同一设备同时只有一个查询请求
+ */
+public class CapabilityCache {
+
+    private static final Logger log = Logger.getLogger(CapabilityCache.class.getName());
+
+    private final DlnaClingController mController;
+    private final Map<UDN, RendererCapabilities> mCapabilities = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UDN, ActionFuture<RendererCapabilities>> mPending = new ConcurrentHashMap<>();
+
+    private volatile long mTtlMillis = 30 * 60 * 1000L;
+    private volatile boolean mStrict;
+
+    CapabilityCache(DlnaClingController controller) {
+        this.mController = controller;
+    }
+
+    /**
+     * 设备能播放的格式，缓存有效时直接返回，否则查询
+     */
+    @NotNull
+    public ActionFuture<RendererCapabilities> get(@NotNull Device device) {
+        RendererCapabilities capabilities = peek(device);
+        if (capabilities != null) return ActionFuture.completed(capabilities);
+        return probe(device);
+    }
+
+    /**
+     * 缓存中未过期的值，不发起查询
+     */
+    @Nullable
+    public RendererCapabilities peek(@Nullable Device device) {
+        if (device == null) return null;
+        RendererCapabilities capabilities = mCapabilities.get(keyOf(device));
+        if (capabilities == null || System.currentTimeMillis() - capabilities.getFetchedAt() > mTtlMillis) return null;
+        return capabilities;
+    }
+
+    /**
+     * 重新查询，已有查询进行中时返回同一个结果
+     */
+    @NotNull
+    public ActionFuture<RendererCapabilities> probe(@NotNull Device device) {
+        final UDN udn = keyOf(device);
+        ActionFuture<RendererCapabilities> pending = mPending.get(udn);
+        if (pending != null) return pending;
+        final ActionFuture<RendererCapabilities> created = new ActionFuture<>();
+        pending = mPending.putIfAbsent(udn, created);
+        if (pending != null) return pending;
+
+        mController.getProtocolInfoAsync(device).addListener(new ActionFuture.Listener<RendererCapabilities>() {
+            @Override
+            public void onComplete(ActionFuture<RendererCapabilities> future) {
+                mPending.remove(udn, created);
+                if (future.isSuccess()) {
+                    mCapabilities.put(udn, future.getValue());
+                    created.complete(future.getValue());
+                } else {
+                    log.fine("GetProtocolInfo failed: " + future.getFailure());
+                    created.fail(future.getFailure());
+                }
+            }
+        });
+        return created;
+    }
+
+    public void invalidate(@Nullable Device device) {
+        if (device != null) mCapabilities.remove(keyOf(device));
+    }
+
+    public void clear() {
+        mCapabilities.clear();
+    }
+
+    /**
+     * 缓存有效期，默认 30 分钟。固件升级等导致格式变化的情况很少，设备重新上线时也会重新查询
+     */
+    public void setTtl(long ttlMillis) {
+        this.mTtlMillis = ttlMillis;
+    }
+
+    public long getTtl() {
+        return mTtlMillis;
+    }
+
+    /**
+     * 已知设备不支持片源格式时，是否直接失败不再发送命令，默认关闭。
+     * 只检查明确设置了 MIME 类型的片源；按扩展名猜测的类型可能是别名(video/avi 与 video/x-msvideo)，不拦截。
+     * 部分设备的 Sink 列表不完整，开启后可能拦截能播放的片源
+     */
+    public void setStrict(boolean strict) {
+        this.mStrict = strict;
+    }
+
+    public boolean isStrict() {
+        return mStrict;
+    }
+
+    private static UDN keyOf(Device device) {
+        return device.getRoot().getIdentity().getUdn();
+    }
+}
@@ -0,0 +1,110 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次投屏（Stop → SetAVTransportURI → Play）各阶段耗时，单位毫秒，未执行的阶段为 -1
+ */
+public class CastTimings {
+
+    private final Device device;
+    private final long startNanos;
+
+    private volatile long metadataMillis = -1;
+    private volatile long stopMillis = -1;
+    private volatile long setUriMillis = -1;
+    private volatile long playMillis = -1;
+    private volatile long totalMillis = -1;
+    private volatile boolean stopSkipped;
+    private volatile boolean success;
+
+    CastTimings(@NotNull Device device) {
+        this.device = device;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 开始一个阶段，返回开始时间，结束时传给对应的 xxxDone 方法
+     */
+    long begin() {
+        return System.nanoTime();
+    }
+
+    void metadataDone(long begin) {
+        metadataMillis = since(begin);
+    }
+
+    void stopDone(long begin) {
+        stopMillis = since(begin);
+    }
+
+    void stopSkipped() {
+        stopSkipped = true;
+    }
+
+    void setUriDone(long begin) {
+        setUriMillis = since(begin);
+    }
+
+    void playDone(long begin) {
+        playMillis = since(begin);
+    }
+
+    void finish(boolean success) {
+        this.success = success;
+        totalMillis = since(startNanos);
+    }
+
+    private static long since(long begin) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    }
+
+    @NotNull
+    public Device getDevice() {
+        return device;
+    }
+
+    public long getMetadataMillis() {
+        return metadataMillis;
+    }
+
+    public long getStopMillis() {
+        return stopMillis;
+    }
+
+    public long getSetUriMillis() {
+        return setUriMillis;
+    }
+
+    public long getPlayMillis() {
+        return playMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public boolean isStopSkipped() {
+        return stopSkipped;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Override
+    public String toString() {
+        return "CastTimings{" +
+                "device=" + device.getDetails().getFriendlyName() +
+                ", metadata=" + metadataMillis +
+                ", stop=" + (stopSkipped ? "skipped" : String.valueOf(stopMillis)) +
+                ", setUri=" + setUriMillis +
+                ", play=" + playMillis +
+                ", total=" + totalMillis +
+                ", success=" + success +
+                '}';
+    }
+}
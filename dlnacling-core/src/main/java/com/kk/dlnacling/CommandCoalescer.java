@@ -0,0 +1,306 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.support.model.PositionInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并连续的相对调节命令（按住快进、音量加减）
+ * <p>
+ * 设备空闲时第一条命令立即发送；之后在 window 内到达的命令累加为一个增量，
+ * 换算成绝对目标后只发送一次 Seek/SetVolume。新目标发出时，仍在进行中的旧请求直接取消，
+ * 旧请求的增量已包含在新目标中，等待它的调用方随新请求一起得到结果。
+ * 请求完成且没有待发送的增量时移除该设备的队列，不会随控制过的设备数增长
+ */
+public class CommandCoalescer {
+
+    private static final String SEEK = "Seek";
+    private static final String SET_VOLUME = "SetVolume";
+
+    private final DlnaClingController mController;
+    private final ConcurrentMap<String, Lane> mLanes = new ConcurrentHashMap<>();
+
+    private final AtomicLong mCommandCount = new AtomicLong();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mSupersededCount = new AtomicLong();
+
+    private volatile long mWindowMillis = 200;
+    @Nullable
+    private volatile Listener mListener;
+
+    public CommandCoalescer(@NotNull DlnaClingController controller) {
+        this.mController = controller;
+    }
+
+    /**
+     * 合并窗口，默认 200ms
+     */
+    public void setWindow(long windowMillis) {
+        this.mWindowMillis = Math.max(0, windowMillis);
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * 相对调节进度
+     *
+     * @param seconds 移动秒数，正数：快进；负数：快退
+     * @return 包含本次增量的请求完成后返回
+     */
+    public ActionFuture<ActionInvocation> seek(@Nullable Device device, int seconds) {
+        if (device == null) return ActionFuture.failed(ActionFailedException.precondition("未选择投屏设备"));
+        return add(device, SEEK, seconds);
+    }
+
+    /**
+     * 相对调节音量
+     *
+     * @param volume 音量调节数，正/负
+     */
+    public ActionFuture<ActionInvocation> setVolume(@Nullable Device device, int volume) {
+        if (device == null) return ActionFuture.failed(ActionFailedException.precondition("未选择投屏设备"));
+        return add(device, SET_VOLUME, volume);
+    }
+
+    /**
+     * 收到的命令数
+     */
+    public long getCommandCount() {
+        return mCommandCount.get();
+    }
+
+    /**
+     * 实际发出的 Seek/SetVolume 数
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * 被新目标取代而取消的进行中请求数
+     */
+    public long getSupersededCount() {
+        return mSupersededCount.get();
+    }
+
+    /**
+     * 进行中或等待合并的队列数
+     */
+    int getLaneCount() {
+        return mLanes.size();
+    }
+
+    private ActionFuture<ActionInvocation> add(Device device, String action, int delta) {
+        UDN udn = device.getIdentity().getUdn();
+        String key = udn.getIdentifierString() + '/' + action;
+        while (true) {
+            ActionFuture<ActionInvocation> waiter = lane(key, device, action).add(delta);
+            // 队列刚被移除，换新队列
+            if (waiter != null) return waiter;
+        }
+    }
+
+    private Lane lane(String key, Device device, String action) {
+        Lane lane = mLanes.get(key);
+        if (lane == null) {
+            Lane created = new Lane(key, device, action);
+            lane = mLanes.putIfAbsent(key, created);
+            if (lane == null) lane = created;
+        }
+        return lane;
+    }
+
+    /**
+     * 同一设备、同一命令的排队与合并
+     */
+    private class Lane implements Runnable {
+        private final String key;
+        private final Device device;
+        private final String action;
+
+        private int pendingDelta;
+        private List<ActionFuture<ActionInvocation>> pendingWaiters = new ArrayList<>();
+        @Nullable
+        private ScheduledFuture<?> flushTask;
+
+        @Nullable
+        private ActionFuture<ActionInvocation> inFlight;
+        private List<ActionFuture<ActionInvocation>> inFlightWaiters = new ArrayList<>();
+        /**
+         * 进行中请求的绝对目标，查询基准值期间为 null
+         */
+        @Nullable
+        private Long inFlightTarget;
+        /**
+         * 已从 mLanes 移除，不再接收命令
+         */
+        private boolean retired;
+
+        Lane(String key, Device device, String action) {
+            this.key = key;
+            this.device = device;
+            this.action = action;
+        }
+
+        /**
+         * @return 等待结果，队列已移除时为 null
+         */
+        @Nullable
+        synchronized ActionFuture<ActionInvocation> add(int delta) {
+            if (retired) return null;
+            mCommandCount.incrementAndGet();
+            ActionFuture<ActionInvocation> waiter = new ActionFuture<>();
+            pendingDelta += delta;
+            pendingWaiters.add(waiter);
+            if (flushTask == null) {
+                if (inFlight == null) {
+                    flushLocked();
+                } else {
+                    flushTask = DlnaScheduler.get().schedule(this, mWindowMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            return waiter;
+        }
+
+        @Override
+        public synchronized void run() {
+            flushTask = null;
+            if (pendingWaiters.isEmpty()) {
+                retireIfIdleLocked();
+                return;
+            }
+            if (inFlight != null && inFlightTarget == null) {
+                // 进行中的请求还在查询基准值，新目标无从计算，继续累积
+                flushTask = DlnaScheduler.get().schedule(this, mWindowMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+            flushLocked();
+        }
+
+        private void flushLocked() {
+            final int delta = pendingDelta;
+            final List<ActionFuture<ActionInvocation>> waiters = pendingWaiters;
+            pendingDelta = 0;
+            pendingWaiters = new ArrayList<>();
+
+            ActionFuture<Long> base;
+            if (inFlight != null) {
+                // 新目标取代进行中的请求
+                ActionFuture<ActionInvocation> superseded = inFlight;
+                waiters.addAll(0, inFlightWaiters);
+                base = ActionFuture.completed(inFlightTarget);
+                inFlight = null;
+                superseded.cancel(true);
+                mSupersededCount.incrementAndGet();
+            } else {
+                base = currentValue();
+            }
+
+            final ActionFuture<ActionInvocation> request = base.thenCompose(new ActionFuture.Continuation<Long, ActionInvocation>() {
+                @Override
+                public ActionFuture<ActionInvocation> then(Long value) {
+                    long target = SEEK.equals(action) ? value + delta * 1000L : value + delta;
+                    return send(target);
+                }
+            });
+            inFlight = request;
+            inFlightWaiters = waiters;
+            request.addListener(new ActionFuture.Listener<ActionInvocation>() {
+                @Override
+                public void onComplete(ActionFuture<ActionInvocation> future) {
+                    List<ActionFuture<ActionInvocation>> done;
+                    synchronized (Lane.this) {
+                        if (inFlight != future) return; // 已被取代
+                        inFlight = null;
+                        inFlightTarget = null;
+                        done = inFlightWaiters;
+                        inFlightWaiters = new ArrayList<>();
+                        retireIfIdleLocked();
+                    }
+                    Listener listener = mListener;
+                    if (listener != null) listener.onCoalesced(device, action, done.size(), future.isSuccess());
+                    for (ActionFuture<ActionInvocation> waiter : done) {
+                        Throwable failure = future.getFailure();
+                        if (failure == null) waiter.complete(future.getValue());
+                        else waiter.fail(failure);
+                    }
+                }
+            });
+        }
+
+        private void retireIfIdleLocked() {
+            if (inFlight != null || flushTask != null || !pendingWaiters.isEmpty()) return;
+            retired = true;
+            mLanes.remove(key, this);
+        }
+
+        /**
+         * 基准值：缓存可用时直接使用，否则查询
+         */
+        private ActionFuture<Long> currentValue() {
+            DeviceStateCache cache = mController.getStateCache();
+            RendererState state = cache.peek(device);
+            if (SEEK.equals(action)) {
+                if (state != null && state.isPositionFresh(cache.getMaxAge())) {
+                    return ActionFuture.completed(state.estimatePositionMillis());
+                }
+                return mController.getPositionInfoAsync(device).thenApply(new ActionFuture.Transform<PositionInfo, Long>() {
+                    @Override
+                    public Long apply(PositionInfo positionInfo) throws ActionFailedException {
+                        long position = DeviceStateCache.parseTimeMillis(positionInfo.getRelTime());
+                        if (position < 0) throw ActionFailedException.precondition("当前视频暂不支持进度调节");
+                        return position;
+                    }
+                });
+            }
+            if (state != null && state.isVolumeFresh(cache.getMaxAge())) {
+                return ActionFuture.completed((long) state.getVolume());
+            }
+            return mController.getVolumeAsync(device).thenApply(new ActionFuture.Transform<Integer, Long>() {
+                @Override
+                public Long apply(Integer volume) {
+                    return (long) volume;
+                }
+            });
+        }
+
+        private ActionFuture<ActionInvocation> send(long target) {
+            mRequestCount.incrementAndGet();
+            if (SEEK.equals(action)) {
+                target = Math.max(0, target);
+                RendererState state = mController.getStateCache().peek(device);
+                if (state != null && state.getDurationMillis() > 0) target = Math.min(target, state.getDurationMillis());
+            } else {
+                target = Math.max(0, Math.min(100, target));
+            }
+            synchronized (this) {
+                inFlightTarget = target;
+            }
+            if (SEEK.equals(action)) return mController.seekToAsync(device, target);
+            return mController.setVolumeToAsync(device, (int) target);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * 一次请求完成
+         *
+         * @param action       Seek 或 SetVolume
+         * @param commandCount 合并进这次请求的命令数
+         */
+        void onCoalesced(@NotNull Device device, @NotNull String action, int commandCount, boolean success);
+    }
+}
@@ -0,0 +1,106 @@
+package com.kk.dlnacling;
+
+import org.seamless.xml.ParserException;
+import org.seamless.xml.SAXParser;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * 关闭外部实体、线程内复用 XMLReader 的 SAX 解析器
+ */
+public class DLNASAXParser extends SAXParser {
+
+    private static final DefaultHandler EMPTY_HANDLER = new DefaultHandler();
+    private static SAXParserFactory sFactory;
+
+    /**
+     * XMLReader 每次 parse 都会重置状态，同一线程内复用，省去创建工厂和解析器
+     */
+    private static final ThreadLocal<XMLReader> READERS = new ThreadLocal<XMLReader>() {
+        @Override
+        protected XMLReader initialValue() {
+            return newReader();
+        }
+    };
+
+    protected XMLReader create() {
+//            try {
+//                SAXParserFactory factory = SAXParserFactory.newInstance();
+//                //fix bug .see https://stackoverflow.com/questions/10837706/solve-security-issue-parsing-xml-using-sax-parser
+//                factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+//
+//                // Configure factory to prevent XXE attacks
+//                factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+//                factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+//                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+//                factory.setXIncludeAware(false);
+//
+//                factory.setNamespaceAware(true);
+//
+//                if (getSchemaSources() != null) {
+//                    factory.setSchema(createSchema(getSchemaSources()));
+//                }
+//
+//                XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+//                xmlReader.setErrorHandler(getErrorHandler());
+//                return xmlReader;
+//            } catch (Exception ex) {
+//                throw new RuntimeException(ex);
+//            }
+        if (getSchemaSources() != null) {
+            // 带校验的解析器各自持有 schema，不放进线程复用
+            try {
+                SAXParserFactory factory = newFactory();
+                factory.setSchema(createSchema(getSchemaSources()));
+                XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+                xmlReader.setErrorHandler(getErrorHandler());
+                return xmlReader;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        XMLReader xmlReader = READERS.get();
+        xmlReader.setErrorHandler(getErrorHandler());
+        return xmlReader;
+    }
+
+    @Override
+    public void parse(InputSource source) throws ParserException {
+        try {
+            super.parse(source);
+        } finally {
+            // 不让线程复用的 reader 继续引用本次解析的结果
+            if (getSchemaSources() == null) READERS.get().setContentHandler(EMPTY_HANDLER);
+        }
+    }
+
+    private static SAXParserFactory newFactory() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+
+        // Configure factory to prevent XXE attacks
+        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+
+        //commenting
+        //factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        //factory.setXIncludeAware(false);
+
+        //factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    /**
+     * SAXParserFactory.newSAXParser 不保证线程安全，创建 reader 时加锁
+     */
+    private static synchronized XMLReader newReader() {
+        try {
+            if (sFactory == null) sFactory = newFactory();
+            return sFactory.newSAXParser().getXMLReader();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
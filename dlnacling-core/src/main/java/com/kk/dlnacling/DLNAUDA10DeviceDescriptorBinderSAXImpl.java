@@ -0,0 +1,20 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.binding.xml.DescriptorBindingException;
+import org.fourthline.cling.binding.xml.UDA10DeviceDescriptorBinderSAXImpl;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.RemoteDevice;
+
+/**
+ * 记录设备描述原文，用于 {@link DeviceSnapshotStore}
+ */
+public class DLNAUDA10DeviceDescriptorBinderSAXImpl extends UDA10DeviceDescriptorBinderSAXImpl {
+
+    @Override
+    public <D extends Device> D describe(D undescribedDevice, String descriptorXml) throws DescriptorBindingException, ValidationException {
+        D device = super.describe(undescribedDevice, descriptorXml);
+        if (device instanceof RemoteDevice) DeviceSnapshotStore.captureDevice((RemoteDevice) device, descriptorXml);
+        return device;
+    }
+}
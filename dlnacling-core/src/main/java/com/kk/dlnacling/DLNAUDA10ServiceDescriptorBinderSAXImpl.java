@@ -0,0 +1,67 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.binding.staging.MutableService;
+import org.fourthline.cling.binding.xml.DescriptorBindingException;
+import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
+import org.fourthline.cling.binding.xml.UDA10ServiceDescriptorBinderSAXImpl;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.meta.Service;
+import org.seamless.xml.SAXParser;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.util.logging.Logger;
+
+/**
+ * 使用 {@link DLNASAXParser} 解析服务描述，解析结果见 {@link ServiceDescriptorCache}
+ * <p>
+ * https://github.com/4thline/cling/issues/249
+ */
+public class DLNAUDA10ServiceDescriptorBinderSAXImpl extends UDA10ServiceDescriptorBinderSAXImpl {
+    private static Logger log = Logger.getLogger(ServiceDescriptorBinder.class.getName());
+
+    @Override
+    public <S extends Service> S describe(S undescribedService, String descriptorXml) throws DescriptorBindingException, ValidationException {
+
+        if (descriptorXml == null || descriptorXml.length() == 0) {
+            throw new DescriptorBindingException("Null or empty descriptor");
+        }
+
+        // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
+        String xml = descriptorXml.trim();
+        ServiceDescriptorCache cache = ServiceDescriptorCache.get();
+        String key = ServiceDescriptorCache.key(undescribedService.getServiceType(), xml);
+
+        try {
+            MutableService descriptor = new MutableService();
+
+            hydrateBasic(descriptor, undescribedService);
+
+            S service;
+            if (cache.apply(key, descriptor)) {
+                log.fine("Reusing cached service descriptor: " + undescribedService.getServiceType());
+                service = (S) descriptor.build(undescribedService.getDevice());
+            } else {
+                log.fine("Reading service from XML descriptor");
+
+                SAXParser parser = new DLNASAXParser();
+
+                new RootHandler(descriptor, parser);
+
+                parser.parse(new InputSource(new StringReader(xml)));
+
+                // Build the immutable descriptor graph
+                service = (S) descriptor.build(undescribedService.getDevice());
+                cache.put(key, descriptor);
+            }
+            if (service instanceof RemoteService) DeviceSnapshotStore.captureService((RemoteService) service, xml);
+            return service;
+
+        } catch (ValidationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new DescriptorBindingException("Could not parse service descriptor: " + ex.toString(), ex);
+        }
+    }
+}
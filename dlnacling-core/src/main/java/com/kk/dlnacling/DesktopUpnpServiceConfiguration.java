@@ -0,0 +1,79 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceImpl;
+import org.fourthline.cling.binding.xml.DeviceDescriptorBinder;
+import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 纯 JVM（服务端、单元测试、JMH）使用的配置，与 Android 端的 BrowserUpnpService 使用相同的描述解析和线程池
+ * <pre>
+ * UpnpService upnpService = DesktopUpnpServiceConfiguration.start();
+ * DlnaClingController controller = new DlnaClingController();
+ * controller.initService(upnpService, registryListener);
+ * </pre>
+ */
+public class DesktopUpnpServiceConfiguration extends DefaultUpnpServiceConfiguration implements ProtocolExecutors.Provider {
+
+    private final ProtocolExecutors protocolExecutors = new ProtocolExecutors(getDefaultExecutorService());
+
+    public DesktopUpnpServiceConfiguration() {
+    }
+
+    /**
+     * @param streamListenPort http 服务端口，0 为随机端口
+     */
+    public DesktopUpnpServiceConfiguration(int streamListenPort) {
+        super(streamListenPort);
+    }
+
+    /**
+     * 创建并启动 UpnpService，用完后调用 shutdown
+     */
+    @NotNull
+    public static UpnpService start() {
+        return new UpnpServiceImpl(new DesktopUpnpServiceConfiguration());
+    }
+
+    @Override
+    public int getRegistryMaintenanceIntervalMillis() {
+        return 7000;
+    }
+
+    @Override
+    public ServiceDescriptorBinder createServiceDescriptorBinderUDA10() {
+        return new DLNAUDA10ServiceDescriptorBinderSAXImpl();
+    }
+
+    @Override
+    public DeviceDescriptorBinder createDeviceDescriptorBinderUDA10() {
+        return new DLNAUDA10DeviceDescriptorBinderSAXImpl();
+    }
+
+    @Override
+    public ExecutorService getSyncProtocolExecutorService() {
+        return protocolExecutors.getSyncProtocolExecutorService();
+    }
+
+    @Override
+    public Executor getAsyncProtocolExecutor() {
+        return protocolExecutors.getAsyncProtocolExecutor();
+    }
+
+    @NotNull
+    @Override
+    public ProtocolExecutors getProtocolExecutors() {
+        return protocolExecutors;
+    }
+
+    @Override
+    public void shutdown() {
+        protocolExecutors.shutdown();
+        super.shutdown();
+    }
+}
@@ -0,0 +1,185 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个设备的响应时间估计和熔断状态。
+ * <p>
+ * 超时按 TCP 的方式(RFC 6298)计算：每个命令分别维护平滑往返时间 SRTT 和偏差 RTTVAR，
+ * 超时 = SRTT + 4 × RTTVAR；超时一次后该命令的超时翻倍，直到收到新的响应。
+ * 连续多次超时/无响应后熔断，期间命令直接失败，到期后放行一个探测请求
+ */
+public final class DeviceHealth {
+
+    private static final double ALPHA = 1 / 8.0;
+    private static final double BETA = 1 / 4.0;
+
+    public enum State {
+        /**
+         * 正常
+         */
+        CLOSED,
+        /**
+         * 熔断中，命令直接失败
+         */
+        OPEN,
+        /**
+         * 熔断到期，正在探测
+         */
+        HALF_OPEN
+    }
+
+    private final ActionPolicy policy;
+    private final Map<String, RttEstimator> estimators = new HashMap<>();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long currentOpenMillis;
+    private boolean probing;
+
+    DeviceHealth(@NotNull ActionPolicy policy) {
+        this.policy = policy;
+        this.currentOpenMillis = policy.getOpenMillis();
+    }
+
+    /**
+     * 本次请求的超时
+     */
+    synchronized long timeoutMillis(@NotNull String actionName) {
+        RttEstimator estimator = estimators.get(actionName);
+        long timeout = estimator == null ? policy.getInitialTimeoutMillis() : estimator.rto;
+        return Math.min(policy.getMaxTimeoutMillis(), Math.max(policy.getMinTimeoutMillis(), timeout));
+    }
+
+    /**
+     * 是否允许发送请求，熔断中返回 false；熔断到期后只放行一个探测请求
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) return false;
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            case HALF_OPEN:
+                if (probing) return false;
+                probing = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 收到响应(包括 UPnP 错误)，设备在线
+     */
+    synchronized void onResponse(@NotNull String actionName, long rttMillis) {
+        estimator(actionName).sample(Math.max(1, rttMillis));
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+        currentOpenMillis = policy.getOpenMillis();
+    }
+
+    /**
+     * 超时或没有响应
+     */
+    synchronized void onNoResponse(@NotNull String actionName) {
+        estimator(actionName).backoff(policy.getMaxTimeoutMillis());
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            // 探测失败，熔断时长翻倍
+            currentOpenMillis = Math.min(policy.getMaxOpenMillis(), currentOpenMillis * 2);
+            open();
+        } else if (policy.getFailureThreshold() > 0 && consecutiveFailures >= policy.getFailureThreshold()) {
+            open();
+        }
+    }
+
+    /**
+     * 请求在完成前被取消，释放探测名额
+     */
+    synchronized void onCancelled() {
+        probing = false;
+    }
+
+    private RttEstimator estimator(String actionName) {
+        RttEstimator estimator = estimators.get(actionName);
+        if (estimator == null) {
+            estimator = new RttEstimator(policy.getInitialTimeoutMillis());
+            estimators.put(actionName, estimator);
+        }
+        return estimator;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        probing = false;
+        openUntil = System.currentTimeMillis() + currentOpenMillis;
+    }
+
+    @NotNull
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) return State.HALF_OPEN;
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * 该命令的平滑往返时间，没有样本时为 -1
+     */
+    public synchronized long getSmoothedRttMillis(@NotNull String actionName) {
+        RttEstimator estimator = estimators.get(actionName);
+        return estimator == null || !estimator.measured ? -1 : Math.round(estimator.srtt);
+    }
+
+    /**
+     * 该命令下次请求的超时
+     */
+    public long getTimeoutMillis(@NotNull String actionName) {
+        return timeoutMillis(actionName);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("DeviceHealth{").append(state);
+        for (Map.Entry<String, RttEstimator> entry : estimators.entrySet()) {
+            builder.append(", ").append(entry.getKey()).append(" srtt=").append(Math.round(entry.getValue().srtt))
+                    .append("ms rto=").append(entry.getValue().rto).append("ms");
+        }
+        return builder.append('}').toString();
+    }
+
+    private static final class RttEstimator {
+        boolean measured;
+        double srtt;
+        double rttvar;
+        long rto;
+
+        RttEstimator(long initialRto) {
+            rto = initialRto;
+        }
+
+        void sample(long rtt) {
+            if (!measured) {
+                measured = true;
+                srtt = rtt;
+                rttvar = rtt / 2.0;
+            } else {
+                rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+                srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+            }
+            rto = (long) Math.ceil(srtt + Math.max(1, 4 * rttvar));
+        }
+
+        void backoff(long max) {
+            rto = Math.min(max, rto * 2);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 按 UDN 索引的设备列表，供界面展示。
+ * <p>
+ * registry 的加入、更新、移除事件先按 UDN 合并，每 {@link #setBatchWindow(long) 一帧} 最多计算一次差异，
+ * 以 {@link Diff} 在指定的线程回调：发现设备时的大量事件不会逐条占用主线程，列表操作也不再每个事件 O(n)。
+ * 设备的名称、地址没有变化时，存活通知引起的更新不会产生回调。
+ * <pre>
+ * DeviceIndex index = new DeviceIndex(new UDAServiceType("AVTransport"), mainExecutor);
+ * index.addListener(new DeviceIndex.Listener() {
+ *     public void onDevicesChanged(DeviceIndex.Diff diff) {
+ *         data.clear();
+ *         data.addAll(diff.getDevices());
+ *         diff.dispatch(adapterCallback);
+ *     }
+ * });
+ * index.attach(upnpService.getRegistry());
+ * </pre>
+ */
+public class DeviceIndex {
+
+    private static final Logger log = Logger.getLogger(DeviceIndex.class.getName());
+
+    @Nullable
+    private final ServiceType mServiceType;
+    private final Executor mExecutor;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final RegistryListener mRegistryListener = new DefaultRegistryListener() {
+        @Override
+        public void deviceAdded(Registry registry, Device device) {
+            onAdded(device);
+        }
+
+        @Override
+        public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+            onAdded(device);
+        }
+
+        @Override
+        public void deviceRemoved(Registry registry, Device device) {
+            onRemoved(device);
+        }
+    };
+
+    private final Object mLock = new Object();
+    /**
+     * 未处理的变化，值为 null 表示移除
+     */
+    private final Map<UDN, Device> mPending = new LinkedHashMap<>();
+    @Nullable
+    private ScheduledFuture<?> mFlush;
+    /**
+     * 最近一次计算的结果，只在定时线程中修改
+     */
+    private volatile Snapshot mComputed = Snapshot.EMPTY;
+    /**
+     * 最近一次回调给监听的结果
+     */
+    private volatile Snapshot mDelivered = Snapshot.EMPTY;
+
+    private volatile long mBatchWindowMillis = 16;
+    @Nullable
+    private Registry mRegistry;
+
+    /**
+     * @param serviceType 只收录包含该服务的设备，如 AVTransport；为 null 时收录所有设备
+     * @param executor    回调所在的线程，需要按提交顺序执行，如主线程、单线程池
+     */
+    public DeviceIndex(@Nullable ServiceType serviceType, @NotNull Executor executor) {
+        this.mServiceType = serviceType;
+        this.mExecutor = executor;
+    }
+
+    /**
+     * 开始跟踪 registry，已有的设备在下一批中加入
+     */
+    public void attach(@NotNull Registry registry) {
+        synchronized (mLock) {
+            if (mRegistry == registry) return;
+            if (mRegistry != null) mRegistry.removeListener(mRegistryListener);
+            mRegistry = registry;
+        }
+        registry.addListener(mRegistryListener);
+        for (Device device : registry.getDevices()) {
+            onAdded(device);
+        }
+    }
+
+    /**
+     * 停止跟踪，已收录的设备保留，重新 attach 后与 registry 对比
+     */
+    public void detach() {
+        Registry registry;
+        synchronized (mLock) {
+            registry = mRegistry;
+            mRegistry = null;
+        }
+        if (registry != null) registry.removeListener(mRegistryListener);
+    }
+
+    /**
+     * 清空列表，下一批中移除所有设备
+     */
+    public void clear() {
+        synchronized (mLock) {
+            for (Device device : mComputed.devices) {
+                mPending.put(device.getIdentity().getUdn(), null);
+            }
+            scheduleLocked();
+        }
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 合并事件的时间窗口，默认 16ms(一帧)，0 表示每个事件单独回调
+     */
+    public void setBatchWindow(long batchWindowMillis) {
+        this.mBatchWindowMillis = Math.max(0, batchWindowMillis);
+    }
+
+    /**
+     * 已回调给监听的设备列表，与最近一次 {@link Diff#getDevices()} 一致
+     */
+    @NotNull
+    public List<Device> getDevices() {
+        return mDelivered.devices;
+    }
+
+    public int size() {
+        return mDelivered.devices.size();
+    }
+
+    @Nullable
+    public Device get(@NotNull UDN udn) {
+        Integer position = mDelivered.positions.get(udn);
+        return position == null ? null : mDelivered.devices.get(position);
+    }
+
+    /**
+     * 设备在 {@link #getDevices()} 中的位置，O(1)，不存在时为 -1
+     */
+    public int indexOf(@Nullable Device device) {
+        if (device == null) return -1;
+        Integer position = mDelivered.positions.get(device.getIdentity().getUdn());
+        return position == null ? -1 : position;
+    }
+
+    private boolean accepts(Device device) {
+        return mServiceType == null || device.findService(mServiceType) != null;
+    }
+
+    private void onAdded(Device device) {
+        if (!accepts(device)) return;
+        synchronized (mLock) {
+            mPending.put(device.getIdentity().getUdn(), device);
+            scheduleLocked();
+        }
+    }
+
+    private void onRemoved(Device device) {
+        synchronized (mLock) {
+            mPending.put(device.getIdentity().getUdn(), null);
+            scheduleLocked();
+        }
+    }
+
+    private void scheduleLocked() {
+        if (mFlush != null) return;
+        mFlush = DlnaScheduler.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, mBatchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在定时线程中计算差异：移除的设备按原位置，新设备追加到末尾，变化的设备保持原位置
+     */
+    private void flush() {
+        Map<UDN, Device> pending;
+        synchronized (mLock) {
+            mFlush = null;
+            if (mPending.isEmpty()) return;
+            pending = new LinkedHashMap<>(mPending);
+            mPending.clear();
+        }
+        Snapshot old = mComputed;
+        List<Device> devices = new ArrayList<>(old.devices.size() + pending.size());
+        List<String> signatures = new ArrayList<>(old.devices.size() + pending.size());
+        List<Integer> removed = new ArrayList<>();
+        List<Device> removedDevices = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+
+        for (int i = 0; i < old.devices.size(); i++) {
+            Device device = old.devices.get(i);
+            UDN udn = device.getIdentity().getUdn();
+            if (!pending.containsKey(udn)) {
+                devices.add(device);
+                signatures.add(old.signatures.get(i));
+                continue;
+            }
+            Device update = pending.remove(udn);
+            if (update == null) {
+                removed.add(i);
+                removedDevices.add(device);
+                continue;
+            }
+            String signature = signatureOf(update);
+            if (update != device || !signature.equals(old.signatures.get(i))) changed.add(devices.size());
+            devices.add(update);
+            signatures.add(signature);
+        }
+        int insertedStart = devices.size();
+        for (Device device : pending.values()) {
+            if (device == null) continue;
+            devices.add(device);
+            signatures.add(signatureOf(device));
+        }
+        int insertedCount = devices.size() - insertedStart;
+        if (removed.isEmpty() && changed.isEmpty() && insertedCount == 0) return;
+
+        final Snapshot snapshot = new Snapshot(devices, signatures);
+        mComputed = snapshot;
+        final Diff diff = new Diff(snapshot.devices, toArray(removed), removedDevices, insertedStart, insertedCount,
+                toArray(changed));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDelivered = snapshot;
+                for (Listener listener : mListeners) {
+                    try {
+                        listener.onDevicesChanged(diff);
+                    } catch (RuntimeException e) {
+                        log.warning("Device index listener failed: " + e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 界面展示用到的字段，不变时更新事件不回调
+     */
+    private static String signatureOf(Device device) {
+        StringBuilder builder = new StringBuilder(128);
+        builder.append(device.getDisplayString());
+        if (device.getDetails() != null) {
+            builder.append('|').append(device.getDetails().getFriendlyName());
+            if (device.getDetails().getBaseURL() != null) builder.append('|').append(device.getDetails().getBaseURL());
+        }
+        if (device instanceof RemoteDevice) {
+            builder.append('|').append(((RemoteDevice) device).getIdentity().getDescriptorURL());
+        }
+        return builder.toString();
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    public interface Listener {
+        /**
+         * 在构造时指定的线程中回调
+         */
+        void onDevicesChanged(@NotNull Diff diff);
+    }
+
+    /**
+     * 一批变化。按 移除(原位置)、插入(新位置)、更新(新位置) 的顺序应用即可从上一个列表得到 {@link #getDevices()}
+     */
+    public static final class Diff {
+        private final List<Device> devices;
+        private final int[] removedPositions;
+        private final List<Device> removed;
+        private final int insertedStart;
+        private final int insertedCount;
+        private final int[] changedPositions;
+
+        Diff(List<Device> devices, int[] removedPositions, List<Device> removed, int insertedStart, int insertedCount,
+             int[] changedPositions) {
+            this.devices = devices;
+            this.removedPositions = removedPositions;
+            this.removed = Collections.unmodifiableList(removed);
+            this.insertedStart = insertedStart;
+            this.insertedCount = insertedCount;
+            this.changedPositions = changedPositions;
+        }
+
+        /**
+         * 变化后的完整列表，不可修改
+         */
+        @NotNull
+        public List<Device> getDevices() {
+            return devices;
+        }
+
+        @NotNull
+        public List<Device> getAdded() {
+            return devices.subList(insertedStart, insertedStart + insertedCount);
+        }
+
+        @NotNull
+        public List<Device> getRemoved() {
+            return removed;
+        }
+
+        @NotNull
+        public List<Device> getChanged() {
+            List<Device> changed = new ArrayList<>(changedPositions.length);
+            for (int position : changedPositions) changed.add(devices.get(position));
+            return changed;
+        }
+
+        /**
+         * 按顺序通知列表操作，接口与 RecyclerView 的 ListUpdateCallback 对应，连续的位置合并为一次
+         */
+        public void dispatch(@NotNull UpdateCallback callback) {
+            // 从后往前移除，前面的位置不受影响
+            int end = removedPositions.length - 1;
+            while (end >= 0) {
+                int start = end;
+                while (start > 0 && removedPositions[start - 1] == removedPositions[start] - 1) start--;
+                callback.onRemoved(removedPositions[start], end - start + 1);
+                end = start - 1;
+            }
+            if (insertedCount > 0) callback.onInserted(insertedStart, insertedCount);
+            int i = 0;
+            while (i < changedPositions.length) {
+                int start = i;
+                while (i + 1 < changedPositions.length && changedPositions[i + 1] == changedPositions[i] + 1) i++;
+                callback.onChanged(changedPositions[start], i - start + 1);
+                i++;
+            }
+        }
+
+        public boolean isEmpty() {
+            return removedPositions.length == 0 && insertedCount == 0 && changedPositions.length == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Diff{size=" + devices.size() + ", removed=" + removedPositions.length + ", inserted=" + insertedCount
+                    + ", changed=" + changedPositions.length + '}';
+        }
+
+        public interface UpdateCallback {
+            void onInserted(int position, int count);
+
+            void onRemoved(int position, int count);
+
+            void onChanged(int position, int count);
+        }
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new ArrayList<Device>(), new ArrayList<String>());
+
+        final List<Device> devices;
+        final List<String> signatures;
+        final Map<UDN, Integer> positions;
+
+        Snapshot(List<Device> devices, List<String> signatures) {
+            this.devices = Collections.unmodifiableList(devices);
+            this.signatures = signatures;
+            this.positions = new HashMap<>(devices.size() * 2);
+            for (int i = 0; i < devices.size(); i++) {
+                positions.put(devices.get(i).getIdentity().getUdn(), i);
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.binding.xml.DescriptorBindingException;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.message.header.UDNHeader;
+import org.fourthline.cling.model.meta.Icon;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 发现过的设备快照：UDN、描述地址、设备与服务描述原文、最后在线时间，保存在本地文件中。
+ * <p>
+ * 启动时直接用快照中的描述构建设备加入 registry，设备列表和投屏立即可用；随后在后台请求描述地址校验，
+ * 无法访问的设备移除，描述变化的设备移除后重新搜索，由正常的发现流程再次加入
+ */
+public class DeviceSnapshotStore {
+
+    private static final Logger log = Logger.getLogger(DeviceSnapshotStore.class.getName());
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_DEVICES = 64;
+    private static final int MAX_DESCRIPTOR_BYTES = 512 * 1024;
+    private static final long SAVE_DELAY_MILLIS = 2000;
+    private static final long SEEN_SAVE_INTERVAL_MILLIS = 10 * 60 * 1000L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 描述解析时记录的原文，按根设备 UDN，设备加入 registry 时取走
+     */
+    private static final Map<String, Snapshot> sCaptured = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > MAX_DEVICES;
+        }
+    };
+    private static volatile boolean sCapturing;
+
+    private final File file;
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+    private final Set<String> restoring = Collections.synchronizedSet(new HashSet<String>());
+    private long maxStaleMillis = TimeUnit.DAYS.toMillis(3);
+    private int validateTimeoutMillis = 3000;
+    @Nullable
+    private ScheduledFuture<?> pendingSave;
+    @Nullable
+    private UpnpService upnpService;
+
+    /**
+     * @param file 快照文件，如 new File(context.getCacheDir(), "dlna_devices")
+     */
+    public DeviceSnapshotStore(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * 超过该时间没有在线的设备不再恢复，默认 3 天
+     */
+    public void setMaxStaleness(long maxStaleMillis) {
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    /**
+     * 后台校验请求描述地址的超时时间，默认 3 秒
+     */
+    public void setValidateTimeout(int timeoutMillis) {
+        this.validateTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 开始记录新发现的设备，并在后台恢复、校验快照中的设备
+     */
+    public void attach(@NotNull final UpnpService upnpService) {
+        this.upnpService = upnpService;
+        sCapturing = true;
+        upnpService.getRegistry().addListener(new DefaultRegistryListener() {
+            @Override
+            public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+                onAdded(device);
+            }
+
+            @Override
+            public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+                onSeen(device);
+            }
+        });
+        executor(upnpService).execute(new Runnable() {
+            @Override
+            public void run() {
+                restore(upnpService);
+            }
+        });
+    }
+
+    /**
+     * 删除所有快照
+     */
+    public void clear() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+        scheduleSave();
+    }
+
+    public int size() {
+        synchronized (snapshots) {
+            return snapshots.size();
+        }
+    }
+
+    static void captureDevice(@NotNull RemoteDevice device, @NotNull String descriptorXml) {
+        if (!sCapturing) return;
+        RemoteDeviceIdentity identity = device.getIdentity();
+        Snapshot snapshot = new Snapshot(identity.getUdn().getIdentifierString(), identity.getDescriptorURL().toString(),
+                identity.getDiscoveredOnLocalAddress() == null ? "" : identity.getDiscoveredOnLocalAddress().getHostAddress(),
+                identity.getMaxAgeSeconds() == null ? 1800 : identity.getMaxAgeSeconds(), 0, descriptorXml.trim());
+        synchronized (sCaptured) {
+            sCaptured.put(snapshot.udn, snapshot);
+        }
+    }
+
+    static void captureService(@NotNull RemoteService service, @NotNull String descriptorXml) {
+        if (!sCapturing) return;
+        String udn = service.getDevice().getRoot().getIdentity().getUdn().getIdentifierString();
+        synchronized (sCaptured) {
+            Snapshot snapshot = sCaptured.get(udn);
+            if (snapshot != null) snapshot.services.put(serviceKey(service), descriptorXml);
+        }
+    }
+
+    private static String serviceKey(RemoteService service) {
+        return service.getDevice().getIdentity().getUdn().getIdentifierString() + "/" + service.getServiceId();
+    }
+
+    private void onAdded(RemoteDevice device) {
+        String udn = device.getIdentity().getUdn().getIdentifierString();
+        Snapshot captured;
+        synchronized (sCaptured) {
+            captured = sCaptured.remove(udn);
+        }
+        // 从快照恢复的设备，不算作在线
+        if (restoring.remove(udn) || captured == null) return;
+        captured.lastSeen = System.currentTimeMillis();
+        synchronized (snapshots) {
+            snapshots.remove(udn);
+            snapshots.put(udn, captured);
+            trimLocked();
+        }
+        scheduleSave();
+    }
+
+    private void onSeen(RemoteDevice device) {
+        String udn = device.getIdentity().getUdn().getIdentifierString();
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        synchronized (snapshots) {
+            Snapshot snapshot = snapshots.get(udn);
+            if (snapshot != null && now - snapshot.lastSeen > SEEN_SAVE_INTERVAL_MILLIS) {
+                snapshot.lastSeen = now;
+                changed = true;
+            }
+        }
+        if (changed) scheduleSave();
+    }
+
+    private void trimLocked() {
+        while (snapshots.size() > MAX_DEVICES) {
+            snapshots.remove(snapshots.keySet().iterator().next());
+        }
+    }
+
+    private void restore(UpnpService upnpService) {
+        List<Snapshot> loaded;
+        try {
+            loaded = read();
+        } catch (IOException e) {
+            log.warning("Read device snapshots failed: " + e);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<RemoteDevice> restored = new ArrayList<>();
+        List<Snapshot> restoredSnapshots = new ArrayList<>();
+        synchronized (snapshots) {
+            for (Snapshot snapshot : loaded) {
+                if (now - snapshot.lastSeen > maxStaleMillis || snapshots.containsKey(snapshot.udn)) continue;
+                snapshots.put(snapshot.udn, snapshot);
+            }
+            trimLocked();
+            loaded = new ArrayList<>(snapshots.values());
+        }
+        Registry registry = upnpService.getRegistry();
+        for (Snapshot snapshot : loaded) {
+            UDN udn = new UDN(snapshot.udn);
+            // 已经被正常发现的设备不需要恢复
+            if (registry.getRemoteDevice(udn, true) != null) continue;
+            RemoteDevice device;
+            try {
+                device = hydrate(upnpService.getConfiguration(), snapshot);
+            } catch (Exception e) {
+                log.warning("Restore device " + snapshot.udn + " failed: " + e);
+                continue;
+            }
+            if (device == null) continue;
+            restoring.add(snapshot.udn);
+            registry.addDevice(device);
+            restored.add(device);
+            restoredSnapshots.add(snapshot);
+        }
+        if (!restored.isEmpty()) log.fine("Restored " + restored.size() + " devices from snapshot");
+        for (int i = 0; i < restored.size(); i++) {
+            validate(upnpService, restored.get(i), restoredSnapshots.get(i));
+        }
+    }
+
+    /**
+     * 与 RetrieveRemoteDescriptors 相同的构建过程，描述来自快照
+     */
+    @Nullable
+    private static RemoteDevice hydrate(UpnpServiceConfiguration configuration, Snapshot snapshot)
+            throws IOException, DescriptorBindingException, ValidationException {
+        InetAddress localAddress = snapshot.localAddress.length() == 0 ? null : InetAddress.getByName(snapshot.localAddress);
+        RemoteDeviceIdentity identity = new RemoteDeviceIdentity(new UDN(snapshot.udn), snapshot.maxAgeSeconds,
+                new URL(snapshot.location), null, localAddress);
+        RemoteDevice device = configuration.getDeviceDescriptorBinderUDA10().describe(new RemoteDevice(identity), snapshot.deviceXml);
+        return describeServices(configuration, device, snapshot);
+    }
+
+    @Nullable
+    private static RemoteDevice describeServices(UpnpServiceConfiguration configuration, RemoteDevice device, Snapshot snapshot)
+            throws DescriptorBindingException, ValidationException {
+        List<RemoteService> services = new ArrayList<>();
+        if (device.hasServices()) {
+            for (RemoteService service : device.getServices()) {
+                String xml = snapshot.services.get(serviceKey(service));
+                // 缺少任何一个服务描述都不恢复，交给正常发现
+                if (xml == null) return null;
+                services.add(configuration.getServiceDescriptorBinderUDA10().describe(service, xml));
+            }
+        }
+        List<RemoteDevice> embeddedDevices = new ArrayList<>();
+        if (device.hasEmbeddedDevices()) {
+            for (RemoteDevice embeddedDevice : device.getEmbeddedDevices()) {
+                if (embeddedDevice == null) continue;
+                RemoteDevice described = describeServices(configuration, embeddedDevice, snapshot);
+                if (described != null) embeddedDevices.add(described);
+            }
+        }
+        Icon[] icons = new Icon[device.getIcons().length];
+        for (int i = 0; i < icons.length; i++) icons[i] = device.getIcons()[i].deepCopy();
+        return device.newInstance(device.getIdentity().getUdn(), device.getVersion(), device.getType(), device.getDetails(),
+                icons, device.toServiceArray(services), embeddedDevices);
+    }
+
+    /**
+     * 请求描述地址：无法访问则移除；描述变化则移除后按 UDN 搜索，由正常发现重新加入
+     */
+    private void validate(UpnpService upnpService, RemoteDevice device, Snapshot snapshot) {
+        String xml;
+        try {
+            xml = fetch(device.getIdentity().getDescriptorURL());
+        } catch (IOException e) {
+            log.fine("Restored device unreachable, removing " + snapshot.udn + ": " + e);
+            upnpService.getRegistry().removeDevice(device.getIdentity().getUdn());
+            synchronized (snapshots) {
+                snapshots.remove(snapshot.udn);
+            }
+            scheduleSave();
+            return;
+        }
+        if (xml.trim().equals(snapshot.deviceXml)) return;
+        log.fine("Restored device descriptor changed, rediscovering " + snapshot.udn);
+        upnpService.getRegistry().removeDevice(device.getIdentity().getUdn());
+        upnpService.getControlPoint().search(new UDNHeader(device.getIdentity().getUdn()));
+    }
+
+    private String fetch(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(validateTimeoutMillis);
+        connection.setReadTimeout(validateTimeoutMillis);
+        connection.setUseCaches(false);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    if (out.size() > MAX_DESCRIPTOR_BYTES) throw new IOException("Descriptor too large");
+                }
+                return new String(out.toByteArray(), UTF_8);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static Executor executor(UpnpService upnpService) {
+        return upnpService.getConfiguration().getAsyncProtocolExecutor();
+    }
+
+    /**
+     * 合并短时间内的多次变化，延迟写入
+     */
+    private synchronized void scheduleSave() {
+        if (pendingSave != null && !pendingSave.isDone()) return;
+        pendingSave = DlnaScheduler.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                UpnpService service = upnpService;
+                if (service == null) {
+                    save();
+                    return;
+                }
+                executor(service).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        save();
+                    }
+                });
+            }
+        }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        List<Snapshot> copy;
+        synchronized (snapshots) {
+            copy = new ArrayList<>(snapshots.values());
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(copy.size());
+                for (Snapshot snapshot : copy) snapshot.write(out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) throw new IOException("Rename " + temp + " failed");
+        } catch (IOException e) {
+            log.warning("Save device snapshots failed: " + e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private List<Snapshot> read() throws IOException {
+        if (!file.exists()) return Collections.emptyList();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION) return Collections.emptyList();
+            int count = in.readInt();
+            List<Snapshot> result = new ArrayList<>(Math.min(count, MAX_DEVICES));
+            for (int i = 0; i < count; i++) result.add(Snapshot.read(in));
+            return result;
+        } catch (EOFException e) {
+            throw new IOException("Truncated snapshot file", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Snapshot {
+        final String udn;
+        final String location;
+        final String localAddress;
+        final int maxAgeSeconds;
+        volatile long lastSeen;
+        final String deviceXml;
+        /**
+         * 设备 UDN/serviceId -> 服务描述
+         */
+        final Map<String, String> services = new HashMap<>();
+
+        Snapshot(String udn, String location, String localAddress, int maxAgeSeconds, long lastSeen, String deviceXml) {
+            this.udn = udn;
+            this.location = location;
+            this.localAddress = localAddress;
+            this.maxAgeSeconds = maxAgeSeconds;
+            this.lastSeen = lastSeen;
+            this.deviceXml = deviceXml;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(udn);
+            out.writeUTF(location);
+            out.writeUTF(localAddress);
+            out.writeInt(maxAgeSeconds);
+            out.writeLong(lastSeen);
+            writeText(out, deviceXml);
+            Map<String, String> copy;
+            synchronized (sCaptured) {
+                copy = new HashMap<>(services);
+            }
+            out.writeInt(copy.size());
+            for (Map.Entry<String, String> entry : copy.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeText(out, entry.getValue());
+            }
+        }
+
+        static Snapshot read(DataInputStream in) throws IOException {
+            Snapshot snapshot = new Snapshot(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(), in.readLong(), readText(in));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) snapshot.services.put(in.readUTF(), readText(in));
+            return snapshot;
+        }
+
+        /**
+         * 描述可能超过 writeUTF 的 64K 限制
+         */
+        private static void writeText(DataOutputStream out, String text) throws IOException {
+            byte[] bytes = text.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readText(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_DESCRIPTOR_BYTES) throw new IOException("Bad descriptor length " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
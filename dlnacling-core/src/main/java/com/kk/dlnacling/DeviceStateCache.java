@@ -0,0 +1,267 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.state.StateVariableValue;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.support.avtransport.lastchange.AVTransportLastChangeParser;
+import org.fourthline.cling.support.avtransport.lastchange.AVTransportVariable;
+import org.fourthline.cling.support.lastchange.LastChange;
+import org.fourthline.cling.support.model.Channel;
+import org.fourthline.cling.support.model.TransportState;
+import org.fourthline.cling.support.renderingcontrol.lastchange.ChannelVolume;
+import org.fourthline.cling.support.renderingcontrol.lastchange.RenderingControlLastChangeParser;
+import org.fourthline.cling.support.renderingcontrol.lastchange.RenderingControlVariable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 按设备缓存传输状态、音量、进度，相对调节（快进、音量加减）直接基于缓存计算，省去先查询再设置的一次往返。
+ * <p>
+ * {@link #track(Device)} 后经 {@link SubscriptionManager} 订阅 AVTransport / RenderingControl 的 LastChange 事件；
+ * 订阅失败或事件不包含的值（播放中的进度）按 {@link #setPollInterval(long)} 轮询
+ */
+public class DeviceStateCache {
+
+    private static final Logger log = Logger.getLogger(DeviceStateCache.class.getName());
+
+    private final DlnaClingController mController;
+    private final ConcurrentMap<UDN, RendererState> mStates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UDN, Tracking> mTrackings = new ConcurrentHashMap<>();
+    /**
+     * 跟踪中离线的设备
+     */
+    private final Set<UDN> mOffline = Collections.newSetFromMap(new ConcurrentHashMap<UDN, Boolean>());
+
+    private volatile long mPollIntervalMillis = 5000;
+    private volatile long mMaxAgeMillis = 10000;
+
+    DeviceStateCache(DlnaClingController controller) {
+        this.mController = controller;
+    }
+
+    /**
+     * 设备状态，不存在则创建
+     */
+    @NotNull
+    public RendererState get(@NotNull Device device) {
+        UDN udn = device.getIdentity().getUdn();
+        RendererState state = mStates.get(udn);
+        if (state == null) {
+            RendererState created = new RendererState();
+            state = mStates.putIfAbsent(udn, created);
+            if (state == null) state = created;
+        }
+        return state;
+    }
+
+    @Nullable
+    public RendererState peek(@Nullable Device device) {
+        return device == null ? null : mStates.get(device.getIdentity().getUdn());
+    }
+
+    /**
+     * 开始跟踪设备状态：订阅事件并立即取样一次
+     */
+    public void track(@NotNull Device device) {
+        UDN udn = device.getIdentity().getUdn();
+        if (mTrackings.containsKey(udn)) return;
+        Tracking tracking = new Tracking(device, get(device));
+        if (mTrackings.putIfAbsent(udn, tracking) != null) return;
+        tracking.start();
+    }
+
+    public void untrack(@Nullable Device device) {
+        if (device == null) return;
+        mOffline.remove(device.getIdentity().getUdn());
+        Tracking tracking = mTrackings.remove(device.getIdentity().getUdn());
+        if (tracking != null) tracking.stop();
+    }
+
+    public void untrackAll() {
+        mOffline.clear();
+        for (UDN udn : mTrackings.keySet()) {
+            Tracking tracking = mTrackings.remove(udn);
+            if (tracking != null) tracking.stop();
+        }
+    }
+
+    /**
+     * 设备离线，丢弃状态；跟踪中的设备重新上线(如重启)后恢复跟踪
+     */
+    void remove(@NotNull Device device) {
+        UDN udn = device.getIdentity().getUdn();
+        boolean tracked = mTrackings.containsKey(udn);
+        untrack(device);
+        if (tracked) mOffline.add(udn);
+        mStates.remove(udn);
+    }
+
+    void deviceAdded(@NotNull Device device) {
+        if (mOffline.remove(device.getIdentity().getUdn())) track(device);
+    }
+
+    /**
+     * 轮询间隔，默认 5 秒
+     */
+    public void setPollInterval(long pollIntervalMillis) {
+        this.mPollIntervalMillis = Math.max(500, pollIntervalMillis);
+    }
+
+    /**
+     * 没有事件维持的值在多久内可直接使用，默认 10 秒
+     */
+    public void setMaxAge(long maxAgeMillis) {
+        this.mMaxAgeMillis = maxAgeMillis;
+    }
+
+    public long getMaxAge() {
+        return mMaxAgeMillis;
+    }
+
+    @Nullable
+    private static String lastChangeXml(Map<String, StateVariableValue> values) {
+        StateVariableValue lastChange = values.get("LastChange");
+        return lastChange == null || lastChange.getValue() == null ? null : lastChange.getValue().toString();
+    }
+
+    /**
+     * @see TimeCode#parsePositionMillis(CharSequence)
+     */
+    static long parseTimeMillis(@Nullable String time) {
+        return TimeCode.parsePositionMillis(time);
+    }
+
+    private class Tracking implements Runnable {
+        private final Device device;
+        private final RendererState state;
+        @Nullable
+        private SubscriptionManager.Subscription avtSubscription;
+        @Nullable
+        private SubscriptionManager.Subscription rcSubscription;
+        @Nullable
+        private ScheduledFuture<?> poller;
+        private volatile boolean stopped;
+
+        Tracking(Device device, RendererState state) {
+            this.device = device;
+            this.state = state;
+        }
+
+        void start() {
+            SubscriptionManager subscriptions = mController.getSubscriptionManager();
+            avtSubscription = subscriptions.subscribe(device, DlnaClingController.AV_TRANSPORT_SERVICE, new StateListener(true));
+            rcSubscription = subscriptions.subscribe(device, DlnaClingController.RENDERING_CONTROL_SERVICE, new StateListener(false));
+            schedulePoll(0);
+        }
+
+        void stop() {
+            stopped = true;
+            if (avtSubscription != null) avtSubscription.cancel();
+            if (rcSubscription != null) rcSubscription.cancel();
+            ScheduledFuture<?> poller = this.poller;
+            if (poller != null) poller.cancel(false);
+            state.setTransportEvented(false);
+            state.setVolumeEvented(false);
+        }
+
+        private void schedulePoll(long delayMillis) {
+            if (!stopped) poller = DlnaScheduler.get().schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 轮询：只取事件不能提供的值，请求是异步的，不占用定时线程
+         */
+        @Override
+        public void run() {
+            if (stopped) return;
+            if (!state.isTransportEvented()) mController.getTransportInfoAsync(device);
+            // PositionTracker、Seek 刚取样过时不再查询
+            if ((!state.isTransportEvented() || state.getTransportState() == TransportState.PLAYING)
+                    && !state.isPositionFresh(mPollIntervalMillis / 2)) {
+                mController.getPositionInfoAsync(device);
+            }
+            if (!state.isVolumeEvented() && mController.getControlService(device) != null) {
+                mController.getVolumeAsync(device);
+            }
+            schedulePoll(mPollIntervalMillis);
+        }
+
+        /**
+         * 与其他模块共用设备的订阅，订阅失效期间由轮询补充
+         */
+        private class StateListener extends SubscriptionManager.EventListener {
+            private final boolean avTransport;
+
+            StateListener(boolean avTransport) {
+                this.avTransport = avTransport;
+            }
+
+            @Override
+            public void onEvent(@NotNull Service service, @NotNull Map<String, StateVariableValue> values) {
+                String xml = lastChangeXml(values);
+                if (stopped || xml == null) return;
+                try {
+                    if (avTransport) {
+                        onAVTransportChange(new LastChange(new AVTransportLastChangeParser(), xml));
+                    } else {
+                        onRenderingControlChange(new LastChange(new RenderingControlLastChangeParser(), xml));
+                    }
+                    setEvented(true);
+                } catch (Exception e) {
+                    log.fine("Unparsable LastChange event: " + e);
+                }
+            }
+
+            @Override
+            public void onSubscriptionChanged(@NotNull Service service, boolean active) {
+                // 建立后等第一个事件再视为有事件维持；失效时回到轮询
+                if (!active && !stopped) setEvented(false);
+            }
+
+            @Override
+            public void onEventsMissed(@NotNull Service service, int count) {
+                // 丢失的事件可能包含状态变化，下一次轮询校正
+                setEvented(false);
+            }
+
+            private void setEvented(boolean evented) {
+                if (avTransport) state.setTransportEvented(evented);
+                else state.setVolumeEvented(evented);
+            }
+        }
+
+        private void onAVTransportChange(LastChange lastChange) {
+            AVTransportVariable.TransportState transportState = lastChange.getEventedValue(0, AVTransportVariable.TransportState.class);
+            if (transportState != null && transportState.getValue() != null) {
+                TransportState old = state.getTransportState();
+                state.setTransportState(transportState.getValue());
+                // 开始/停止播放时重新取样进度
+                if (old != transportState.getValue()) mController.getPositionInfoAsync(device);
+            }
+            AVTransportVariable.CurrentTrackDuration duration = lastChange.getEventedValue(0, AVTransportVariable.CurrentTrackDuration.class);
+            if (duration != null) {
+                long millis = parseTimeMillis(duration.getValue());
+                if (millis >= 0) state.setDurationMillis(millis);
+            }
+        }
+
+        private void onRenderingControlChange(LastChange lastChange) {
+            RenderingControlVariable.Volume volume = lastChange.getEventedValue(0, RenderingControlVariable.Volume.class);
+            if (volume == null) return;
+            ChannelVolume channelVolume = volume.getValue();
+            if (channelVolume != null && channelVolume.getChannel() == Channel.Master && channelVolume.getVolume() != null) {
+                state.setVolume(channelVolume.getVolume());
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.support.model.ProtocolInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * DIDL-Lite 元数据写入，直接追加到线程内复用的缓冲区，不经过 String.format 和 DIDLObject。
+ * 文本和属性值按 XML 转义，其余输出与原先的 createItemMetadata 逐字节一致
+ * <pre>
+ * String metadata = DidlWriter.obtain()
+ *         .beginItem(id, "0", true, title, creator, VideoItem.CLASS.getValue())
+ *         .date()
+ *         .res(protocolInfo, null, null, url)
+ *         .endItem()
+ *         .finish();
+ * </pre>
+ * 同一线程内 {@link #obtain()} 返回同一个实例，{@link #finish()} 之前不要再次 obtain
+ */
+public final class DidlWriter {
+
+    static final String DIDL_LITE_HEADER = "<?xml version=\"1.0\"?>" +
+            "<DIDL-Lite " + "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" " +
+            "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" " + "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\" " +
+            "xmlns:dlna=\"urn:schemas-dlna-org:metadata-1-0/\">";
+    static final String DIDL_LITE_FOOTER = "</DIDL-Lite>";
+
+    /**
+     * 超过该长度的缓冲区用完后不再保留
+     */
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<DidlWriter> WRITERS = new ThreadLocal<DidlWriter>() {
+        @Override
+        protected DidlWriter initialValue() {
+            return new DidlWriter();
+        }
+    };
+
+    private StringBuilder buffer = new StringBuilder(1024);
+    private final Date now = new Date();
+    @Nullable
+    private SimpleDateFormat dateFormat;
+    @Nullable
+    private Locale dateLocale;
+
+    private DidlWriter() {
+    }
+
+    /**
+     * 当前线程的写入器，已写好 DIDL-Lite 头
+     */
+    @NotNull
+    public static DidlWriter obtain() {
+        DidlWriter writer = WRITERS.get();
+        if (writer.buffer.capacity() > MAX_RETAINED_CAPACITY) writer.buffer = new StringBuilder(1024);
+        writer.buffer.setLength(0);
+        writer.buffer.append(DIDL_LITE_HEADER);
+        return writer;
+    }
+
+    /**
+     * protocolInfo 属性值，格式与 ProtocolInfo.toString 一致
+     */
+    @NotNull
+    public static String protocolInfo(@NotNull ProtocolInfo pi) {
+        return pi.getProtocol() + ":" + pi.getNetwork() + ":" + pi.getContentFormatMimeType() + ":" + pi.getAdditionalInfo();
+    }
+
+    public DidlWriter beginItem(@Nullable String id, @Nullable String parentId, boolean restricted,
+                                @Nullable String title, @Nullable String creator, @Nullable String upnpClass) {
+        buffer.append("<item id=\"");
+        escape(id, true);
+        buffer.append("\" parentID=\"");
+        escape(parentId, true);
+        buffer.append("\" restricted=\"").append(restricted ? '1' : '0').append("\">");
+
+        buffer.append("<dc:title>");
+        escape(title, false);
+        buffer.append("</dc:title>");
+
+        // 兼容原有输出，尖括号替换为下划线
+        buffer.append("<upnp:artist>");
+        if (creator == null) {
+            buffer.append("null");
+        } else {
+            escape(creator.replace('<', '_').replace('>', '_'), false);
+        }
+        buffer.append("</upnp:artist>");
+
+        buffer.append("<upnp:class>");
+        escape(upnpClass, false);
+        buffer.append("</upnp:class>");
+        return this;
+    }
+
+    /**
+     * 容器，Browse/Search 结果中与 item 并列
+     */
+    public DidlWriter container(@NotNull String id, @NotNull String parentId, int childCount, @NotNull String title,
+                                @NotNull String upnpClass) {
+        buffer.append("<container id=\"");
+        escape(id, true);
+        buffer.append("\" parentID=\"");
+        escape(parentId, true);
+        buffer.append("\" restricted=\"1\" searchable=\"1\" childCount=\"").append(childCount).append("\">");
+        buffer.append("<dc:title>");
+        escape(title, false);
+        buffer.append("</dc:title><upnp:class>");
+        escape(upnpClass, false);
+        buffer.append("</upnp:class></container>");
+        return this;
+    }
+
+    /**
+     * 当前时间，本地时区，精确到秒
+     */
+    public DidlWriter date() {
+        return date(System.currentTimeMillis());
+    }
+
+    DidlWriter date(long millis) {
+        Locale locale = Locale.getDefault();
+        if (dateFormat == null || !locale.equals(dateLocale)) {
+            dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", locale);
+            dateLocale = locale;
+        }
+        now.setTime(millis);
+        buffer.append("<dc:date>").append(dateFormat.format(now)).append("</dc:date>");
+        return this;
+    }
+
+    /**
+     * 资源，没有的属性留空，属性之间的空格保持原样
+     *
+     * @param protocolInfo 见 {@link #protocolInfo(ProtocolInfo)}
+     */
+    public DidlWriter res(@Nullable String protocolInfo, @Nullable String resolution, @Nullable String duration,
+                          @Nullable String url) {
+        buffer.append("<res ");
+        if (protocolInfo != null) {
+            buffer.append("protocolInfo=\"");
+            escape(protocolInfo, true);
+            buffer.append('"');
+        }
+        buffer.append(' ');
+        if (resolution != null && resolution.length() > 0) {
+            buffer.append("resolution=\"");
+            escape(resolution, true);
+            buffer.append('"');
+        }
+        buffer.append(' ');
+        if (duration != null && duration.length() > 0) {
+            buffer.append("duration=\"");
+            escape(duration, true);
+            buffer.append('"');
+        }
+        buffer.append('>');
+        escape(url, false);
+        buffer.append("</res>");
+        return this;
+    }
+
+    /**
+     * 资源，只写出已知的属性
+     *
+     * @param size     字节数，未知时 <= 0
+     * @param duration H+:MM:SS.FFF，未知时为 null
+     * @param bitrate  字节/秒，未知时 <= 0
+     */
+    public DidlWriter res(@NotNull String protocolInfo, long size, @Nullable String duration, int width, int height,
+                          long bitrate, @Nullable String url) {
+        buffer.append("<res protocolInfo=\"");
+        escape(protocolInfo, true);
+        buffer.append('"');
+        if (size > 0) buffer.append(" size=\"").append(size).append('"');
+        if (duration != null) {
+            buffer.append(" duration=\"");
+            escape(duration, true);
+            buffer.append('"');
+        }
+        if (width > 0 && height > 0) buffer.append(" resolution=\"").append(width).append('x').append(height).append('"');
+        if (bitrate > 0) buffer.append(" bitrate=\"").append(bitrate).append('"');
+        buffer.append('>');
+        escape(url, false);
+        buffer.append("</res>");
+        return this;
+    }
+
+    public DidlWriter endItem() {
+        buffer.append("</item>");
+        return this;
+    }
+
+    /**
+     * 写入 DIDL-Lite 尾并返回结果
+     */
+    @NotNull
+    public String finish() {
+        buffer.append(DIDL_LITE_FOOTER);
+        return buffer.toString();
+    }
+
+    /**
+     * null 输出为 "null"，与 String.format 一致
+     */
+    private void escape(@Nullable String value, boolean attribute) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = attribute ? "&quot;" : null;
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement == null) continue;
+            buffer.append(value, start, i).append(replacement);
+            start = i + 1;
+        }
+        buffer.append(value, start, length);
+    }
+}
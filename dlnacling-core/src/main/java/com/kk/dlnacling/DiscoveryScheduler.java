@@ -0,0 +1,223 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.message.header.DeviceTypeHeader;
+import org.fourthline.cling.model.message.header.ServiceTypeHeader;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 分批多次发送 M-SEARCH。
+ * <p>
+ * 每批按搜索目标（默认 MediaRenderer:1、AVTransport:1）连续发送几次，弥补 UDP 丢包；
+ * 批与批之间的间隔逐次加倍，直到上限，发现新的投屏设备后间隔回到初始值
+ */
+public class DiscoveryScheduler {
+
+    private static final Logger log = Logger.getLogger(DiscoveryScheduler.class.getName());
+
+    private static final UDADeviceType MEDIA_RENDERER = new UDADeviceType("MediaRenderer", 1);
+    private static final UDAServiceType AV_TRANSPORT = new UDAServiceType("AVTransport", 1);
+
+    private final UpnpService mUpnpService;
+    private final RegistryListener mRegistryListener = new DefaultRegistryListener() {
+        @Override
+        public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+            if (isRenderer(device)) onRendererFound();
+        }
+    };
+
+    private UpnpHeader[] mTargets = {new DeviceTypeHeader(MEDIA_RENDERER), new ServiceTypeHeader(AV_TRANSPORT)};
+    private int mBurstCount = 3;
+    private long mBurstSpacingMillis = 300;
+    private int mMxSeconds = 2;
+    private long mInitialIntervalMillis = 5000;
+    private long mMaxIntervalMillis = 5 * 60 * 1000L;
+
+    private boolean mRunning;
+    private long mIntervalMillis;
+    private long mStartNanos;
+    private volatile long mTimeToFirstRenderer = -1;
+    private volatile int mSearchCount;
+    @Nullable
+    private ScheduledFuture<?> mNextBurst;
+    @Nullable
+    private volatile Listener mListener;
+
+    public DiscoveryScheduler(@NotNull UpnpService upnpService) {
+        this.mUpnpService = upnpService;
+    }
+
+    /**
+     * 搜索目标，默认 MediaRenderer:1 和 AVTransport:1
+     */
+    public synchronized void setTargets(@NotNull UpnpHeader... targets) {
+        this.mTargets = targets.clone();
+    }
+
+    /**
+     * 每批发送次数及间隔
+     */
+    public synchronized void setBurst(int count, long spacingMillis) {
+        this.mBurstCount = Math.max(1, count);
+        this.mBurstSpacingMillis = Math.max(0, spacingMillis);
+    }
+
+    /**
+     * 批次间隔，从 initial 开始逐次加倍，不超过 max
+     */
+    public synchronized void setInterval(long initialMillis, long maxMillis) {
+        this.mInitialIntervalMillis = Math.max(100, initialMillis);
+        this.mMaxIntervalMillis = Math.max(mInitialIntervalMillis, maxMillis);
+    }
+
+    /**
+     * M-SEARCH 的 MX，设备在 0~MX 秒内随机延迟响应，默认 2
+     */
+    public synchronized void setMxSeconds(int mxSeconds) {
+        this.mMxSeconds = Math.max(1, mxSeconds);
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.mListener = listener;
+    }
+
+    public synchronized void start() {
+        if (mRunning) return;
+        mRunning = true;
+        mStartNanos = System.nanoTime();
+        mTimeToFirstRenderer = -1;
+        mUpnpService.getRegistry().addListener(mRegistryListener);
+        searchNowLocked();
+    }
+
+    public synchronized void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+        mUpnpService.getRegistry().removeListener(mRegistryListener);
+        if (mNextBurst != null) mNextBurst.cancel(false);
+        mNextBurst = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * 立即发送一批，并把间隔恢复为初始值，如网络切换后调用
+     */
+    public synchronized void searchNow() {
+        if (mRunning) searchNowLocked();
+    }
+
+    /**
+     * 从 {@link #start()} 到第一个投屏设备加入 registry 的毫秒数，还没有时为 -1。
+     * 包括从 {@link DeviceSnapshotStore} 恢复的设备
+     */
+    public long getTimeToFirstRenderer() {
+        return mTimeToFirstRenderer;
+    }
+
+    /**
+     * 已发送的 M-SEARCH 数
+     */
+    public int getSearchCount() {
+        return mSearchCount;
+    }
+
+    private void searchNowLocked() {
+        mIntervalMillis = mInitialIntervalMillis;
+        scheduleBurstLocked(0);
+    }
+
+    private void scheduleBurstLocked(long delayMillis) {
+        if (mNextBurst != null) mNextBurst.cancel(false);
+        mNextBurst = DlnaScheduler.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                burst();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void burst() {
+        UpnpHeader[] targets;
+        int count;
+        long spacing;
+        synchronized (this) {
+            if (!mRunning) return;
+            targets = mTargets;
+            count = mBurstCount;
+            spacing = mBurstSpacingMillis;
+            // 下一批在本批发完后按当前间隔开始，随后间隔加倍
+            scheduleBurstLocked((count - 1) * spacing + mIntervalMillis);
+            mIntervalMillis = Math.min(mMaxIntervalMillis, mIntervalMillis * 2);
+        }
+        for (int i = 0; i < count; i++) {
+            final UpnpHeader[] sendTargets = targets;
+            DlnaScheduler.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send(sendTargets);
+                }
+            }, i * spacing, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 只交给 cling 的执行线程发送，不阻塞定时线程
+     */
+    private void send(UpnpHeader[] targets) {
+        int mx;
+        synchronized (this) {
+            if (!mRunning) return;
+            mx = mMxSeconds;
+        }
+        for (UpnpHeader target : targets) {
+            mUpnpService.getControlPoint().search(target, mx);
+            mSearchCount++;
+        }
+    }
+
+    private void onRendererFound() {
+        long elapsed;
+        synchronized (this) {
+            if (!mRunning) return;
+            // 网络上仍有设备陆续出现，恢复较密的搜索
+            if (mIntervalMillis > mInitialIntervalMillis) {
+                mIntervalMillis = mInitialIntervalMillis;
+                scheduleBurstLocked(mInitialIntervalMillis);
+            }
+            if (mTimeToFirstRenderer >= 0) return;
+            elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos);
+            mTimeToFirstRenderer = elapsed;
+        }
+        log.fine("First renderer found after " + elapsed + "ms, " + mSearchCount + " searches");
+        Listener listener = mListener;
+        if (listener != null) listener.onFirstRenderer(elapsed);
+    }
+
+    private static boolean isRenderer(RemoteDevice device) {
+        return device.getType().implementsVersion(MEDIA_RENDERER) || device.findService(AV_TRANSPORT) != null;
+    }
+
+    public interface Listener {
+        /**
+         * 在 cling 的 registry 监听线程中回调
+         *
+         * @param elapsedMillis 从开始搜索到发现第一个投屏设备的毫秒数
+         */
+        void onFirstRenderer(long elapsedMillis);
+    }
+}
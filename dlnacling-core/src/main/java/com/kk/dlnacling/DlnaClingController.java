@@ -0,0 +1,1287 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.binding.annotations.AnnotationLocalServiceBinder;
+import org.fourthline.cling.controlpoint.ActionCallback;
+import org.fourthline.cling.controlpoint.ControlPoint;
+import org.fourthline.cling.model.DefaultServiceManager;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.gena.GENASubscription;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.meta.Action;
+import org.fourthline.cling.model.meta.ActionArgument;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.DeviceIdentity;
+import org.fourthline.cling.model.meta.Icon;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.meta.ManufacturerDetails;
+import org.fourthline.cling.model.meta.ModelDetails;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.meta.StateVariable;
+import org.fourthline.cling.model.types.DeviceType;
+import org.fourthline.cling.model.types.InvalidValueException;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.model.types.UnsignedIntegerFourBytes;
+import org.fourthline.cling.model.types.UnsignedIntegerTwoBytes;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryListener;
+import org.fourthline.cling.support.connectionmanager.ConnectionManagerService;
+import org.fourthline.cling.support.model.PositionInfo;
+import org.fourthline.cling.support.model.TransportInfo;
+import org.fourthline.cling.support.model.TransportState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+public class DlnaClingController {
+
+    @Nullable
+    private UpnpService mUpnpService;
+
+    static final ServiceType AV_TRANSPORT_SERVICE = new UDAServiceType("AVTransport");
+    static final ServiceType RENDERING_CONTROL_SERVICE = new UDAServiceType("RenderingControl");
+    private static final ServiceType CONNECTION_MANAGER_SERVICE = new UDAServiceType("ConnectionManager");
+
+    private static final String SERVER_TYPE = "MediaServer";
+    private static final int SERVER_VERSION = 1;
+
+    private static final Logger log = Logger.getLogger(DlnaClingController.class.getName());
+
+    private static final UnsignedIntegerFourBytes INSTANCE_ID = new UnsignedIntegerFourBytes(0);
+    private static final String MASTER_CHANNEL = "Master";
+    /**
+     * Seek 目标距结束的最小距离
+     */
+    private static final long SEEK_END_MARGIN_MILLIS = 1000;
+    private static final int SEEK_MODE_NOT_SUPPORTED = 710;
+
+    private final DeviceStateCache mStateCache = new DeviceStateCache(this);
+    private final CapabilityCache mCapabilityCache = new CapabilityCache(this);
+    private final SubscriptionManager mSubscriptionManager = new SubscriptionManager(this);
+    @Nullable
+    private LocalMediaServer mMediaServer;
+    @Nullable
+    private MediaLibrary mMediaLibrary;
+    @Nullable
+    private DeviceSnapshotStore mSnapshotStore;
+    @Nullable
+    private volatile DiscoveryScheduler mDiscovery;
+    @Nullable
+    private RegistryMaintenancePolicy mMaintenance;
+    private boolean mIdleMaintenance;
+    private boolean mSessionActive;
+
+    @Nullable
+    private volatile ExecutorService mActionExecutor;
+    private volatile boolean mPipelinedCast;
+    private volatile long mActionTimeoutMillis;
+    @Nullable
+    private volatile CastTimingListener mCastTimingListener;
+    private final ActionMetrics mMetrics = new ActionMetrics();
+    private volatile ActionPolicy mActionPolicy = new ActionPolicy();
+    private final ConcurrentMap<UDN, DeviceHealth> mDeviceHealth = new ConcurrentHashMap<>();
+
+    /**
+     * 初始化投屏服务
+     *
+     * @param upnpService      投屏服务
+     * @param registryListener 设备变化监听，可以为空
+     */
+    public void initService(UpnpService upnpService, @Nullable RegistryListener registryListener) {
+        mUpnpService = upnpService;
+        if (mUpnpService == null) return;
+        final UDN udn = UpnpUtil.uniqueSystemIdentifier("GNaP-MediaServer");
+        if (mUpnpService.getRegistry().getLocalDevice(udn, true) != null) {
+//                    LocalService service = localDevice1.findService(new UDAServiceType(SERVER_TYPE, SERVER_VERSION));
+            return;
+        }
+        try {
+            DeviceType type = new UDADeviceType(SERVER_TYPE, SERVER_VERSION);
+            DeviceDetails details = new DeviceDetails("DMS  (" + UpnpUtil.deviceModel() + ")", new ManufacturerDetails(
+                    UpnpUtil.deviceManufacturer()), new ModelDetails(UpnpUtil.deviceModel(), "MSI MediaServer", "v1"));
+            AnnotationLocalServiceBinder binder = new AnnotationLocalServiceBinder();
+            LocalService service = binder.read(SwitchPower.class);
+            service.setManager(new DefaultServiceManager(service, SwitchPower.class));
+            LocalService<LibraryContentDirectory> contentDirectory = binder.read(LibraryContentDirectory.class);
+            contentDirectory.setManager(new DefaultServiceManager<LibraryContentDirectory>(contentDirectory, null) {
+                @Override
+                protected LibraryContentDirectory createServiceImplementation() {
+                    return new LibraryContentDirectory(getMediaLibrary(), getMediaServer());
+                }
+            });
+            LocalService<ConnectionManagerService> connectionManager = binder.read(ConnectionManagerService.class);
+            connectionManager.setManager(new DefaultServiceManager<>(connectionManager, ConnectionManagerService.class));
+            LocalDevice localDevice = new LocalDevice(new DeviceIdentity(udn), type, details, (Icon) null,
+                    new LocalService[]{service, contentDirectory, connectionManager});
+            mUpnpService.getRegistry().addDevice(localDevice);
+        } catch (ValidationException e) {
+            e.printStackTrace();
+        }
+        if (registryListener != null) mUpnpService.getRegistry().addListener(registryListener);
+        mUpnpService.getRegistry().addListener(new DefaultRegistryListener() {
+            @Override
+            public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+                // 发现时查询能播放的格式，投屏时不再多一次往返
+                if (device.findService(AV_TRANSPORT_SERVICE) != null && device.findService(CONNECTION_MANAGER_SERVICE) != null) {
+                    mCapabilityCache.probe(device);
+                }
+                // 设备重新上线(重启)后恢复仍有监听的订阅
+                mSubscriptionManager.deviceAdded(device);
+                mStateCache.deviceAdded(device);
+                super.remoteDeviceAdded(registry, device);
+            }
+
+            @Override
+            public void deviceRemoved(Registry registry, Device device) {
+                mStateCache.remove(device);
+                mCapabilityCache.invalidate(device);
+                mSubscriptionManager.deviceRemoved(device);
+                mDeviceHealth.remove(device.getRoot().getIdentity().getUdn());
+            }
+        });
+        if (mSnapshotStore != null) mSnapshotStore.attach(mUpnpService);
+        synchronized (this) {
+            mMaintenance = new RegistryMaintenancePolicy(mUpnpService);
+            mMaintenance.setIdleMode(mIdleMaintenance);
+            mMaintenance.setSessionActive(mSessionActive);
+            mMaintenance.attach();
+        }
+        DiscoveryScheduler discovery = new DiscoveryScheduler(mUpnpService);
+        mDiscovery = discovery;
+        discovery.start();
+    }
+
+    /**
+     * 设置片源
+     *
+     * @param device   投屏设备
+     * @param url      片源地址
+     * @param itemType 投屏类型
+     * @param callback 投屏结果回调
+     * @see UpnpUtil itemType
+     */
+    public void setAVTransportURI(@Nullable Device device, @Nullable String url, int itemType,
+                                  @Nullable final ExecuteCallback callback) {
+        setAVTransportURIAsync(device, url, itemType).addCallback(callback);
+    }
+
+    /**
+     * 播放视频
+     *
+     * @param device   投屏设备
+     * @param url      片源地址
+     * @param itemType 投屏类型
+     * @param callback 投屏结果回调
+     * @see UpnpUtil itemType
+     * @see #setPipelinedCast(boolean)
+     */
+    public void autoPlay(@Nullable Device device, @Nullable String url, int itemType,
+                         @Nullable final ExecuteCallback callback) {
+        autoPlayAsync(device, url, itemType).addCallback(callback);
+    }
+
+    /**
+     * 视频进度调节
+     *
+     * @param device   投屏设备
+     * @param seconds  移动秒数，正数：快进；负数：快退
+     * @param callback 投屏结果回调
+     */
+    public void seek(Device device, final int seconds, final ExecuteCallback callback) {
+        seekAsync(device, seconds).addCallback(callback);
+    }
+
+    /**
+     * 音量调节
+     *
+     * @param device   投屏设备
+     * @param volume   音量调节数，正/负，最小0，最大100
+     * @param callback 投屏结果回调
+     */
+    public void setVolume(Device device, final int volume, final ExecuteCallback callback) {
+        setVolumeAsync(device, volume).addCallback(callback);
+    }
+
+    /**
+     * 设置片源
+     *
+     * @see #setAVTransportURI(Device, String, int, ExecuteCallback)
+     */
+    public ActionFuture<ActionInvocation> setAVTransportURIAsync(@Nullable Device device, @Nullable String url, int itemType) {
+        if (isEmpty(url)) return precondition("投屏地址异常");
+        return setAVTransportURIAsync(device, new MediaMetadata(url, itemType));
+    }
+
+    /**
+     * 设置片源，带上完整的片源信息
+     */
+    public ActionFuture<ActionInvocation> setAVTransportURIAsync(@Nullable Device device, @NotNull MediaMetadata media) {
+        if (isEmpty(media.getUrl())) return precondition("投屏地址异常");
+        Service avtService = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, avtService);
+        if (error != null) return precondition(error);
+        return sendSetUri(avtService, media.getUrl(), media.toDidl());
+    }
+
+    /**
+     * 播放视频：先停止、再设置片源、最后播放
+     *
+     * @see #autoPlay(Device, String, int, ExecuteCallback)
+     * @see #setPipelinedCast(boolean)
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(@Nullable Device device, @Nullable String url, int itemType) {
+        if (isEmpty(url)) return precondition("投屏地址异常");
+        return autoPlayAsync(device, new MediaMetadata(url, itemType));
+    }
+
+    /**
+     * 播放视频，带上完整的片源信息，设备可以省去播放前的探测
+     *
+     * @see MediaMetadata
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(@Nullable Device device, @NotNull MediaMetadata media) {
+        if (isEmpty(media.getUrl())) return precondition("投屏地址异常");
+        if (mUpnpService == null || mUpnpService.getControlPoint() == null) return precondition("投屏服务异常");
+        final Service avtService = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, avtService);
+        if (error != null) return precondition(error);
+        if (isKnownUnsupported(device, media)) return precondition("接收设备不支持该片源格式");
+
+        final CastTimings timings = new CastTimings(device);
+        return prepareCast(device, avtService, media, timings).thenCompose(new ActionFuture.Continuation<ActionInvocation, ActionInvocation>() {
+            @Override
+            public ActionFuture<ActionInvocation> then(ActionInvocation value) {
+                return startCast(avtService, timings);
+            }
+        });
+    }
+
+    /**
+     * 播放视频，片源有多种格式时先按设备能播放的格式选择一个，再发送命令；
+     * 设备的格式未缓存时先查询，查询失败或没有匹配的格式时使用第一个。
+     * 开启严格检查后，没有匹配的格式且片源明确设置了 MIME 类型时直接失败
+     *
+     * @param variants 同一内容的不同格式，按优先级排列
+     * @see #getCapabilityCache()
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(@Nullable final Device device, @NotNull final List<MediaMetadata> variants) {
+        if (variants.isEmpty()) return precondition("投屏地址异常");
+        if (device == null) return precondition("未选择投屏设备");
+        if (variants.size() == 1 || device.findService(CONNECTION_MANAGER_SERVICE) == null) {
+            return autoPlayAsync(device, variants.get(0));
+        }
+        final ActionFuture<RendererCapabilities> capabilities = mCapabilityCache.get(device);
+        final ActionFuture<ActionInvocation> result = new ActionFuture<>();
+        capabilities.addListener(new ActionFuture.Listener<RendererCapabilities>() {
+            @Override
+            public void onComplete(ActionFuture<RendererCapabilities> future) {
+                if (result.isDone()) return;
+                MediaMetadata selected = future.isSuccess() ? future.getValue().select(variants) : variants.get(0);
+                if (selected == null) {
+                    // 与 isKnownUnsupported 一致：只有开启严格检查且有明确的 MIME 类型时才拒绝投屏
+                    if (mCapabilityCache.isStrict() && hasExplicitMimeType(variants)) {
+                        result.fail(ActionFailedException.precondition("接收设备不支持该片源格式"));
+                        return;
+                    }
+                    selected = variants.get(0);
+                }
+                ActionFuture<ActionInvocation> cast = autoPlayAsync(device, selected);
+                result.cancelWith(cast);
+                cast.addListener(new ActionFuture.Listener<ActionInvocation>() {
+                    @Override
+                    public void onComplete(ActionFuture<ActionInvocation> future) {
+                        result.completeFrom(future);
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    private static boolean hasExplicitMimeType(List<MediaMetadata> variants) {
+        for (MediaMetadata media : variants) {
+            if (media.getMimeType() != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 开启了严格检查，缓存中有设备的格式列表，并且确定不支持明确设置了 MIME 类型的片源
+     *
+     * @see CapabilityCache#setStrict(boolean)
+     */
+    boolean isKnownUnsupported(@NotNull Device device, @NotNull MediaMetadata media) {
+        if (!mCapabilityCache.isStrict() || media.getMimeType() == null) return false;
+        RendererCapabilities capabilities = mCapabilityCache.peek(device);
+        return capabilities != null && !capabilities.supports(media);
+    }
+
+    /**
+     * 播放本地文件：通过内置的 http 服务发布，地址取发现该设备的本机网卡地址
+     *
+     * @see #getMediaServer()
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(@Nullable Device device, @NotNull File file) {
+        if (!(device instanceof RemoteDevice)) return precondition("未选择投屏设备");
+        InetAddress localAddress = ((RemoteDevice) device).getIdentity().getDiscoveredOnLocalAddress();
+        if (localAddress == null) return precondition("无法确定本机地址");
+        MediaMetadata media;
+        try {
+            media = getMediaServer().publish(file, localAddress);
+        } catch (IOException e) {
+            log.warning("Publish local file failed: " + e);
+            return precondition("本地文件读取失败");
+        }
+        return autoPlayAsync(device, media);
+    }
+
+    /**
+     * 同一片源同时投到多个设备
+     *
+     * @param devices  投屏设备
+     * @param url      片源地址
+     * @param itemType 投屏类型
+     * @param options  并发数、是否对齐播放，为空时使用默认值
+     * @return 与 devices 顺序一致的各设备结果；取消会取消所有进行中的命令
+     * @see UpnpUtil itemType
+     */
+    public ActionFuture<List<GroupCastResult>> autoPlay(@NotNull Collection<Device> devices, @Nullable String url, int itemType,
+                                                        @Nullable GroupCastOptions options) {
+        if (isEmpty(url)) return precondition("投屏地址异常");
+        return autoPlay(devices, new MediaMetadata(url, itemType), options);
+    }
+
+    /**
+     * 同一片源同时投到多个设备，带上完整的片源信息
+     *
+     * @see #autoPlay(Collection, String, int, GroupCastOptions)
+     */
+    public ActionFuture<List<GroupCastResult>> autoPlay(@NotNull Collection<Device> devices, @NotNull MediaMetadata media,
+                                                        @Nullable GroupCastOptions options) {
+        if (isEmpty(media.getUrl())) return precondition("投屏地址异常");
+        if (mUpnpService == null || mUpnpService.getControlPoint() == null) return precondition("投屏服务异常");
+        return new GroupCast(this, devices, media, options == null ? new GroupCastOptions() : options).start();
+    }
+
+    /**
+     * 投屏前两步：停止、设置片源
+     */
+    ActionFuture<ActionInvocation> prepareCast(Device device, final Service avtService, final MediaMetadata media,
+                                               final CastTimings timings) {
+        ActionFuture<ActionInvocation> prepared;
+        if (mPipelinedCast) {
+            prepared = pipelinedSetUri(device, avtService, media, timings);
+        } else {
+            prepared = timedStop(avtService, timings).thenCompose(new ActionFuture.Continuation<ActionInvocation, ActionInvocation>() {
+                @Override
+                public ActionFuture<ActionInvocation> then(ActionInvocation value) {
+                    long begin = timings.begin();
+                    String metadata = media.toDidl();
+                    timings.metadataDone(begin);
+                    return timedSetUri(avtService, media.getUrl(), metadata, timings);
+                }
+            });
+        }
+        return prepared.addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                if (!future.isSuccess()) finishCast(timings, false);
+            }
+        });
+    }
+
+    /**
+     * 投屏最后一步：播放
+     */
+    ActionFuture<ActionInvocation> startCast(Service avtService, final CastTimings timings) {
+        return timedPlay(avtService, timings).addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                finishCast(timings, future.isSuccess());
+            }
+        });
+    }
+
+    private void finishCast(CastTimings timings, boolean success) {
+        timings.finish(success);
+        log.fine(timings.toString());
+        CastTimingListener listener = mCastTimingListener;
+        if (listener != null) listener.onCastTimings(timings);
+    }
+
+    /**
+     * 流水线投屏：预先生成 metadata；已知设备处于停止/无媒体状态时跳过 Stop，
+     * 否则 Stop 与 SetAVTransportURI 同时发出，两者返回后立即 Play。
+     * Stop 的先后对结果没有影响（最终都会由 Play 开始播放新片源），Stop 失败也不影响投屏
+     */
+    private ActionFuture<ActionInvocation> pipelinedSetUri(Device device, Service avtService, MediaMetadata media,
+                                                           CastTimings timings) {
+        long begin = timings.begin();
+        String url = media.getUrl();
+        String metadata = media.toDidl();
+        timings.metadataDone(begin);
+        if (isTransportIdle(device)) {
+            timings.stopSkipped();
+            return timedSetUri(avtService, url, metadata, timings);
+        }
+        List<ActionFuture<ActionInvocation>> both = new ArrayList<>(2);
+        both.add(timedStop(avtService, timings));
+        final ActionFuture<ActionInvocation> setUri = timedSetUri(avtService, url, metadata, timings);
+        both.add(setUri);
+        return ActionFuture.allDone(both).thenCompose(new ActionFuture.Continuation<List<ActionFuture<ActionInvocation>>, ActionInvocation>() {
+            @Override
+            public ActionFuture<ActionInvocation> then(List<ActionFuture<ActionInvocation>> value) {
+                return setUri;
+            }
+        });
+    }
+
+    private ActionFuture<ActionInvocation> timedStop(Service avtService, final CastTimings timings) {
+        final long begin = timings.begin();
+        return sendStop(avtService).addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                timings.stopDone(begin);
+            }
+        });
+    }
+
+    private ActionFuture<ActionInvocation> timedSetUri(Service avtService, String url, String metadata, final CastTimings timings) {
+        final long begin = timings.begin();
+        return sendSetUri(avtService, url, metadata).addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                timings.setUriDone(begin);
+            }
+        });
+    }
+
+    private ActionFuture<ActionInvocation> timedPlay(Service avtService, final CastTimings timings) {
+        final long begin = timings.begin();
+        return sendPlay(avtService).addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                timings.playDone(begin);
+            }
+        });
+    }
+
+    /**
+     * 记录本端最近一次得知的设备传输状态
+     */
+    private void updateTransportState(Device device, TransportState state) {
+        mStateCache.get(device).setTransportState(state);
+    }
+
+    /**
+     * 设备当前的传输状态是否为 停止/无媒体，过期的状态视为未知
+     */
+    private boolean isTransportIdle(Device device) {
+        RendererState state = mStateCache.peek(device);
+        if (state == null || !state.isTransportStateFresh(mStateCache.getMaxAge())) return false;
+        return state.getTransportState() == TransportState.STOPPED || state.getTransportState() == TransportState.NO_MEDIA_PRESENT;
+    }
+
+    /**
+     * 视频进度调节
+     *
+     * @see #seek(Device, int, ExecuteCallback)
+     */
+    public ActionFuture<ActionInvocation> seekAsync(@Nullable Device device, int seconds) {
+        return seekAsync(device, SeekTarget.offset(seconds * 1000L));
+    }
+
+    /**
+     * 跳转到指定进度，时长已知时限制在时长内
+     *
+     * @param positionMillis 目标进度，毫秒
+     */
+    public ActionFuture<ActionInvocation> seekToAsync(@Nullable Device device, long positionMillis) {
+        return seekAsync(device, SeekTarget.position(positionMillis));
+    }
+
+    /**
+     * 按目标跳转：时间点、相对偏移、百分比、ABS_TIME、REL_COUNT、字节偏移。
+     * 相对偏移、百分比需要当前进度或时长，缓存的进度可用时直接 Seek，否则先查询一次
+     *
+     * @see SeekTarget
+     */
+    public ActionFuture<ActionInvocation> seekAsync(@Nullable Device device, @NotNull final SeekTarget target) {
+        final Service transportService = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, transportService);
+        if (error != null) return precondition(error);
+        if (target.getKind() == SeekTarget.Kind.COUNT) {
+            if (!isSeekUnitAllowed(transportService, target.getUnit())) return precondition("接收设备不支持该进度调节方式");
+            return sendSeek(transportService, target.getUnit(), String.valueOf(Math.max(0, target.getValue())));
+        }
+        RendererState state = mStateCache.peek(device);
+        if (target.getKind() == SeekTarget.Kind.POSITION) {
+            return seekTime(transportService, target.getUnit(), target.getValue(), state == null ? -1 : state.getDurationMillis());
+        }
+        if (state != null && state.isPositionFresh(mStateCache.getMaxAge()) && state.getDurationMillis() >= 0) {
+            return seekTime(transportService, target.getUnit(),
+                    resolve(target, state.estimatePositionMillis(), state.getDurationMillis()), state.getDurationMillis());
+        }
+        return sendGetPositionInfo(transportService).thenCompose(new ActionFuture.Continuation<PositionInfo, ActionInvocation>() {
+            @Override
+            public ActionFuture<ActionInvocation> then(PositionInfo positionInfo) {
+                long position = DeviceStateCache.parseTimeMillis(positionInfo.getRelTime());
+                long duration = DeviceStateCache.parseTimeMillis(positionInfo.getTrackDuration());
+                if (target.getKind() == SeekTarget.Kind.OFFSET ? position < 0 : duration <= 0) {
+                    return precondition("当前视频暂不支持进度调节");
+                }
+                return seekTime(transportService, target.getUnit(), resolve(target, position, duration), duration);
+            }
+        });
+    }
+
+    /**
+     * 相对偏移、百分比换算为时间点
+     */
+    static long resolve(SeekTarget target, long positionMillis, long durationMillis) {
+        if (target.getKind() == SeekTarget.Kind.PERCENT) return Math.round(durationMillis * target.getPercent() / 100);
+        return positionMillis + target.getValue();
+    }
+
+    /**
+     * 不小于 0，时长已知(大于 0)时不超过结束前 {@link #SEEK_END_MARGIN_MILLIS}，部分设备会拒绝等于时长的目标(711)
+     */
+    static long clampSeekMillis(long targetMillis, long durationMillis) {
+        long target = Math.max(0, targetMillis);
+        if (durationMillis > 0) target = Math.min(target, Math.max(0, durationMillis - SEEK_END_MARGIN_MILLIS));
+        return target;
+    }
+
+    /**
+     * 跳转到 targetMillis，按 {@link #clampSeekMillis(long, long)} 限制范围
+     */
+    private ActionFuture<ActionInvocation> seekTime(final Service transportService, String unit, long targetMillis,
+                                                    long durationMillis) {
+        if (durationMillis == 0) {
+            return precondition("当前视频不支持进度调节");
+        }
+        final long clamped = clampSeekMillis(targetMillis, durationMillis);
+        final RendererState state = mStateCache.get(transportService.getDevice());
+        if (SeekTarget.REL_TIME.equals(unit) && (state.isAbsTimeSeek() || !isSeekUnitAllowed(transportService, SeekTarget.REL_TIME))) {
+            unit = SeekTarget.ABS_TIME;
+        }
+        if (!isSeekUnitAllowed(transportService, unit)) return precondition("接收设备不支持该进度调节方式");
+
+        final String time = TimeCode.format(clamped);
+        ActionFuture<ActionInvocation> seek = sendSeek(transportService, unit, time);
+        if (SeekTarget.REL_TIME.equals(unit) && isSeekUnitAllowed(transportService, SeekTarget.ABS_TIME)) {
+            // 部分设备声明了 REL_TIME 实际只接受 ABS_TIME，返回 710 时改用 ABS_TIME 重试，之后直接使用 ABS_TIME
+            final ActionFuture<ActionInvocation> first = seek;
+            final ActionFuture<ActionInvocation> result = new ActionFuture<>();
+            result.cancelWith(first);
+            first.addListener(new ActionFuture.Listener<ActionInvocation>() {
+                @Override
+                public void onComplete(ActionFuture<ActionInvocation> future) {
+                    if (future.isSuccess() || errorCodeOf(future.getFailure()) != SEEK_MODE_NOT_SUPPORTED) {
+                        result.completeFrom(future);
+                        return;
+                    }
+                    state.setAbsTimeSeek(true);
+                    ActionFuture<ActionInvocation> retry = sendSeek(transportService, SeekTarget.ABS_TIME, time);
+                    result.cancelWith(retry);
+                    retry.addListener(new ActionFuture.Listener<ActionInvocation>() {
+                        @Override
+                        public void onComplete(ActionFuture<ActionInvocation> future) {
+                            result.completeFrom(future);
+                        }
+                    });
+                }
+            });
+            seek = result;
+        }
+        return seek.addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                if (future.isSuccess()) state.setPositionMillis(clamped);
+            }
+        });
+    }
+
+    /**
+     * Seek 的 Unit 是否在设备声明的取值范围内，没有声明范围时视为支持
+     */
+    private static boolean isSeekUnitAllowed(Service transportService, String unit) {
+        Action action = transportService.getAction("Seek");
+        ActionArgument argument = action == null ? null : action.getInputArgument("Unit");
+        StateVariable variable = argument == null ? null : transportService.getRelatedStateVariable(argument);
+        String[] allowed = variable == null ? null : variable.getTypeDetails().getAllowedValues();
+        if (allowed == null || allowed.length == 0) return true;
+        for (String value : allowed) {
+            if (unit.equals(value)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 设备返回的 UPnP 错误码，没有时为 -1
+     */
+    private static int errorCodeOf(@Nullable Throwable failure) {
+        if (!(failure instanceof ActionFailedException)) return -1;
+        ActionInvocation invocation = ((ActionFailedException) failure).getInvocation();
+        return invocation == null || invocation.getFailure() == null ? -1 : invocation.getFailure().getErrorCode();
+    }
+
+    /**
+     * 设置音量
+     *
+     * @param volume 目标音量，0-100
+     */
+    public ActionFuture<ActionInvocation> setVolumeToAsync(@Nullable Device device, int volume) {
+        Service service = device == null ? null : device.findService(RENDERING_CONTROL_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendSetVolume(service, Math.max(0, Math.min(100, volume)));
+    }
+
+    /**
+     * 音量调节
+     *
+     * @see #setVolume(Device, int, ExecuteCallback)
+     */
+    public ActionFuture<ActionInvocation> setVolumeAsync(@Nullable Device device, final int volume) {
+        final Service service = device == null ? null : device.findService(RENDERING_CONTROL_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        // 缓存的音量可用时直接设置，并立即更新缓存，连续调节时每次都基于上一次的目标值
+        RendererState state = mStateCache.peek(device);
+        if (state != null && state.isVolumeFresh(mStateCache.getMaxAge())) {
+            int toVolume = Math.max(0, Math.min(100, state.getVolume() + volume));
+            state.setVolume(toVolume);
+            return sendSetVolume(service, toVolume);
+        }
+        return sendGetVolume(service).thenCompose(new ActionFuture.Continuation<Integer, ActionInvocation>() {
+            @Override
+            public ActionFuture<ActionInvocation> then(Integer current) {
+                int toVolume = Math.max(0, Math.min(100, current + volume));
+                return sendSetVolume(service, toVolume);
+            }
+        });
+    }
+
+    public ActionFuture<ActionInvocation> stopAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendStop(service);
+    }
+
+    public ActionFuture<ActionInvocation> playAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendPlay(service);
+    }
+
+    public ActionFuture<ActionInvocation> pauseAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendPause(service);
+    }
+
+    public ActionFuture<PositionInfo> getPositionInfoAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendGetPositionInfo(service);
+    }
+
+    public ActionFuture<TransportInfo> getTransportInfoAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(AV_TRANSPORT_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendGetTransportInfo(service);
+    }
+
+    public ActionFuture<Integer> getVolumeAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(RENDERING_CONTROL_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendGetVolume(service);
+    }
+
+    /**
+     * 查询设备能播放的格式，结果写入 {@link #getCapabilityCache()}
+     */
+    public ActionFuture<RendererCapabilities> getProtocolInfoAsync(@Nullable Device device) {
+        Service service = device == null ? null : device.findService(CONNECTION_MANAGER_SERVICE);
+        String error = checkService(device, service);
+        if (error != null) return precondition(error);
+        return sendGetProtocolInfo(service);
+    }
+
+    private ActionFuture<ActionInvocation> sendStop(final Service avtService) {
+        return invoke(avtService, "Stop", "InstanceID", INSTANCE_ID)
+                .addListener(new TransportStateUpdater(avtService, TransportState.STOPPED));
+    }
+
+    private ActionFuture<ActionInvocation> sendPlay(Service avtService) {
+        return invoke(avtService, "Play", "InstanceID", INSTANCE_ID, "Speed", "1")
+                .addListener(new TransportStateUpdater(avtService, TransportState.PLAYING));
+    }
+
+    private ActionFuture<ActionInvocation> sendPause(Service avtService) {
+        return invoke(avtService, "Pause", "InstanceID", INSTANCE_ID)
+                .addListener(new TransportStateUpdater(avtService, TransportState.PAUSED_PLAYBACK));
+    }
+
+    private ActionFuture<ActionInvocation> sendSetUri(Service avtService, String url, String metadata) {
+        return invoke(avtService, "SetAVTransportURI", "InstanceID", INSTANCE_ID,
+                "CurrentURI", url, "CurrentURIMetaData", metadata);
+    }
+
+    private ActionFuture<ActionInvocation> sendSeek(Service avtService, String unit, String target) {
+        return invoke(avtService, "Seek", "InstanceID", INSTANCE_ID, "Unit", unit, "Target", target);
+    }
+
+    private ActionFuture<PositionInfo> sendGetPositionInfo(final Service avtService) {
+        return invoke(avtService, "GetPositionInfo", "InstanceID", INSTANCE_ID)
+                .thenApply(new ActionFuture.Transform<ActionInvocation, PositionInfo>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public PositionInfo apply(ActionInvocation invocation) {
+                        PositionInfo positionInfo = new PositionInfo(invocation.getOutputMap());
+                        mStateCache.get(avtService.getDevice()).setPosition(
+                                DeviceStateCache.parseTimeMillis(positionInfo.getRelTime()),
+                                DeviceStateCache.parseTimeMillis(positionInfo.getTrackDuration()));
+                        return positionInfo;
+                    }
+                });
+    }
+
+    private ActionFuture<TransportInfo> sendGetTransportInfo(final Service avtService) {
+        return invoke(avtService, "GetTransportInfo", "InstanceID", INSTANCE_ID)
+                .thenApply(new ActionFuture.Transform<ActionInvocation, TransportInfo>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public TransportInfo apply(ActionInvocation invocation) {
+                        TransportInfo transportInfo = new TransportInfo(invocation.getOutputMap());
+                        updateTransportState(avtService.getDevice(), transportInfo.getCurrentTransportState());
+                        return transportInfo;
+                    }
+                });
+    }
+
+    private ActionFuture<Integer> sendGetVolume(final Service rcService) {
+        return invoke(rcService, "GetVolume", "InstanceID", INSTANCE_ID, "Channel", MASTER_CHANNEL)
+                .thenApply(new ActionFuture.Transform<ActionInvocation, Integer>() {
+                    @Override
+                    public Integer apply(ActionInvocation invocation) {
+                        int volume = Integer.valueOf(invocation.getOutput("CurrentVolume").getValue().toString());
+                        mStateCache.get(rcService.getDevice()).setVolume(volume);
+                        return volume;
+                    }
+                });
+    }
+
+    private ActionFuture<RendererCapabilities> sendGetProtocolInfo(Service cmService) {
+        return invoke(cmService, "GetProtocolInfo")
+                .thenApply(new ActionFuture.Transform<ActionInvocation, RendererCapabilities>() {
+                    @Override
+                    public RendererCapabilities apply(ActionInvocation invocation) {
+                        Object sink = invocation.getOutput("Sink") == null ? null : invocation.getOutput("Sink").getValue();
+                        return RendererCapabilities.parse(sink == null ? null : sink.toString());
+                    }
+                });
+    }
+
+    private ActionFuture<ActionInvocation> sendSetVolume(final Service rcService, final int volume) {
+        return invoke(rcService, "SetVolume", "InstanceID", INSTANCE_ID, "Channel", MASTER_CHANNEL,
+                "DesiredVolume", new UnsignedIntegerTwoBytes(volume))
+                .addListener(new ActionFuture.Listener<ActionInvocation>() {
+                    @Override
+                    public void onComplete(ActionFuture<ActionInvocation> future) {
+                        RendererState state = mStateCache.get(rcService.getDevice());
+                        if (future.isSuccess()) state.setVolume(volume);
+                        else state.invalidateVolume();
+                    }
+                });
+    }
+
+    /**
+     * 构造并发送命令
+     *
+     * @param input 参数名、参数值交替排列
+     */
+    @SuppressWarnings("unchecked")
+    private ActionFuture<ActionInvocation> invoke(Service service, String actionName, Object... input) {
+        Action action = service.getAction(actionName);
+        if (action == null) return precondition("接收设备不支持 " + actionName);
+        ActionInvocation invocation = new ActionInvocation(action);
+        try {
+            for (int i = 0; i + 1 < input.length; i += 2) {
+                invocation.setInput((String) input[i], input[i + 1]);
+            }
+        } catch (InvalidValueException e) {
+            return precondition("投屏参数异常：" + e.getMessage());
+        }
+        return submit(invocation);
+    }
+
+    /**
+     * 异步执行 投屏命令，总超时见 {@link #setActionTimeout(long)}，每次请求的超时、重试和熔断见 {@link #setActionPolicy(ActionPolicy)}
+     *
+     * @param invocation 投屏命令
+     * @return 结果，重试成功时为重新发送的 ActionInvocation；取消会中断正在进行的请求
+     */
+    public ActionFuture<ActionInvocation> submit(@NotNull ActionInvocation invocation) {
+        ActionFuture<ActionInvocation> result = new ActionFuture<>();
+        attempt(invocation, 0, result);
+        return result.withTimeout(mActionTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送一次；超时或没有响应、且命令可以重试时，退避后重新发送
+     */
+    private void attempt(final ActionInvocation invocation, final int retry, final ActionFuture<ActionInvocation> result) {
+        if (result.isDone()) return;
+        final ActionPolicy policy = mActionPolicy;
+        final String actionName = invocation.getAction().getName();
+        final DeviceHealth health = healthOf(invocation);
+        if (health != null && !health.tryAcquire()) {
+            result.fail(new ActionFailedException(invocation, null, "接收设备无响应，请稍后重试"));
+            return;
+        }
+        final long start = System.nanoTime();
+        final ActionFuture<ActionInvocation> sent = new ActionFuture<>();
+        Future<?> handle = execute(new ActionCallback(invocation) {
+            @Override
+            public void success(ActionInvocation invocation) {
+                sent.complete(invocation);
+            }
+
+            @Override
+            public void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg) {
+                sent.fail(new ActionFailedException(invocation, operation, defaultMsg));
+            }
+        });
+        sent.cancelWith(handle);
+        result.cancelWith(sent);
+        // 只限制可重试命令的单次等待；SetAVTransportURI、Play 等电视可能要缓冲很久，超时了也不能重发
+        if (health != null && policy.isAdaptiveTimeout() && policy.isRetryable(actionName)) {
+            sent.withTimeout(health.timeoutMillis(actionName), TimeUnit.MILLISECONDS);
+        }
+        sent.addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                if (future.isCancelled()) {
+                    if (health != null) health.onCancelled();
+                    return;
+                }
+                Throwable failure = future.getFailure();
+                UpnpResponse response = failure instanceof ActionFailedException ? ((ActionFailedException) failure).getResponse() : null;
+                boolean noResponse = failure instanceof TimeoutException || failure instanceof ActionFailedException && response == null;
+                // 服务未连接等本地错误没有发出请求，不计入设备统计
+                boolean local = response != null && response.getStatusCode() == UpnpResponse.Status.PRECONDITION_FAILED.getStatusCode();
+                if (health != null) {
+                    // 本地错误同取消，释放探测名额，否则半开状态下之后的命令一直直接失败
+                    if (local) health.onCancelled();
+                    else if (noResponse) health.onNoResponse(actionName);
+                    else health.onResponse(actionName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                if (failure == null) {
+                    result.complete(future.getValue());
+                } else if (noResponse && retry < policy.getMaxRetries() && policy.isRetryable(actionName)) {
+                    log.fine("Retrying " + actionName + " after " + failure.getMessage());
+                    ScheduledFuture<?> timer = DlnaScheduler.get().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt(copyOf(invocation), retry + 1, result);
+                        }
+                    }, backoffMillis(policy, retry + 1), TimeUnit.MILLISECONDS);
+                    result.cancelWith(timer);
+                } else {
+                    result.fail(failure);
+                }
+            }
+        });
+    }
+
+    /**
+     * 第 n 次重试前的等待：base × 2^(n-1)，不超过上限，再随机取 50%~100% 避免多个命令同时重发
+     */
+    private static long backoffMillis(ActionPolicy policy, int retry) {
+        long backoff = Math.min(policy.getMaxBackoffMillis(), policy.getBaseBackoffMillis() << Math.min(retry - 1, 20));
+        return backoff / 2 + (long) (Math.random() * (backoff / 2 + 1));
+    }
+
+    /**
+     * 重新发送用的副本，原 invocation 已带有上次的失败信息
+     */
+    @SuppressWarnings("unchecked")
+    private static ActionInvocation copyOf(ActionInvocation invocation) {
+        return new ActionInvocation(invocation.getAction(), invocation.getInput());
+    }
+
+    @Nullable
+    private DeviceHealth healthOf(ActionInvocation invocation) {
+        Service service = invocation.getAction().getService();
+        Device device = service == null ? null : service.getDevice();
+        return device == null ? null : getDeviceHealth(device);
+    }
+
+    /**
+     * 执行 投屏命令
+     *
+     * @param callback 投屏命令及回调
+     * @return 执行中的请求，服务异常时为 null
+     * @see #getMetrics()
+     * @see org.fourthline.cling.support.avtransport.callback
+     * @see org.fourthline.cling.support.renderingcontrol.callback 音量-get/set
+     */
+    @Nullable
+    public Future<?> execute(final ActionCallback callback) {
+        if (mUpnpService == null || mUpnpService.getControlPoint() == null) {
+            callback.failure(null, new UpnpResponse(UpnpResponse.Status.PRECONDITION_FAILED), "投屏服务异常");
+            return null;
+        }
+        ControlPoint controlPoint = mUpnpService.getControlPoint();
+        ActionCallback timed = mMetrics.instrument(callback);
+        ExecutorService executor = mActionExecutor;
+        if (executor == null) return controlPoint.execute(timed);
+        // 与 ControlPoint.execute 相同，只是换用指定的线程池
+        timed.setControlPoint(controlPoint);
+        return executor.submit(timed);
+    }
+
+    @Nullable
+    private static String checkService(@Nullable Device device, @Nullable Service service) {
+        if (device == null) return "未选择投屏设备";
+        if (service == null) return "接收设备服务异常";
+        return null;
+    }
+
+    private static boolean isEmpty(@Nullable String value) {
+        return value == null || value.length() == 0;
+    }
+
+    private static <T> ActionFuture<T> precondition(String msg) {
+        return ActionFuture.failed(ActionFailedException.precondition(msg));
+    }
+
+    /**
+     * 得到传输服务
+     */
+    @Nullable
+    public Service getTransportService(@NotNull Device device) {
+        return device.findService(AV_TRANSPORT_SERVICE);
+    }
+
+    /**
+     * 得到控制服务
+     */
+    @Nullable
+    public Service getControlService(@NotNull Device device) {
+        return device.findService(RENDERING_CONTROL_SERVICE);
+    }
+
+    /**
+     * 开启流水线投屏：{@link #autoPlayAsync(Device, MediaMetadata)} 等投屏方法预先生成 metadata，
+     * 设备已停止时跳过 Stop，否则 Stop 与 SetAVTransportURI 同时发出
+     *
+     * @see #autoPlayAsync(Device, MediaMetadata)
+     */
+    public void setPipelinedCast(boolean pipelinedCast) {
+        this.mPipelinedCast = pipelinedCast;
+    }
+
+    public boolean isPipelinedCast() {
+        return mPipelinedCast;
+    }
+
+    /**
+     * 投屏各阶段耗时监听，在 cling 的执行线程中回调
+     */
+    public void setCastTimingListener(@Nullable CastTimingListener listener) {
+        this.mCastTimingListener = listener;
+    }
+
+    /**
+     * 各设备型号、各命令的耗时分布和失败数
+     */
+    @NotNull
+    public ActionMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 设备状态缓存
+     */
+    public DeviceStateCache getStateCache() {
+        return mStateCache;
+    }
+
+    /**
+     * 跟踪设备的播放进度，定时回调本地推算的进度，每隔几秒才向设备查询一次。
+     * 设备同时由 {@link DeviceStateCache#track(Device)} 跟踪时，传输状态事件会立即触发重新取样
+     *
+     * @return 不再需要时调用 {@link PositionTracker#stop()}
+     */
+    @NotNull
+    public PositionTracker trackPosition(@NotNull Device device, @NotNull PositionTracker.Listener listener) {
+        PositionTracker tracker = new PositionTracker(this, device, listener);
+        tracker.start();
+        return tracker;
+    }
+
+    /**
+     * 设备能播放的格式缓存
+     */
+    @NotNull
+    public CapabilityCache getCapabilityCache() {
+        return mCapabilityCache;
+    }
+
+    /**
+     * 共享的事件订阅，同一设备的同一服务只订阅一次
+     */
+    @NotNull
+    public SubscriptionManager getSubscriptionManager() {
+        return mSubscriptionManager;
+    }
+
+    @Nullable
+    ControlPoint getControlPoint() {
+        return mUpnpService == null ? null : mUpnpService.getControlPoint();
+    }
+
+    /**
+     * 执行投屏命令的线程池，为 null 时使用 cling 配置的线程池。
+     * 服务端同时控制大量设备时可使用 {@link ActionExecutors#create(int)}，调用方负责关闭
+     */
+    public void setActionExecutor(@Nullable ExecutorService executor) {
+        this.mActionExecutor = executor;
+    }
+
+    @Nullable
+    public ExecutorService getActionExecutor() {
+        return mActionExecutor;
+    }
+
+    /**
+     * 单个命令的默认超时时间，包括所有重试，0 表示不限（由 cling 的连接超时和 {@link ActionPolicy} 决定）
+     */
+    public void setActionTimeout(long timeoutMillis) {
+        this.mActionTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 每次请求的自适应超时、安全命令的重试、无响应设备的熔断，设置后各设备的统计重新开始
+     */
+    public void setActionPolicy(@NotNull ActionPolicy policy) {
+        this.mActionPolicy = policy;
+        mDeviceHealth.clear();
+    }
+
+    @NotNull
+    public ActionPolicy getActionPolicy() {
+        return mActionPolicy;
+    }
+
+    /**
+     * 设备的响应时间和熔断状态，按根设备统计
+     */
+    @NotNull
+    public DeviceHealth getDeviceHealth(@NotNull Device device) {
+        UDN udn = device.getRoot().getIdentity().getUdn();
+        DeviceHealth health = mDeviceHealth.get(udn);
+        if (health == null) {
+            DeviceHealth created = new DeviceHealth(mActionPolicy);
+            health = mDeviceHealth.putIfAbsent(udn, created);
+            if (health == null) health = created;
+        }
+        return health;
+    }
+
+    /**
+     * 本地文件投屏使用的 http 服务，首次发布文件时启动
+     */
+    @NotNull
+    public synchronized LocalMediaServer getMediaServer() {
+        if (mMediaServer == null) mMediaServer = new LocalMediaServer();
+        return mMediaServer;
+    }
+
+    /**
+     * 本机 MediaServer 的媒体库，通过 {@link MediaLibrary#scan(File)} 添加目录后即可被其他设备浏览、搜索
+     */
+    @NotNull
+    public synchronized MediaLibrary getMediaLibrary() {
+        if (mMediaLibrary == null) mMediaLibrary = new MediaLibrary();
+        return mMediaLibrary;
+    }
+
+    /**
+     * 停止本地文件服务，再次投屏本地文件或被浏览时自动启动（端口可能变化）
+     */
+    public synchronized void stopMediaServer() {
+        if (mMediaServer != null) mMediaServer.stop();
+    }
+
+    /**
+     * 设备快照，在 {@link #initService} 之前设置，启动时先恢复上次发现的设备
+     */
+    public void setSnapshotStore(@Nullable DeviceSnapshotStore snapshotStore) {
+        this.mSnapshotStore = snapshotStore;
+    }
+
+    @Nullable
+    public DeviceSnapshotStore getSnapshotStore() {
+        return mSnapshotStore;
+    }
+
+    /**
+     * 设备搜索，{@link #initService} 之后可用
+     */
+    @Nullable
+    public DiscoveryScheduler getDiscoveryScheduler() {
+        return mDiscovery;
+    }
+
+    /**
+     * 停止后续的设备搜索
+     */
+    public void stopDiscovery() {
+        DiscoveryScheduler discovery = mDiscovery;
+        if (discovery != null) discovery.stop();
+    }
+
+    /**
+     * registry 按需维护，{@link #initService} 之后可用
+     */
+    @Nullable
+    public synchronized RegistryMaintenancePolicy getMaintenancePolicy() {
+        return mMaintenance;
+    }
+
+    /**
+     * 没有投屏会话时停止 registry 维护，省电
+     *
+     * @see RegistryMaintenancePolicy#setIdleMode(boolean)
+     */
+    public synchronized void setIdleMaintenance(boolean idleMaintenance) {
+        this.mIdleMaintenance = idleMaintenance;
+        if (mMaintenance != null) mMaintenance.setIdleMode(idleMaintenance);
+    }
+
+    /**
+     * @see RegistryMaintenancePolicy#setSessionActive(boolean)
+     */
+    public synchronized void setSessionActive(boolean sessionActive) {
+        this.mSessionActive = sessionActive;
+        if (mMaintenance != null) mMaintenance.setSessionActive(sessionActive);
+    }
+
+    /**
+     * 恢复 cling 的固定间隔维护
+     */
+    public synchronized void stopMaintenance() {
+        if (mMaintenance != null) mMaintenance.detach();
+        mMaintenance = null;
+    }
+
+    void onSubscriptionEstablished(GENASubscription subscription) {
+        RegistryMaintenancePolicy maintenance = getMaintenancePolicy();
+        if (maintenance != null) maintenance.subscriptionEstablished(subscription);
+    }
+
+    void onSubscriptionEnded(GENASubscription subscription) {
+        RegistryMaintenancePolicy maintenance = getMaintenancePolicy();
+        if (maintenance != null) maintenance.subscriptionEnded(subscription);
+    }
+
+    /**
+     * 投屏命令、SSDP、描述获取线程池的排队深度和耗时，配置未使用 {@link ProtocolExecutors} 时为空
+     */
+    @NotNull
+    public List<InstrumentedExecutor> getExecutors() {
+        UpnpService upnpService = mUpnpService;
+        if (upnpService != null && upnpService.getConfiguration() instanceof ProtocolExecutors.Provider) {
+            return ((ProtocolExecutors.Provider) upnpService.getConfiguration()).getProtocolExecutors().getExecutors();
+        }
+        return Collections.emptyList();
+    }
+
+    public void setUpnpService(@Nullable UpnpService upnpService) {
+        this.mUpnpService = upnpService;
+    }
+
+    @Nullable
+    public UpnpService getUpnpService() {
+        return mUpnpService;
+    }
+
+    /**
+     * 命令成功后更新本地记录的传输状态
+     */
+    private class TransportStateUpdater implements ActionFuture.Listener<ActionInvocation> {
+        private final Service service;
+        private final TransportState state;
+
+        TransportStateUpdater(Service service, TransportState state) {
+            this.service = service;
+            this.state = state;
+        }
+
+        @Override
+        public void onComplete(ActionFuture<ActionInvocation> future) {
+            if (future.isSuccess()) updateTransportState(service.getDevice(), state);
+        }
+    }
+
+    public interface CastTimingListener {
+        void onCastTimings(@NotNull CastTimings timings);
+    }
+
+    /**
+     * 投屏命令结果回调
+     */
+    public interface ExecuteCallback {
+        void success(ActionInvocation invocation);
+
+        void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg);
+    }
+
+    public abstract static class SimpleExecuteCallback implements ExecuteCallback {
+
+        public abstract void callback(boolean success);
+
+        @Override
+        public void success(ActionInvocation invocation) {
+            callback(true);
+        }
+
+        @Override
+        public void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg) {
+            callback(false);
+        }
+    }
+}
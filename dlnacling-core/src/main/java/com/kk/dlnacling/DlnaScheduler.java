@@ -0,0 +1,36 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 投屏模块共用的定时线程，只做超时、延时派发等轻量工作，不要在其中执行阻塞的网络请求
+ */
+final class DlnaScheduler {
+
+    private static volatile ScheduledExecutorService sScheduler;
+
+    private DlnaScheduler() {
+    }
+
+    static ScheduledExecutorService get() {
+        if (sScheduler == null) {
+            synchronized (DlnaScheduler.class) {
+                if (sScheduler == null) {
+                    sScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                        @Override
+                        public Thread newThread(@NotNull Runnable r) {
+                            Thread thread = new Thread(r, "dlna-scheduler");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return sScheduler;
+    }
+}
@@ -0,0 +1,178 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 同一片源投到多个设备：最多 maxParallelism 个设备同时进行，先完成的设备让出位置给排队的设备。
+ * 对齐播放时所有设备设置好片源后再统一发送 Play
+ *
+ * @see DlnaClingController#autoPlay(Collection, String, int, GroupCastOptions)
+ */
+class GroupCast {
+
+    private static final Logger log = Logger.getLogger(GroupCast.class.getName());
+
+    private final DlnaClingController controller;
+    private final List<Device> devices;
+    private final MediaMetadata media;
+    private final GroupCastOptions options;
+
+    private final GroupCastResult[] results;
+    private final CastTimings[] timings;
+    private final Service[] services;
+    private final long[] startNanos;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final ActionFuture<List<GroupCastResult>> result = new ActionFuture<>();
+
+    GroupCast(DlnaClingController controller, Collection<Device> devices, MediaMetadata media, GroupCastOptions options) {
+        this.controller = controller;
+        this.devices = new ArrayList<>(devices);
+        this.media = media;
+        this.options = options;
+        int size = this.devices.size();
+        this.results = new GroupCastResult[size];
+        this.timings = new CastTimings[size];
+        this.services = new Service[size];
+        this.startNanos = new long[size];
+    }
+
+    ActionFuture<List<GroupCastResult>> start() {
+        if (devices.isEmpty()) {
+            result.complete(new ArrayList<GroupCastResult>(0));
+            return result;
+        }
+        int slots = Math.min(options.getMaxParallelism(), devices.size());
+        for (int i = 0; i < slots; i++) launchNext();
+        return result;
+    }
+
+    /**
+     * 占用一个并发位置，向下一个排队的设备发送命令
+     */
+    private void launchNext() {
+        while (!result.isDone()) {
+            int index = next.getAndIncrement();
+            if (index >= devices.size()) return;
+            if (dispatch(index)) return;
+        }
+    }
+
+    /**
+     * @return false 设备不支持投屏，未占用并发位置
+     */
+    private boolean dispatch(final int index) {
+        Device device = devices.get(index);
+        Service avtService = controller.getTransportService(device);
+        if (avtService == null) {
+            results[index] = new GroupCastResult(device, false, "接收设备服务异常", 0, null);
+            onPrepared();
+            return false;
+        }
+        if (controller.isKnownUnsupported(device, media)) {
+            results[index] = new GroupCastResult(device, false, "接收设备不支持该片源格式", 0, null);
+            onPrepared();
+            return false;
+        }
+        services[index] = avtService;
+        timings[index] = new CastTimings(device);
+        startNanos[index] = System.nanoTime();
+        ActionFuture<ActionInvocation> cast = controller.prepareCast(device, avtService, media, timings[index]);
+        if (!options.isAlignPlay()) {
+            cast = cast.thenCompose(new ActionFuture.Continuation<ActionInvocation, ActionInvocation>() {
+                @Override
+                public ActionFuture<ActionInvocation> then(ActionInvocation value) {
+                    return controller.startCast(services[index], timings[index]);
+                }
+            });
+        }
+        result.cancelWith(cast);
+        cast.addListener(new ActionFuture.Listener<ActionInvocation>() {
+            @Override
+            public void onComplete(ActionFuture<ActionInvocation> future) {
+                if (!future.isSuccess() || !options.isAlignPlay()) record(index, future);
+                launchNext();
+                onPrepared();
+            }
+        });
+        return true;
+    }
+
+    private void onPrepared() {
+        if (options.isAlignPlay()) {
+            if (prepared.incrementAndGet() == devices.size()) playAligned();
+        } else {
+            onFinished();
+        }
+    }
+
+    private void onFinished() {
+        if (finished.incrementAndGet() == devices.size()) {
+            List<GroupCastResult> list = Arrays.asList(results);
+            log.fine("Group cast finished: " + list);
+            result.complete(list);
+        }
+    }
+
+    /**
+     * 所有设备都已设置片源，按 SetAVTransportURI 的响应时间估算单程时延，
+     * 响应快的设备延后发送 Play，使各设备收到 Play 的时间尽量一致
+     */
+    private void playAligned() {
+        long slowest = 0;
+        int ready = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) continue;
+            ready++;
+            slowest = Math.max(slowest, timings[i].getSetUriMillis());
+        }
+        int skipped = devices.size() - ready;
+        for (int i = 0; i < skipped; i++) onFinished();
+        if (ready == 0) return;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) continue;
+            final int index = i;
+            long delay = Math.min(options.getMaxAlignDelayMillis(), (slowest - timings[i].getSetUriMillis()) / 2);
+            Runnable play = new Runnable() {
+                @Override
+                public void run() {
+                    ActionFuture<ActionInvocation> future = controller.startCast(services[index], timings[index]);
+                    result.cancelWith(future);
+                    future.addListener(new ActionFuture.Listener<ActionInvocation>() {
+                        @Override
+                        public void onComplete(ActionFuture<ActionInvocation> future) {
+                            record(index, future);
+                            onFinished();
+                        }
+                    });
+                }
+            };
+            if (delay <= 0) {
+                play.run();
+            } else {
+                ScheduledFuture<?> scheduled = DlnaScheduler.get().schedule(play, delay, TimeUnit.MILLISECONDS);
+                result.cancelWith(scheduled);
+            }
+        }
+    }
+
+    private void record(int index, ActionFuture<ActionInvocation> future) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos[index]);
+        Throwable failure = future.getFailure();
+        String message = failure == null ? null : failure.getMessage();
+        results[index] = new GroupCastResult(devices.get(index), failure == null, message, latency, timings[index]);
+    }
+}
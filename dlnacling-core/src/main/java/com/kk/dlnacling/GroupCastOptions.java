@@ -0,0 +1,47 @@
+package com.kk.dlnacling;
+
+/**
+ * 多设备同时投屏参数
+ */
+public class GroupCastOptions {
+
+    private int maxParallelism = 4;
+    private boolean alignPlay;
+    private long maxAlignDelayMillis = 500;
+
+    /**
+     * 同时进行 Stop/SetAVTransportURI 的设备数，默认 4
+     */
+    public GroupCastOptions setMaxParallelism(int maxParallelism) {
+        this.maxParallelism = Math.max(1, maxParallelism);
+        return this;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * 对齐播放：所有设备设置好片源后再统一 Play，并按各设备的响应时间错开发送，让画面尽量同时开始
+     */
+    public GroupCastOptions setAlignPlay(boolean alignPlay) {
+        this.alignPlay = alignPlay;
+        return this;
+    }
+
+    public boolean isAlignPlay() {
+        return alignPlay;
+    }
+
+    /**
+     * 对齐播放时单个设备最多延后发送 Play 的时间，默认 500ms
+     */
+    public GroupCastOptions setMaxAlignDelayMillis(long maxAlignDelayMillis) {
+        this.maxAlignDelayMillis = Math.max(0, maxAlignDelayMillis);
+        return this;
+    }
+
+    public long getMaxAlignDelayMillis() {
+        return maxAlignDelayMillis;
+    }
+}
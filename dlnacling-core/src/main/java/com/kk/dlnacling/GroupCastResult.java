@@ -0,0 +1,71 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 多设备投屏中单个设备的结果
+ */
+public class GroupCastResult {
+
+    private final Device device;
+    private final boolean success;
+    @Nullable
+    private final String message;
+    private final long latencyMillis;
+    @Nullable
+    private final CastTimings timings;
+
+    GroupCastResult(@NotNull Device device, boolean success, @Nullable String message, long latencyMillis,
+                    @Nullable CastTimings timings) {
+        this.device = device;
+        this.success = success;
+        this.message = message;
+        this.latencyMillis = latencyMillis;
+        this.timings = timings;
+    }
+
+    @NotNull
+    public Device getDevice() {
+        return device;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * 失败原因
+     */
+    @Nullable
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 从开始向该设备发送命令到 Play 返回的时间，不含并发数已满时的排队等待；
+     * 同步播放时包含等待其他设备设置片源和延后发送 Play 的时间，单设备的各阶段耗时见 {@link #getTimings()}
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * 各阶段耗时，设备不支持投屏时为 null
+     */
+    @Nullable
+    public CastTimings getTimings() {
+        return timings;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCastResult{" +
+                "device=" + device.getDetails().getFriendlyName() +
+                ", success=" + success +
+                ", message=" + message +
+                ", latency=" + latencyMillis +
+                '}';
+    }
+}
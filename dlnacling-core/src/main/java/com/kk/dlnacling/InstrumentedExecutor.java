@@ -0,0 +1,227 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.controlpoint.ActionCallback;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 固定大小、记录排队深度和等待/执行耗时的线程池。
+ * <p>
+ * 有优先级的线程池中 {@link ActionCallback}（投屏命令）排在订阅等其他任务之前，同优先级按提交顺序执行；
+ * 有界的线程池队列满时交给 overflow 执行，没有 overflow 时丢弃并计数
+ */
+public final class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    private static final Logger log = Logger.getLogger(InstrumentedExecutor.class.getName());
+
+    private static final int PRIORITY_ACTION = 0;
+    private static final int PRIORITY_DEFAULT = 1;
+
+    private final String name;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final AtomicLong finishedCount = new AtomicLong();
+
+    private InstrumentedExecutor(String name, int threads, BlockingQueue<Runnable> queue, int threadPriority,
+                                 @Nullable final Executor overflow) {
+        super(threads, threads, 30, TimeUnit.SECONDS, queue, new NamedThreadFactory(name, threadPriority));
+        this.name = name;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejectedCount.incrementAndGet();
+                Runnable task = ((Task) r).command;
+                if (overflow != null && !executor.isShutdown()) {
+                    overflow.execute(task);
+                } else {
+                    log.fine(InstrumentedExecutor.this.name + " rejected " + task);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按优先级执行，队列不限长度
+     */
+    @NotNull
+    public static InstrumentedExecutor prioritized(@NotNull String name, int threads, int threadPriority) {
+        return new InstrumentedExecutor(name, threads, new PriorityBlockingQueue<Runnable>(), threadPriority, null);
+    }
+
+    /**
+     * 按提交顺序执行，队列满时交给 overflow，为 null 时丢弃
+     */
+    @NotNull
+    public static InstrumentedExecutor bounded(@NotNull String name, int threads, int queueCapacity, int threadPriority,
+                                               @Nullable Executor overflow) {
+        return new InstrumentedExecutor(name, threads, new LinkedBlockingQueue<Runnable>(queueCapacity), threadPriority, overflow);
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 平均排队时间
+     */
+    public double getAverageWaitMillis() {
+        long count = finishedCount.get();
+        return count == 0 ? 0 : waitNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * 平均执行时间
+     */
+    public double getAverageRunMillis() {
+        long count = finishedCount.get();
+        return count == 0 ? 0 : runNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxRunMillis() {
+        return maxRunNanos.get() / 1e6;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+        super.execute(new Task(command, priorityOf(command), sequence.getAndIncrement()));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PrioritizedFuture<>(runnable, value, priorityOf(runnable));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        Task task = (Task) r;
+        task.startNanos = System.nanoTime();
+        long wait = task.startNanos - task.enqueueNanos;
+        waitNanos.addAndGet(wait);
+        updateMax(maxWaitNanos, wait);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        long run = System.nanoTime() - ((Task) r).startNanos;
+        runNanos.addAndGet(run);
+        updateMax(maxRunNanos, run);
+        finishedCount.incrementAndGet();
+    }
+
+    private static int priorityOf(Runnable runnable) {
+        if (runnable instanceof PrioritizedFuture) return ((PrioritizedFuture<?>) runnable).priority;
+        return runnable instanceof ActionCallback ? PRIORITY_ACTION : PRIORITY_DEFAULT;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "{threads=" + getPoolSize() +
+                ", active=" + getActiveCount() +
+                ", queued=" + getQueueDepth() +
+                ", completed=" + getCompletedTaskCount() +
+                ", rejected=" + getRejectedCount() +
+                ", avgWait=" + String.format("%.1f", getAverageWaitMillis()) + "ms" +
+                ", maxWait=" + String.format("%.1f", getMaxWaitMillis()) + "ms" +
+                ", avgRun=" + String.format("%.1f", getAverageRunMillis()) + "ms" +
+                '}';
+    }
+
+    private static final class PrioritizedFuture<T> extends FutureTask<T> {
+        final int priority;
+        private final Runnable runnable;
+
+        PrioritizedFuture(Runnable runnable, T result, int priority) {
+            super(runnable, result);
+            this.runnable = runnable;
+            this.priority = priority;
+        }
+
+        @Override
+        public String toString() {
+            return runnable.toString();
+        }
+    }
+
+    private static final class Task implements Runnable, Comparable<Task> {
+        final Runnable command;
+        final int priority;
+        final long sequence;
+        final long enqueueNanos = System.nanoTime();
+        long startNanos;
+
+        Task(Runnable command, int priority, long sequence) {
+            this.command = command;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(@NotNull Task other) {
+            if (priority != other.priority) return priority < other.priority ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+}
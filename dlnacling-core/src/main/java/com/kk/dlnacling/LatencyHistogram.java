@@ -0,0 +1,152 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的耗时直方图，记录只有几次原子加，可以在回调线程中直接调用。
+ * <p>
+ * 以微秒为单位按 2 的幂分段，每段再均分 8 个桶，任何量级的相对误差都不超过 12.5%，
+ * 覆盖 1us ~ 约 38 小时，超出的记入最后一个桶
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 36;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long duration, @NotNull TimeUnit unit) {
+        recordMicros(unit.toMicros(duration));
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sumMicros.addAndGet(value);
+        long max;
+        do {
+            max = maxMicros.get();
+        } while (value > max && !maxMicros.compareAndSet(max, value));
+    }
+
+    /**
+     * 当前数据的副本，记录可以同时进行，副本内各项之间可能差几次记录
+     */
+    @NotNull
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sumMicros.get(), maxMicros.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) return BUCKET_COUNT - 1;
+        int sub = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的上界(不含)，微秒
+     */
+    static long bucketUpperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) return index + 1;
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub + 1) << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 直方图副本，耗时单位毫秒
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSumMillis() {
+            return sumMicros / 1000.0;
+        }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : sumMicros / 1000.0 / count;
+        }
+
+        public double getMaxMillis() {
+            return maxMicros / 1000.0;
+        }
+
+        /**
+         * @param quantile 0~1，如 0.99
+         * @return 分位数所在桶的上界，没有数据时为 0
+         */
+        public double getPercentileMillis(double quantile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) return Math.min(bucketUpperBoundMicros(i), maxMicros) / 1000.0;
+            }
+            return getMaxMillis();
+        }
+
+        /**
+         * 耗时小于等于 millis 的记录数，按桶统计，边界落在桶内时该桶不计入
+         */
+        public long countAtOrBelow(double millis) {
+            long limit = (long) (millis * 1000);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (bucketUpperBoundMicros(i) - 1 > limit) break;
+                seen += counts[i];
+            }
+            return seen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d mean=%.1fms p50=%.1fms p99=%.1fms max=%.1fms",
+                    count, getMeanMillis(), getPercentileMillis(0.5), getPercentileMillis(0.99), getMaxMillis());
+        }
+    }
+}
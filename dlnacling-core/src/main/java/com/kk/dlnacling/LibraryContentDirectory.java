@@ -0,0 +1,219 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.profile.RemoteClientInfo;
+import org.fourthline.cling.support.contentdirectory.AbstractContentDirectoryService;
+import org.fourthline.cling.support.contentdirectory.ContentDirectoryErrorCode;
+import org.fourthline.cling.support.contentdirectory.ContentDirectoryException;
+import org.fourthline.cling.support.model.BrowseFlag;
+import org.fourthline.cling.support.model.BrowseResult;
+import org.fourthline.cling.support.model.SortCriterion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 基于 {@link MediaLibrary} 的 ContentDirectory：分页 Browse、Search。
+ * <p>
+ * 结果按 (对象, 分页, 访问地址, 媒体库版本, http 服务发布版本) 缓存，媒体库变化后旧版本的结果不再命中，
+ * 同时更新 SystemUpdateID 通知订阅方；文件在 http 服务中被取消发布后，下次出现在结果中时重新登记
+ */
+public class LibraryContentDirectory extends AbstractContentDirectoryService implements MediaLibrary.Listener {
+
+    private static final Logger log = Logger.getLogger(LibraryContentDirectory.class.getName());
+
+    private static final int CACHE_SIZE = 128;
+    private static final String STORAGE_FOLDER = "object.container.storageFolder";
+
+    private final MediaLibrary library;
+    private final LocalMediaServer mediaServer;
+    private final Map<String, BrowseResult> cache = new LinkedHashMap<String, BrowseResult>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BrowseResult> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public LibraryContentDirectory(@NotNull MediaLibrary library, @NotNull LocalMediaServer mediaServer) {
+        super(Arrays.asList("dc:title", "upnp:class"), Collections.<String>emptyList());
+        this.library = library;
+        this.mediaServer = mediaServer;
+        library.addListener(this);
+    }
+
+    @Override
+    public void onLibraryChanged(long updateId) {
+        synchronized (cache) {
+            cache.clear();
+        }
+        changeSystemUpdateID();
+    }
+
+    @Override
+    public BrowseResult browse(String objectID, BrowseFlag browseFlag, String filter, long firstResult, long maxResults,
+                               SortCriterion[] orderby, RemoteClientInfo remoteClientInfo) throws ContentDirectoryException {
+        return query(objectID, browseFlag, null, firstResult, maxResults, remoteClientInfo);
+    }
+
+    @Override
+    public BrowseResult browse(String objectID, BrowseFlag browseFlag, String filter, long firstResult, long maxResults,
+                               SortCriterion[] orderby) throws ContentDirectoryException {
+        return query(objectID, browseFlag, null, firstResult, maxResults, null);
+    }
+
+    @Override
+    public BrowseResult search(String containerId, String searchCriteria, String filter, long firstResult, long maxResults,
+                               SortCriterion[] orderBy, RemoteClientInfo remoteClientInfo) throws ContentDirectoryException {
+        return query(containerId, null, searchCriteria == null ? "*" : searchCriteria, firstResult, maxResults, remoteClientInfo);
+    }
+
+    @Override
+    public BrowseResult search(String containerId, String searchCriteria, String filter, long firstResult, long maxResults,
+                               SortCriterion[] orderBy) throws ContentDirectoryException {
+        return query(containerId, null, searchCriteria == null ? "*" : searchCriteria, firstResult, maxResults, null);
+    }
+
+    /**
+     * @param searchCriteria 为 null 时是 Browse
+     */
+    private BrowseResult query(String objectId, @Nullable BrowseFlag browseFlag, @Nullable String searchCriteria,
+                               long firstResult, long maxResults, @Nullable RemoteClientInfo remoteClientInfo)
+            throws ContentDirectoryException {
+        String baseUrl = baseUrl(remoteClientInfo);
+        long updateId = library.getUpdateId();
+        long generation = mediaServer.getGeneration();
+        String key = objectId + '\n' + browseFlag + '\n' + searchCriteria + '\n' + firstResult + '\n' + maxResults
+                + '\n' + baseUrl + '\n' + updateId + '\n' + generation;
+        synchronized (cache) {
+            BrowseResult cached = cache.get(key);
+            if (cached != null) return cached;
+        }
+        BrowseResult result = searchCriteria == null
+                ? browse(objectId, browseFlag, (int) Math.min(Integer.MAX_VALUE, firstResult), (int) Math.min(Integer.MAX_VALUE, maxResults), baseUrl, updateId)
+                : search(objectId, searchCriteria, (int) Math.min(Integer.MAX_VALUE, firstResult), (int) Math.min(Integer.MAX_VALUE, maxResults), baseUrl, updateId);
+        synchronized (cache) {
+            if (library.getUpdateId() == updateId && mediaServer.getGeneration() == generation) cache.put(key, result);
+        }
+        return result;
+    }
+
+    private BrowseResult browse(String objectId, @Nullable BrowseFlag browseFlag, int first, int max, String baseUrl, long updateId)
+            throws ContentDirectoryException {
+        DidlWriter writer = DidlWriter.obtain();
+        if (browseFlag == BrowseFlag.METADATA) {
+            if (MediaLibrary.isContainer(objectId)) {
+                writeContainer(writer, objectId);
+            } else {
+                MediaLibrary.LibraryItem item = library.getItem(objectId);
+                if (item == null) throw new ContentDirectoryException(ContentDirectoryErrorCode.NO_SUCH_OBJECT, objectId);
+                writeItem(writer, item, baseUrl);
+            }
+            return new BrowseResult(writer.finish(), 1, 1, updateId);
+        }
+
+        if (MediaLibrary.ROOT_ID.equals(objectId)) {
+            String[] containers = {MediaLibrary.VIDEO_CONTAINER_ID, MediaLibrary.AUDIO_CONTAINER_ID, MediaLibrary.IMAGE_CONTAINER_ID};
+            int end = max <= 0 ? containers.length : (int) Math.min(containers.length, (long) first + max);
+            int count = 0;
+            for (int i = first; i < end; i++, count++) writeContainer(writer, containers[i]);
+            return new BrowseResult(writer.finish(), count, containers.length, updateId);
+        }
+        if (!MediaLibrary.isContainer(objectId)) {
+            throw new ContentDirectoryException(library.getItem(objectId) == null
+                    ? ContentDirectoryErrorCode.NO_SUCH_OBJECT : ContentDirectoryErrorCode.CANNOT_PROCESS, objectId);
+        }
+        int[] total = new int[1];
+        List<MediaLibrary.LibraryItem> items = library.children(objectId, first, max, total);
+        for (MediaLibrary.LibraryItem item : items) writeItem(writer, item, baseUrl);
+        return new BrowseResult(writer.finish(), items.size(), total[0], updateId);
+    }
+
+    private BrowseResult search(String containerId, String criteria, int first, int max, String baseUrl, long updateId)
+            throws ContentDirectoryException {
+        if (!MediaLibrary.isContainer(containerId)) {
+            throw new ContentDirectoryException(ContentDirectoryErrorCode.NO_SUCH_OBJECT, containerId);
+        }
+        int[] total = new int[1];
+        List<MediaLibrary.LibraryItem> items;
+        try {
+            items = library.search(containerId, criteria, first, max, total);
+        } catch (IllegalArgumentException e) {
+            throw new ContentDirectoryException(ContentDirectoryErrorCode.UNSUPPORTED_SEARCH_CRITERIA, e.getMessage());
+        }
+        DidlWriter writer = DidlWriter.obtain();
+        for (MediaLibrary.LibraryItem item : items) writeItem(writer, item, baseUrl);
+        return new BrowseResult(writer.finish(), items.size(), total[0], updateId);
+    }
+
+    private void writeContainer(DidlWriter writer, String id) {
+        String title;
+        switch (id) {
+            case MediaLibrary.VIDEO_CONTAINER_ID:
+                title = "视频";
+                break;
+            case MediaLibrary.AUDIO_CONTAINER_ID:
+                title = "音乐";
+                break;
+            case MediaLibrary.IMAGE_CONTAINER_ID:
+                title = "图片";
+                break;
+            default:
+                writer.container(id, "-1", library.getChildCount(id), "Root", STORAGE_FOLDER);
+                return;
+        }
+        writer.container(id, MediaLibrary.ROOT_ID, library.getChildCount(id), title, STORAGE_FOLDER);
+    }
+
+    private void writeItem(DidlWriter writer, MediaLibrary.LibraryItem item, String baseUrl) {
+        String path = item.serverPath;
+        // 取消发布后旧路径返回 404，重新登记
+        if (path == null || !mediaServer.isRegistered(path)) item.serverPath = path = mediaServer.register(item.file, item.media);
+        String upnpClass = item.media.getUpnpClass();
+        item.media.writeItem(writer, upnpClass == null ? "object.item" : upnpClass, baseUrl + path);
+    }
+
+    /**
+     * 资源地址使用请求到达的本机地址，保证发起浏览的设备能访问
+     */
+    private String baseUrl(@Nullable RemoteClientInfo remoteClientInfo) throws ContentDirectoryException {
+        InetAddress address = remoteClientInfo == null ? null : remoteClientInfo.getLocalAddress();
+        if (address == null) address = siteLocalAddress();
+        if (address == null) throw new ContentDirectoryException(ContentDirectoryErrorCode.CANNOT_PROCESS, "No local address");
+        try {
+            return mediaServer.getBaseUrl(address);
+        } catch (IOException e) {
+            log.warning("Media server unavailable: " + e);
+            throw new ContentDirectoryException(ContentDirectoryErrorCode.CANNOT_PROCESS, e.getMessage());
+        }
+    }
+
+    @Nullable
+    private static InetAddress siteLocalAddress() {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                NetworkInterface networkInterface = interfaces.nextElement();
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) continue;
+                Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) return address;
+                }
+            }
+        } catch (SocketException e) {
+            log.fine("Enumerate interfaces failed: " + e);
+        }
+        return null;
+    }
+}
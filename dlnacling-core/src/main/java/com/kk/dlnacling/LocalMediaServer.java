@@ -0,0 +1,561 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 把本地文件发布为 http 地址供设备拉取。
+ * <p>
+ * 单线程 selector 处理所有连接，文件内容用 FileChannel.transferTo 直接写入 socket（sendfile），
+ * 不经过用户态缓冲；支持 GET/HEAD、单段 Range、keep-alive，设备拖动进度时的多次 Range 请求复用同一连接
+ */
+public class LocalMediaServer {
+
+    private static final Logger log = Logger.getLogger(LocalMediaServer.class.getName());
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String PATH_PREFIX = "/media/";
+    private static final int REQUEST_BUFFER_SIZE = 8 * 1024;
+    private static final long IDLE_TIMEOUT_MILLIS = 30000;
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final int ID_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int mRequestedPort;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> mIds = new ConcurrentHashMap<>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    @Nullable
+    private volatile ServerSocketChannel mServerChannel;
+    @Nullable
+    private volatile Selector mSelector;
+    @Nullable
+    private Thread mThread;
+    private volatile boolean mRunning;
+
+    /**
+     * 使用系统分配的端口
+     */
+    public LocalMediaServer() {
+        this(0);
+    }
+
+    public LocalMediaServer(int port) {
+        this.mRequestedPort = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (mRunning) return;
+        Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(mRequestedPort));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        mSelector = selector;
+        mServerChannel = serverChannel;
+        mRunning = true;
+        final Selector loopSelector = selector;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop(loopSelector);
+            }
+        }, "dlna-media-server");
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+        log.fine("Local media server started on port " + getPort());
+    }
+
+    public synchronized void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+        Selector selector = mSelector;
+        mSelector = null;
+        mServerChannel = null;
+        if (selector != null) selector.wakeup();
+        mThread = null;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * 实际监听的端口，未启动时为 -1
+     */
+    public int getPort() {
+        ServerSocketChannel serverChannel = mServerChannel;
+        return serverChannel == null || !mRunning ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 当前保持的设备连接数
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * 发布文件，服务未启动时自动启动
+     *
+     * @param localAddress 设备能访问到的本机地址，通常是发现该设备的网卡地址
+     * @return 片源信息，地址指向本服务
+     */
+    @NotNull
+    public MediaMetadata publish(@NotNull File file, @NotNull InetAddress localAddress) throws IOException {
+        if (!file.isFile() || !file.canRead()) throw new IOException("Not a readable file: " + file);
+        MediaMetadata media = MediaMetadata.fromFile(file, "");
+        return media.withUrl(getBaseUrl(localAddress) + register(file, media));
+    }
+
+    /**
+     * 登记已识别的文件，不读取文件。服务监听所有网卡，路径中用随机 id，局域网内无法猜出其他已发布的文件
+     *
+     * @return 不含主机的路径，同一文件多次登记路径不变，取消发布后再登记换用新 id
+     */
+    @NotNull
+    String register(@NotNull File file, @NotNull MediaMetadata media) {
+        String path = file.getAbsolutePath();
+        String id = mIds.get(path);
+        if (id == null) {
+            String created = newId();
+            id = mIds.putIfAbsent(path, created);
+            if (id == null) id = created;
+        }
+        mEntries.put(id, new Entry(file, media));
+        return PATH_PREFIX + id + "/" + encode(file.getName());
+    }
+
+    /**
+     * http://host:port，服务未启动时自动启动
+     */
+    @NotNull
+    String getBaseUrl(@NotNull InetAddress localAddress) throws IOException {
+        start();
+        String host = localAddress.getHostAddress();
+        if (localAddress instanceof Inet6Address) {
+            int scope = host.indexOf('%');
+            host = "[" + (scope < 0 ? host : host.substring(0, scope)) + "]";
+        }
+        return "http://" + host + ":" + getPort();
+    }
+
+    public void unpublish(@NotNull File file) {
+        String id = mIds.remove(file.getAbsolutePath());
+        if (id != null) {
+            mEntries.remove(id);
+            mGeneration.incrementAndGet();
+        }
+    }
+
+    public void unpublishAll() {
+        mIds.clear();
+        mEntries.clear();
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * 路径是否仍指向已发布的文件
+     *
+     * @param path {@link #register(File, MediaMetadata)} 返回的路径
+     */
+    boolean isRegistered(@NotNull String path) {
+        String id = idOf(path);
+        return id != null && mEntries.containsKey(id);
+    }
+
+    /**
+     * 每次取消发布后递增，之前生成的地址可能已失效
+     */
+    long getGeneration() {
+        return mGeneration.get();
+    }
+
+    @Nullable
+    private static String idOf(String path) {
+        if (!path.startsWith(PATH_PREFIX)) return null;
+        int slash = path.indexOf('/', PATH_PREFIX.length());
+        return slash < 0 ? path.substring(PATH_PREFIX.length()) : path.substring(PATH_PREFIX.length(), slash);
+    }
+
+    /**
+     * 128 位随机数的十六进制
+     */
+    private static String newId() {
+        byte[] bytes = new byte[ID_BYTES];
+        RANDOM.nextBytes(bytes);
+        char[] chars = new char[ID_BYTES * 2];
+        for (int i = 0; i < ID_BYTES; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * stop 后再次 start 会换用新的 selector，旧线程据此退出
+     */
+    private void loop(Selector selector) {
+        long lastSweep = System.currentTimeMillis();
+        try {
+            while (mSelector == selector) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept(selector, (ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) connection.onReadable();
+                        if (key.isValid() && key.isWritable()) connection.onWritable();
+                    } catch (IOException e) {
+                        log.fine("Media connection closed: " + e);
+                        connection.close();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SELECT_TIMEOUT_MILLIS) {
+                    lastSweep = now;
+                    closeIdle(selector, now);
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Local media server stopped", e);
+        } finally {
+            synchronized (this) {
+                if (mSelector == selector) {
+                    mRunning = false;
+                    mSelector = null;
+                    mServerChannel = null;
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+                else closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept(Selector selector, ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            mConnectionCount.incrementAndGet();
+        }
+    }
+
+    private static void closeIdle(Selector selector, long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (!(attachment instanceof Connection)) continue;
+            Connection connection = (Connection) attachment;
+            if (connection.body == null && now - connection.lastActive > IDLE_TIMEOUT_MILLIS) connection.close();
+        }
+    }
+
+    private static void closeQuietly(@Nullable java.io.Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Entry {
+        final File file;
+        final String mimeType;
+        @Nullable
+        final String contentFeatures;
+        final boolean streaming;
+
+        Entry(File file, MediaMetadata media) {
+            this.file = file;
+            this.mimeType = media.getMimeType() == null ? "application/octet-stream" : media.getMimeType();
+            this.contentFeatures = media.getContentFeatures();
+            this.streaming = media.getItemType() != UpnpUtil.IMAGE_TYPE;
+        }
+    }
+
+    /**
+     * 一个设备连接：读请求头、写响应头、transferTo 写文件内容，完成后等待下一个请求
+     */
+    private class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+        @Nullable
+        ByteBuffer out;
+        @Nullable
+        FileChannel body;
+        long bodyPosition;
+        long bodyEnd;
+        boolean keepAlive;
+        long lastActive = System.currentTimeMillis();
+        private boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            processRequest();
+        }
+
+        /**
+         * 缓冲区中有完整的请求头时处理，响应写完前不读取下一个请求
+         */
+        private void processRequest() throws IOException {
+            if (out != null || closed) return;
+            int end = headerEnd();
+            if (end < 0) {
+                if (!in.hasRemaining()) {
+                    keepAlive = false;
+                    respondError(431, "Request Header Fields Too Large");
+                }
+                return;
+            }
+            String header = new String(in.array(), 0, end, ISO_8859_1);
+            int consumed = end + 4;
+            in.flip();
+            in.position(consumed);
+            in.compact();
+            handle(header);
+            key.interestOps(SelectionKey.OP_WRITE);
+            onWritable();
+        }
+
+        private int headerEnd() {
+            byte[] data = in.array();
+            for (int i = 0, limit = in.position() - 3; i < limit; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') return i;
+            }
+            return -1;
+        }
+
+        private void handle(String header) throws IOException {
+            String[] lines = header.split("\r\n");
+            String[] request = lines[0].split(" ");
+            if (request.length != 3) {
+                respondError(400, "Bad Request");
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US), lines[i].substring(colon + 1).trim());
+                }
+            }
+            String connection = headers.get("connection");
+            keepAlive = "HTTP/1.1".equals(request[2])
+                    ? !"close".equalsIgnoreCase(connection)
+                    : "keep-alive".equalsIgnoreCase(connection);
+
+            String method = request[0];
+            boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                keepAlive = false;
+                respondError(405, "Method Not Allowed");
+                return;
+            }
+            Entry entry = lookup(request[1]);
+            if (entry == null) {
+                respondError(404, "Not Found");
+                return;
+            }
+            serve(entry, headers.get("range"), head);
+        }
+
+        @Nullable
+        private Entry lookup(String path) {
+            String id = idOf(path);
+            return id == null ? null : mEntries.get(id);
+        }
+
+        private void serve(Entry entry, @Nullable String range, boolean head) throws IOException {
+            RandomAccessFile file;
+            try {
+                file = new RandomAccessFile(entry.file, "r");
+            } catch (IOException e) {
+                respondError(404, "Not Found");
+                return;
+            }
+            long length = file.length();
+            long start = 0;
+            long end = length - 1;
+            boolean partial = false;
+            if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+                long[] bounds = parseRange(range.substring(6).trim(), length);
+                if (bounds == null) {
+                    file.close();
+                    StringBuilder response = statusLine(416, "Requested Range Not Satisfiable");
+                    response.append("Content-Range: bytes */").append(length).append("\r\n");
+                    finishHeaders(response, 0);
+                    return;
+                }
+                start = bounds[0];
+                end = bounds[1];
+                partial = true;
+            }
+
+            long contentLength = length == 0 ? 0 : end - start + 1;
+            StringBuilder response = partial ? statusLine(206, "Partial Content") : statusLine(200, "OK");
+            response.append("Content-Type: ").append(entry.mimeType).append("\r\n");
+            response.append("Accept-Ranges: bytes\r\n");
+            if (partial) response.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(length).append("\r\n");
+            response.append("transferMode.dlna.org: ").append(entry.streaming ? "Streaming" : "Interactive").append("\r\n");
+            if (entry.contentFeatures != null) response.append("contentFeatures.dlna.org: ").append(entry.contentFeatures).append("\r\n");
+            finishHeaders(response, contentLength);
+
+            if (head || contentLength == 0) {
+                file.close();
+            } else {
+                body = file.getChannel();
+                bodyPosition = start;
+                bodyEnd = end + 1;
+            }
+        }
+
+        /**
+         * @return [start, end]，无法满足时为 null
+         */
+        @Nullable
+        private long[] parseRange(String spec, long length) {
+            int dash = spec.indexOf('-');
+            if (dash < 0 || length == 0) return null;
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) return null;
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                }
+                if (start >= length || start > end) return null;
+                return new long[]{start, end};
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private StringBuilder statusLine(int code, String reason) {
+            return new StringBuilder(256).append("HTTP/1.1 ").append(code).append(' ').append(reason).append("\r\n");
+        }
+
+        private void finishHeaders(StringBuilder response, long contentLength) {
+            response.append("Content-Length: ").append(contentLength).append("\r\n");
+            response.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+            out = ByteBuffer.wrap(response.toString().getBytes(ISO_8859_1));
+        }
+
+        private void respondError(int code, String reason) throws IOException {
+            finishHeaders(statusLine(code, reason), 0);
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer out = this.out;
+            if (out == null) return;
+            if (out.hasRemaining()) {
+                channel.write(out);
+                if (out.hasRemaining()) return;
+            }
+            FileChannel body = this.body;
+            if (body != null) {
+                // 非阻塞 socket 写满时返回 0，等待下一次可写
+                long written = body.transferTo(bodyPosition, bodyEnd - bodyPosition, channel);
+                if (written > 0) lastActive = System.currentTimeMillis();
+                bodyPosition += written;
+                if (bodyPosition < bodyEnd) return;
+                closeBody();
+            }
+            this.out = null;
+            if (!keepAlive) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            processRequest();
+        }
+
+        private void closeBody() {
+            closeQuietly(body);
+            body = null;
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            closeBody();
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+            mConnectionCount.decrementAndGet();
+        }
+    }
+}
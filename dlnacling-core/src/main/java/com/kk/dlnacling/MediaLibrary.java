@@ -0,0 +1,697 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * 本地媒体库索引，供 ContentDirectory 浏览和搜索。
+ * <p>
+ * 按类型分为视频、音乐、图片三个容器，子项按标题排序的结果在两次变化之间复用；
+ * 标题建三字母组倒排索引，contains 搜索先取各组倒排表的交集再逐项确认。
+ * 扫描是增量的：未变化（修改时间、大小相同）的文件不再读取，每次扫描只产生一次变化
+ */
+public class MediaLibrary {
+
+    private static final Logger log = Logger.getLogger(MediaLibrary.class.getName());
+
+    public static final String ROOT_ID = "0";
+    public static final String VIDEO_CONTAINER_ID = "video";
+    public static final String AUDIO_CONTAINER_ID = "audio";
+    public static final String IMAGE_CONTAINER_ID = "image";
+
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final List<LibraryItem> mItems = new ArrayList<>();
+    private final Map<String, LibraryItem> mByPath = new HashMap<>();
+    private final Map<String, LibraryItem> mById = new HashMap<>();
+    private final Map<String, String> mIds = new HashMap<>();
+    private final Map<String, IntList> mPostings = new HashMap<>();
+    private final AtomicReferenceArray<int[]> mSortedChildren = new AtomicReferenceArray<>(3);
+    private int mLiveCount;
+    private int mNextId;
+    private long mUpdateId;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 扫描目录（含子目录），新增、更新、移除该目录下的条目
+     *
+     * @return 变化的条目数
+     */
+    public int scan(@NotNull File root) {
+        String prefix = root.getAbsolutePath() + File.separator;
+        Map<String, long[]> known = new HashMap<>();
+        mLock.readLock().lock();
+        try {
+            for (LibraryItem item : mByPath.values()) {
+                if (item.path.startsWith(prefix)) known.put(item.path, new long[]{item.lastModified, item.length});
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        // 读取文件头不持锁
+        List<LibraryItem> added = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<File> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            File[] files = pending.pop().listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    if (!file.isHidden()) pending.push(file);
+                    continue;
+                }
+                String path = file.getAbsolutePath();
+                seen.add(path);
+                long[] stat = known.get(path);
+                if (stat != null && stat[0] == file.lastModified() && stat[1] == file.length()) continue;
+                LibraryItem item = sniff(file);
+                if (item != null) added.add(item);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String path : known.keySet()) {
+            if (!seen.contains(path)) removed.add(path);
+        }
+        return commit(added, removed);
+    }
+
+    /**
+     * 添加或更新单个文件
+     *
+     * @return 文件不是可识别的媒体时为 false
+     */
+    public boolean add(@NotNull File file) {
+        LibraryItem item = sniff(file);
+        if (item == null) return false;
+        commit(Collections.singletonList(item), Collections.<String>emptyList());
+        return true;
+    }
+
+    public void remove(@NotNull File file) {
+        commit(Collections.<LibraryItem>emptyList(), Collections.singletonList(file.getAbsolutePath()));
+    }
+
+    public long getUpdateId() {
+        mLock.readLock().lock();
+        try {
+            return mUpdateId;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            return mLiveCount;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Nullable
+    private static LibraryItem sniff(File file) {
+        if (!file.isFile() || !file.canRead()) return null;
+        try {
+            MediaMetadata media = MediaMetadata.fromFile(file, "");
+            if (media.getMimeType() == null) return null;
+            return new LibraryItem(file, media);
+        } catch (IOException e) {
+            log.fine("Skip unreadable media " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private int commit(List<LibraryItem> added, List<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) return 0;
+        long updateId;
+        mLock.writeLock().lock();
+        try {
+            for (String path : removed) removeLocked(path);
+            for (LibraryItem item : added) {
+                removeLocked(item.path);
+                String id = mIds.get(item.path);
+                if (id == null) {
+                    id = "i" + (++mNextId);
+                    mIds.put(item.path, id);
+                }
+                item.attach(id, mItems.size());
+                mItems.add(item);
+                mByPath.put(item.path, item);
+                mById.put(id, item);
+                mLiveCount++;
+                for (String gram : grams(item.titleKey)) {
+                    IntList posting = mPostings.get(gram);
+                    if (posting == null) mPostings.put(gram, posting = new IntList());
+                    posting.add(item.number);
+                }
+            }
+            if (mItems.size() - mLiveCount > Math.max(1024, mLiveCount)) compactLocked();
+            for (int i = 0; i < mSortedChildren.length(); i++) mSortedChildren.set(i, null);
+            updateId = ++mUpdateId;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        for (Listener listener : mListeners) listener.onLibraryChanged(updateId);
+        return added.size() + removed.size();
+    }
+
+    /**
+     * 条目只做标记，倒排表中的旧编号在确认时跳过
+     */
+    private void removeLocked(String path) {
+        LibraryItem item = mByPath.remove(path);
+        if (item == null) return;
+        mById.remove(item.id);
+        mItems.set(item.number, null);
+        mLiveCount--;
+    }
+
+    /**
+     * 已删除的编号过多时重新编号并重建倒排表
+     */
+    private void compactLocked() {
+        List<LibraryItem> live = new ArrayList<>(mLiveCount);
+        for (LibraryItem item : mItems) {
+            if (item != null) live.add(item);
+        }
+        mItems.clear();
+        mPostings.clear();
+        for (LibraryItem item : live) {
+            item.attach(item.id, mItems.size());
+            mItems.add(item);
+            for (String gram : grams(item.titleKey)) {
+                IntList posting = mPostings.get(gram);
+                if (posting == null) mPostings.put(gram, posting = new IntList());
+                posting.add(item.number);
+            }
+        }
+    }
+
+    @Nullable
+    LibraryItem getItem(@NotNull String id) {
+        mLock.readLock().lock();
+        try {
+            return mById.get(id);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    static boolean isContainer(@NotNull String id) {
+        return ROOT_ID.equals(id) || containerIndex(id) >= 0;
+    }
+
+    /**
+     * @return 容器对应的投屏类型，不是类型容器时为 -1
+     */
+    static int containerIndex(@NotNull String id) {
+        switch (id) {
+            case VIDEO_CONTAINER_ID:
+                return UpnpUtil.VIDEO_TYPE;
+            case AUDIO_CONTAINER_ID:
+                return UpnpUtil.AUDIO_TYPE;
+            case IMAGE_CONTAINER_ID:
+                return UpnpUtil.IMAGE_TYPE;
+            default:
+                return -1;
+        }
+    }
+
+    int getChildCount(@NotNull String containerId) {
+        if (ROOT_ID.equals(containerId)) return 3;
+        int type = containerIndex(containerId);
+        if (type < 0) return 0;
+        mLock.readLock().lock();
+        try {
+            return sortedChildrenLocked(type).length;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 容器内按标题排序的一页
+     *
+     * @param total 输出总数，长度 1
+     */
+    @NotNull
+    List<LibraryItem> children(@NotNull String containerId, int first, int max, int[] total) {
+        int type = containerIndex(containerId);
+        if (type < 0) {
+            total[0] = 0;
+            return Collections.emptyList();
+        }
+        mLock.readLock().lock();
+        try {
+            int[] children = sortedChildrenLocked(type);
+            total[0] = children.length;
+            return page(children, children.length, first, max);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索，结果按标题排序
+     *
+     * @param containerId 根容器或类型容器
+     * @param criteria    UPnP 搜索条件，如 dc:title contains "abc" and upnp:class derivedfrom "object.item.videoItem"
+     * @throws IllegalArgumentException 条件无法解析
+     */
+    @NotNull
+    List<LibraryItem> search(@NotNull String containerId, @NotNull String criteria, int first, int max, int[] total) {
+        Node node = new CriteriaParser(criteria).parse();
+        int type = containerIndex(containerId);
+        mLock.readLock().lock();
+        try {
+            int[] matches;
+            int count = 0;
+            int[] candidates = node.candidates();
+            if (candidates == null) {
+                // 没有可用的倒排表，按排序好的子项逐个确认，结果天然有序
+                int[][] sources = type >= 0 ? new int[][]{sortedChildrenLocked(type)} : new int[][]{
+                        sortedChildrenLocked(UpnpUtil.VIDEO_TYPE), sortedChildrenLocked(UpnpUtil.AUDIO_TYPE),
+                        sortedChildrenLocked(UpnpUtil.IMAGE_TYPE)};
+                int size = 0;
+                for (int[] source : sources) size += source.length;
+                matches = new int[size];
+                for (int[] source : sources) {
+                    for (int number : source) {
+                        if (node.test(mItems.get(number))) matches[count++] = number;
+                    }
+                }
+                if (type < 0) count = sortByTitle(matches, count);
+            } else {
+                matches = new int[candidates.length];
+                for (int number : candidates) {
+                    LibraryItem item = number < mItems.size() ? mItems.get(number) : null;
+                    if (item == null || (type >= 0 && item.type != type) || !node.test(item)) continue;
+                    matches[count++] = number;
+                }
+                count = sortByTitle(matches, count);
+            }
+            total[0] = count;
+            return page(matches, count, first, max);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    private List<LibraryItem> page(int[] numbers, int count, int first, int max) {
+        if (first >= count) return Collections.emptyList();
+        int end = max <= 0 ? count : (int) Math.min(count, (long) first + max);
+        List<LibraryItem> page = new ArrayList<>(end - first);
+        for (int i = first; i < end; i++) page.add(mItems.get(numbers[i]));
+        return page;
+    }
+
+    /**
+     * 读锁下惰性排序，多个读线程同时计算时结果相同，后写入的覆盖即可
+     */
+    private int[] sortedChildrenLocked(int type) {
+        int[] sorted = mSortedChildren.get(type);
+        if (sorted != null) return sorted;
+        int[] numbers = new int[mLiveCount];
+        int count = 0;
+        for (LibraryItem item : mItems) {
+            if (item != null && item.type == type) numbers[count++] = item.number;
+        }
+        sortByTitle(numbers, count);
+        sorted = Arrays.copyOf(numbers, count);
+        mSortedChildren.set(type, sorted);
+        return sorted;
+    }
+
+    private int sortByTitle(int[] numbers, int count) {
+        Integer[] boxed = new Integer[count];
+        for (int i = 0; i < count; i++) boxed[i] = numbers[i];
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = mItems.get(a).titleKey.compareTo(mItems.get(b).titleKey);
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+        for (int i = 0; i < count; i++) numbers[i] = boxed[i];
+        return count;
+    }
+
+    /**
+     * 标题的三字母组，短于三个字符的标题不入索引（短查询直接逐项确认）
+     */
+    static Set<String> grams(String key) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= key.length(); i++) grams.add(key.substring(i, i + GRAM));
+        return grams;
+    }
+
+    /**
+     * 倒排表按编号递增，求交集
+     */
+    @Nullable
+    private int[] intersect(String query) {
+        if (query.length() < GRAM) return null;
+        IntList smallest = null;
+        List<IntList> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            IntList posting = mPostings.get(gram);
+            if (posting == null) return new int[0];
+            lists.add(posting);
+            if (smallest == null || posting.size < smallest.size) smallest = posting;
+        }
+        int[] result = Arrays.copyOf(smallest.values, smallest.size);
+        int count = result.length;
+        for (IntList list : lists) {
+            if (list == smallest) continue;
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (Arrays.binarySearch(list.values, 0, list.size, result[i]) >= 0) result[kept++] = result[i];
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public interface Listener {
+        /**
+         * 在修改索引的线程回调
+         */
+        void onLibraryChanged(long updateId);
+    }
+
+    static final class LibraryItem {
+        final File file;
+        final String path;
+        final long lastModified;
+        final long length;
+        final int type;
+        final String titleKey;
+        final MediaMetadata media;
+        String id;
+        int number;
+        /**
+         * 在本地 http 服务中的路径，出现在浏览结果时登记，取消发布后重新登记
+         */
+        @Nullable
+        volatile String serverPath;
+
+        LibraryItem(File file, MediaMetadata media) {
+            this.file = file;
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.type = media.getItemType();
+            this.titleKey = media.getTitle().toLowerCase(Locale.ROOT);
+            this.media = media;
+        }
+
+        void attach(String id, int number) {
+            this.id = id;
+            this.number = number;
+            media.setId(id).setParentId(containerId(type));
+        }
+
+        static String containerId(int type) {
+            switch (type) {
+                case UpnpUtil.AUDIO_TYPE:
+                    return AUDIO_CONTAINER_ID;
+                case UpnpUtil.IMAGE_TYPE:
+                    return IMAGE_CONTAINER_ID;
+                default:
+                    return VIDEO_CONTAINER_ID;
+            }
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * 搜索条件的语法树节点
+     */
+    private abstract class Node {
+        abstract boolean test(LibraryItem item);
+
+        /**
+         * 可能命中的编号（递增），null 表示需要逐项确认
+         */
+        @Nullable
+        int[] candidates() {
+            return null;
+        }
+    }
+
+    /**
+     * 支持 dc:title、upnp:class、dc:creator/upnp:artist 的比较，and/or/括号组合，以及 * 和 exists
+     */
+    private class CriteriaParser {
+        private final String criteria;
+        private int pos;
+
+        CriteriaParser(String criteria) {
+            this.criteria = criteria.trim();
+        }
+
+        Node parse() {
+            if (criteria.isEmpty() || "*".equals(criteria)) return new Node() {
+                @Override
+                boolean test(LibraryItem item) {
+                    return true;
+                }
+            };
+            Node node = parseOr();
+            skipSpaces();
+            if (pos < criteria.length()) throw new IllegalArgumentException("Unexpected input at " + pos + ": " + criteria);
+            return node;
+        }
+
+        private Node parseOr() {
+            final List<Node> nodes = new ArrayList<>();
+            nodes.add(parseAnd());
+            while (keyword("or")) nodes.add(parseAnd());
+            if (nodes.size() == 1) return nodes.get(0);
+            return new Node() {
+                @Override
+                boolean test(LibraryItem item) {
+                    for (Node node : nodes) {
+                        if (node.test(item)) return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                int[] candidates() {
+                    Set<Integer> union = new HashSet<>();
+                    for (Node node : nodes) {
+                        int[] candidates = node.candidates();
+                        if (candidates == null) return null;
+                        for (int number : candidates) union.add(number);
+                    }
+                    int[] result = new int[union.size()];
+                    int i = 0;
+                    for (Integer number : union) result[i++] = number;
+                    Arrays.sort(result);
+                    return result;
+                }
+            };
+        }
+
+        private Node parseAnd() {
+            final List<Node> nodes = new ArrayList<>();
+            nodes.add(parseFactor());
+            while (keyword("and")) nodes.add(parseFactor());
+            if (nodes.size() == 1) return nodes.get(0);
+            return new Node() {
+                @Override
+                boolean test(LibraryItem item) {
+                    for (Node node : nodes) {
+                        if (!node.test(item)) return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                int[] candidates() {
+                    int[] best = null;
+                    for (Node node : nodes) {
+                        int[] candidates = node.candidates();
+                        if (candidates != null && (best == null || candidates.length < best.length)) best = candidates;
+                    }
+                    return best;
+                }
+            };
+        }
+
+        private Node parseFactor() {
+            skipSpaces();
+            if (pos < criteria.length() && criteria.charAt(pos) == '(') {
+                pos++;
+                Node node = parseOr();
+                skipSpaces();
+                if (pos >= criteria.length() || criteria.charAt(pos) != ')') throw new IllegalArgumentException("Missing ) in " + criteria);
+                pos++;
+                return node;
+            }
+            String property = word();
+            String op = word();
+            skipSpaces();
+            if ("exists".equalsIgnoreCase(op)) {
+                final boolean exists = Boolean.parseBoolean(word());
+                final boolean known = isKnownProperty(property);
+                return new Node() {
+                    @Override
+                    boolean test(LibraryItem item) {
+                        return known == exists;
+                    }
+                };
+            }
+            return comparison(property, op, quoted());
+        }
+
+        private boolean isKnownProperty(String property) {
+            return "dc:title".equals(property) || "upnp:class".equals(property)
+                    || "dc:creator".equals(property) || "upnp:artist".equals(property) || "res".equals(property);
+        }
+
+        private Node comparison(final String property, String op, final String value) {
+            final String lower = value.toLowerCase(Locale.ROOT);
+            final int kind;
+            switch (op) {
+                case "=":
+                    kind = 0;
+                    break;
+                case "!=":
+                    kind = 1;
+                    break;
+                case "contains":
+                    kind = 2;
+                    break;
+                case "doesNotContain":
+                    kind = 3;
+                    break;
+                case "derivedfrom":
+                    kind = 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + op);
+            }
+            return new Node() {
+                @Override
+                boolean test(LibraryItem item) {
+                    String actual;
+                    if ("dc:title".equals(property)) {
+                        actual = item.titleKey;
+                    } else if ("upnp:class".equals(property)) {
+                        actual = item.media.getUpnpClass();
+                    } else if ("dc:creator".equals(property) || "upnp:artist".equals(property)) {
+                        actual = "unknow";
+                    } else {
+                        return false;
+                    }
+                    if (actual == null) return false;
+                    String actualLower = actual.toLowerCase(Locale.ROOT);
+                    switch (kind) {
+                        case 0:
+                            return actualLower.equals(lower);
+                        case 1:
+                            return !actualLower.equals(lower);
+                        case 2:
+                            return actualLower.contains(lower);
+                        case 3:
+                            return !actualLower.contains(lower);
+                        default:
+                            return actualLower.startsWith(lower);
+                    }
+                }
+
+                @Override
+                int[] candidates() {
+                    if (!"dc:title".equals(property) || (kind != 0 && kind != 2)) return null;
+                    return intersect(lower);
+                }
+            };
+        }
+
+        private boolean keyword(String keyword) {
+            skipSpaces();
+            int end = pos + keyword.length();
+            if (end < criteria.length() && criteria.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (Character.isWhitespace(criteria.charAt(end)) || criteria.charAt(end) == '(')) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private String word() {
+            skipSpaces();
+            int start = pos;
+            while (pos < criteria.length() && !Character.isWhitespace(criteria.charAt(pos))
+                    && criteria.charAt(pos) != '(' && criteria.charAt(pos) != ')' && criteria.charAt(pos) != '"') {
+                pos++;
+            }
+            if (start == pos) throw new IllegalArgumentException("Expected token at " + pos + ": " + criteria);
+            return criteria.substring(start, pos);
+        }
+
+        /**
+         * 双引号字符串，\" 和 \\ 转义
+         */
+        private String quoted() {
+            if (pos >= criteria.length() || criteria.charAt(pos) != '"') throw new IllegalArgumentException("Expected quoted value at " + pos);
+            StringBuilder value = new StringBuilder();
+            pos++;
+            while (pos < criteria.length()) {
+                char c = criteria.charAt(pos++);
+                if (c == '"') return value.toString();
+                if (c == '\\' && pos < criteria.length()) c = criteria.charAt(pos++);
+                value.append(c);
+            }
+            throw new IllegalArgumentException("Unterminated string in " + criteria);
+        }
+
+        private void skipSpaces() {
+            while (pos < criteria.length() && Character.isWhitespace(criteria.charAt(pos))) pos++;
+        }
+    }
+}
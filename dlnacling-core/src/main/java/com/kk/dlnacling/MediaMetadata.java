@@ -0,0 +1,356 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.support.model.ProtocolInfo;
+import org.fourthline.cling.support.model.item.AudioItem;
+import org.fourthline.cling.support.model.item.ImageItem;
+import org.fourthline.cling.support.model.item.VideoItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 投屏片源的描述：类型、大小、时长、分辨率以及 DLNA 参数。
+ * 信息越完整，设备越不需要在播放前自行探测片源，也能据此开启按字节/按时间跳转
+ * <pre>
+ * MediaMetadata media = new MediaMetadata(url, UpnpUtil.VIDEO_TYPE)
+ *         .setTitle("片名")
+ *         .setMimeType("video/mp4")
+ *         .setSize(size)
+ *         .setDurationMillis(duration);
+ * controller.autoPlayAsync(device, media);
+ * </pre>
+ * 什么都不设置时，生成的 metadata 与 {@link UpnpUtil#pushMediaToRender} 相同
+ */
+public class MediaMetadata {
+
+    /**
+     * DLNA.ORG_FLAGS 的各个标志位，见 DLNA 指南 7.4.1.3.24
+     */
+    public static final int FLAG_SENDER_PACED = 1 << 31;
+    public static final int FLAG_TIME_BASED_SEEK = 1 << 30;
+    public static final int FLAG_BYTE_BASED_SEEK = 1 << 29;
+    public static final int FLAG_PLAY_CONTAINER = 1 << 28;
+    public static final int FLAG_S0_INCREASE = 1 << 27;
+    public static final int FLAG_SN_INCREASE = 1 << 26;
+    public static final int FLAG_RTSP_PAUSE = 1 << 25;
+    public static final int FLAG_STREAMING_TRANSFER_MODE = 1 << 24;
+    public static final int FLAG_INTERACTIVE_TRANSFER_MODE = 1 << 23;
+    public static final int FLAG_BACKGROUND_TRANSFER_MODE = 1 << 22;
+    public static final int FLAG_CONNECTION_STALL = 1 << 21;
+    public static final int FLAG_DLNA_V15 = 1 << 20;
+
+    private static final String DEFAULT_CREATOR = "unknow";
+
+    private final String url;
+    private final int itemType;
+    private String id = "";
+    private String parentId = "0";
+    private String title = "";
+    private String creator = DEFAULT_CREATOR;
+    @Nullable
+    private String mimeType;
+    private long size = -1;
+    private long durationMillis = -1;
+    private int width;
+    private int height;
+    private long bitrate = -1;
+    @Nullable
+    private String dlnaProfile;
+    private boolean byteSeek;
+    private boolean timeSeek;
+    private boolean operationSet;
+    private int dlnaFlags;
+    private boolean flagsSet;
+
+    /**
+     * @param url      片源地址
+     * @param itemType 投屏类型
+     * @see UpnpUtil itemType
+     */
+    public MediaMetadata(@NotNull String url, int itemType) {
+        this.url = url;
+        this.itemType = itemType;
+    }
+
+    /**
+     * 读取本地文件头，识别类型、大小，以及能从文件头得到的时长和分辨率
+     *
+     * @param url 设备访问该文件的地址
+     */
+    @NotNull
+    public static MediaMetadata fromFile(@NotNull File file, @NotNull String url) throws IOException {
+        return MediaSniffer.sniff(file, url);
+    }
+
+    @NotNull
+    public String getUrl() {
+        return url;
+    }
+
+    public int getItemType() {
+        return itemType;
+    }
+
+    public MediaMetadata setId(@NotNull String id) {
+        this.id = id;
+        return this;
+    }
+
+    @NotNull
+    public String getId() {
+        return id;
+    }
+
+    public MediaMetadata setParentId(@NotNull String parentId) {
+        this.parentId = parentId;
+        return this;
+    }
+
+    public MediaMetadata setTitle(@NotNull String title) {
+        this.title = title;
+        return this;
+    }
+
+    @NotNull
+    public String getTitle() {
+        return title;
+    }
+
+    public MediaMetadata setCreator(@NotNull String creator) {
+        this.creator = creator;
+        return this;
+    }
+
+    /**
+     * 片源类型，如 video/mp4，为空时使用通配符
+     */
+    public MediaMetadata setMimeType(@Nullable String mimeType) {
+        this.mimeType = mimeType;
+        return this;
+    }
+
+    @Nullable
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * 字节数，未知时为 -1
+     */
+    public MediaMetadata setSize(long size) {
+        this.size = size;
+        return this;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public MediaMetadata setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public MediaMetadata setResolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 码率，按 UPnP 的定义单位是字节/秒
+     */
+    public MediaMetadata setBitrate(long bytesPerSecond) {
+        this.bitrate = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * DLNA.ORG_PN，如 MP3、JPEG_LRG、AVC_MP4_MP_HD_AAC
+     */
+    public MediaMetadata setDlnaProfile(@Nullable String dlnaProfile) {
+        this.dlnaProfile = dlnaProfile;
+        return this;
+    }
+
+    @Nullable
+    public String getDlnaProfile() {
+        return dlnaProfile;
+    }
+
+    /**
+     * DLNA.ORG_OP，不设置时按是否知道大小决定是否声明支持 Range 请求
+     *
+     * @param byteSeek 服务端支持 HTTP Range
+     * @param timeSeek 服务端支持 TimeSeekRange.dlna.org
+     */
+    public MediaMetadata setDlnaOperation(boolean byteSeek, boolean timeSeek) {
+        this.byteSeek = byteSeek;
+        this.timeSeek = timeSeek;
+        this.operationSet = true;
+        return this;
+    }
+
+    /**
+     * DLNA.ORG_FLAGS，FLAG_* 的组合，不设置时按投屏类型取默认值
+     */
+    public MediaMetadata setDlnaFlags(int dlnaFlags) {
+        this.dlnaFlags = dlnaFlags;
+        this.flagsSet = true;
+        return this;
+    }
+
+    @Nullable
+    String getUpnpClass() {
+        switch (itemType) {
+            case UpnpUtil.IMAGE_TYPE:
+                return ImageItem.CLASS.getValue();
+            case UpnpUtil.VIDEO_TYPE:
+                return VideoItem.CLASS.getValue();
+            case UpnpUtil.AUDIO_TYPE:
+                return AudioItem.CLASS.getValue();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * res 的 protocolInfo，例如 http-get:*:video/mp4:DLNA.ORG_OP=01;DLNA.ORG_CI=0;DLNA.ORG_FLAGS=...
+     */
+    @NotNull
+    public String getProtocolInfo() {
+        String mime = mimeType == null ? ProtocolInfo.WILDCARD + "/" + ProtocolInfo.WILDCARD : mimeType;
+        StringBuilder builder = new StringBuilder(128);
+        builder.append("http-get:*:").append(mime).append(':');
+        if (!hasDlnaInfo()) return builder.append(ProtocolInfo.WILDCARD).toString();
+
+        if (dlnaProfile != null) builder.append("DLNA.ORG_PN=").append(dlnaProfile).append(';');
+        boolean byteSeek = operationSet ? this.byteSeek : size > 0;
+        boolean timeSeek = operationSet && this.timeSeek;
+        builder.append("DLNA.ORG_OP=").append(timeSeek ? '1' : '0').append(byteSeek ? '1' : '0');
+        builder.append(";DLNA.ORG_CI=0;DLNA.ORG_FLAGS=");
+        appendFlags(builder, flagsSet ? dlnaFlags : defaultFlags());
+        return builder.toString();
+    }
+
+    /**
+     * protocolInfo 的第四段，用作 http 响应的 contentFeatures.dlna.org，没有 DLNA 参数时为 null
+     */
+    @Nullable
+    public String getContentFeatures() {
+        if (!hasDlnaInfo()) return null;
+        String protocolInfo = getProtocolInfo();
+        int index = 0;
+        for (int i = 0; i < 3; i++) index = protocolInfo.indexOf(':', index) + 1;
+        return protocolInfo.substring(index);
+    }
+
+    /**
+     * 没有任何可以告诉设备的信息时沿用通配符
+     */
+    private boolean hasDlnaInfo() {
+        return mimeType != null || dlnaProfile != null || operationSet || flagsSet;
+    }
+
+    private int defaultFlags() {
+        int transferMode = itemType == UpnpUtil.IMAGE_TYPE ? FLAG_INTERACTIVE_TRANSFER_MODE : FLAG_STREAMING_TRANSFER_MODE;
+        return transferMode | FLAG_BACKGROUND_TRANSFER_MODE | FLAG_CONNECTION_STALL | FLAG_DLNA_V15;
+    }
+
+    /**
+     * 8 位十六进制的主标志加 24 位保留的 0
+     */
+    private static void appendFlags(StringBuilder builder, int flags) {
+        String hex = Integer.toHexString(flags).toUpperCase();
+        for (int i = hex.length(); i < 8; i++) builder.append('0');
+        builder.append(hex).append("000000000000000000000000");
+    }
+
+    /**
+     * DIDL-Lite metadata，用于 SetAVTransportURI
+     *
+     * @return 投屏类型无效时为 null
+     */
+    @Nullable
+    public String toDidl() {
+        String upnpClass = getUpnpClass();
+        if (upnpClass == null) return null;
+        DidlWriter writer = DidlWriter.obtain();
+        writeItem(writer, upnpClass, url);
+        return writer.finish();
+    }
+
+    /**
+     * 写入一个 item，Browse 结果中多个 item 共用一个 DIDL-Lite
+     *
+     * @param url 资源地址，同一片源对不同网卡上的设备地址不同
+     */
+    void writeItem(DidlWriter writer, String upnpClass, String url) {
+        writer.beginItem(id, parentId, true, title, creator, upnpClass).date();
+        if (size <= 0 && durationMillis < 0 && width <= 0 && bitrate <= 0) {
+            writer.res(getProtocolInfo(), null, null, url);
+        } else {
+            writer.res(getProtocolInfo(), size, formatDuration(durationMillis), width, height, bitrate, url);
+        }
+        writer.endItem();
+    }
+
+    /**
+     * 复制一份，换用新的地址
+     */
+    @NotNull
+    MediaMetadata withUrl(@NotNull String url) {
+        MediaMetadata copy = new MediaMetadata(url, itemType);
+        copy.id = id;
+        copy.parentId = parentId;
+        copy.title = title;
+        copy.creator = creator;
+        copy.mimeType = mimeType;
+        copy.size = size;
+        copy.durationMillis = durationMillis;
+        copy.width = width;
+        copy.height = height;
+        copy.bitrate = bitrate;
+        copy.dlnaProfile = dlnaProfile;
+        copy.byteSeek = byteSeek;
+        copy.timeSeek = timeSeek;
+        copy.operationSet = operationSet;
+        copy.dlnaFlags = dlnaFlags;
+        copy.flagsSet = flagsSet;
+        return copy;
+    }
+
+    /**
+     * res@duration 的格式 H+:MM:SS.FFF
+     */
+    @Nullable
+    static String formatDuration(long millis) {
+        return millis < 0 ? null : TimeCode.formatWithFraction(millis);
+    }
+
+    @Override
+    public String toString() {
+        return "MediaMetadata{" +
+                "url=" + url +
+                ", mimeType=" + mimeType +
+                ", size=" + size +
+                ", duration=" + durationMillis +
+                ", resolution=" + width + "x" + height +
+                ", profile=" + dlnaProfile +
+                '}';
+    }
+}
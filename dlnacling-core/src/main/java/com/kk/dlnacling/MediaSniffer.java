@@ -0,0 +1,317 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * 按文件头识别本地片源：类型、DLNA profile，以及不需要解码就能读到的时长和分辨率
+ *
+ * @see MediaMetadata#fromFile(File, String)
+ */
+final class MediaSniffer {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int HEADER_SIZE = 192;
+    /**
+     * MP4 box、JPEG 段最多查看的数量，防止损坏的文件导致长时间扫描
+     */
+    private static final int MAX_BOXES = 256;
+
+    private final RandomAccessFile file;
+    private final long length;
+    private final MediaMetadata media;
+
+    private MediaSniffer(RandomAccessFile file, MediaMetadata media) throws IOException {
+        this.file = file;
+        this.length = file.length();
+        this.media = media;
+    }
+
+    @NotNull
+    static MediaMetadata sniff(@NotNull File source, @NotNull String url) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(source, "r");
+        try {
+            byte[] header = new byte[(int) Math.min(HEADER_SIZE, file.length())];
+            file.readFully(header);
+            String mimeType = mimeType(header);
+            MediaMetadata media = new MediaMetadata(url, itemType(mimeType))
+                    .setTitle(title(source.getName()))
+                    .setMimeType(mimeType)
+                    .setSize(file.length());
+            if (mimeType != null) {
+                try {
+                    new MediaSniffer(file, media).readDetails(header, mimeType);
+                } catch (IOException e) {
+                    // 文件头不完整时只保留类型和大小
+                }
+            }
+            if (media.getDurationMillis() > 0 && media.getSize() > 0) {
+                media.setBitrate(media.getSize() * 1000 / media.getDurationMillis());
+            }
+            return media;
+        } finally {
+            file.close();
+        }
+    }
+
+    @Nullable
+    static String mimeType(byte[] h) {
+        if (startsWith(h, 0, 0xFF, 0xD8, 0xFF)) return "image/jpeg";
+        if (startsWith(h, 0, 0x89, 'P', 'N', 'G')) return "image/png";
+        if (startsWith(h, 0, 'G', 'I', 'F', '8')) return "image/gif";
+        if (startsWith(h, 0, 'f', 'L', 'a', 'C')) return "audio/flac";
+        if (startsWith(h, 0, 'R', 'I', 'F', 'F')) {
+            if (startsWith(h, 8, 'W', 'A', 'V', 'E')) return "audio/wav";
+            if (startsWith(h, 8, 'A', 'V', 'I', ' ')) return "video/x-msvideo";
+            return null;
+        }
+        if (startsWith(h, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return new String(h, ASCII).contains("webm") ? "video/webm" : "video/x-matroska";
+        }
+        if (startsWith(h, 4, 'f', 't', 'y', 'p')) {
+            if (startsWith(h, 8, 'M', '4', 'A', ' ')) return "audio/mp4";
+            if (startsWith(h, 8, 'q', 't', ' ', ' ')) return "video/quicktime";
+            return "video/mp4";
+        }
+        if (startsWith(h, 0, 'I', 'D', '3')) return "audio/mpeg";
+        // 帧同步后 layer 为 00 的是 AAC ADTS，MPEG 音频的 layer 不为 00
+        if (h.length > 1 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xF6) == 0xF0) return "audio/aac";
+        if (h.length > 1 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xE0) == 0xE0) return "audio/mpeg";
+        if (h.length > 188 && h[0] == 0x47 && h[188] == 0x47) return "video/mp2t";
+        return null;
+    }
+
+    /**
+     * 按扩展名推断类型，用于没有文件头可读的网络片源
+     */
+    @Nullable
+    static String mimeTypeForName(@NotNull String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return null;
+        switch (name.substring(dot + 1).toLowerCase(Locale.US)) {
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "png":
+                return "image/png";
+            case "gif":
+                return "image/gif";
+            case "mp3":
+                return "audio/mpeg";
+            case "m4a":
+                return "audio/mp4";
+            case "aac":
+                return "audio/aac";
+            case "flac":
+                return "audio/flac";
+            case "wav":
+                return "audio/wav";
+            case "mp4":
+            case "m4v":
+                return "video/mp4";
+            case "mov":
+                return "video/quicktime";
+            case "mkv":
+                return "video/x-matroska";
+            case "webm":
+                return "video/webm";
+            case "avi":
+                return "video/x-msvideo";
+            case "ts":
+                return "video/mp2t";
+            case "m3u8":
+                return "application/vnd.apple.mpegurl";
+            default:
+                return null;
+        }
+    }
+
+    private static int itemType(@Nullable String mimeType) {
+        if (mimeType != null) {
+            if (mimeType.startsWith("image/")) return UpnpUtil.IMAGE_TYPE;
+            if (mimeType.startsWith("audio/")) return UpnpUtil.AUDIO_TYPE;
+        }
+        return UpnpUtil.VIDEO_TYPE;
+    }
+
+    private static String title(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private void readDetails(byte[] h, String mimeType) throws IOException {
+        switch (mimeType) {
+            case "image/jpeg":
+                readJpeg();
+                break;
+            case "image/png":
+                if (h.length >= 24) media.setResolution(int32(h, 16), int32(h, 20));
+                media.setDlnaProfile("PNG_LRG");
+                break;
+            case "image/gif":
+                if (h.length >= 10) media.setResolution(uint16le(h, 6), uint16le(h, 8));
+                media.setDlnaProfile("GIF_LRG");
+                break;
+            case "audio/flac":
+                readFlac(h);
+                break;
+            case "audio/wav":
+                readWav(h);
+                break;
+            case "audio/mpeg":
+                media.setDlnaProfile("MP3");
+                break;
+            case "audio/aac":
+                media.setDlnaProfile("AAC_ADTS");
+                break;
+            case "video/mp4":
+            case "audio/mp4":
+            case "video/quicktime":
+                readMp4Boxes(0, length, 0);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 按 SOF 段取宽高，profile 按分辨率取 JPEG_SM/MED/LRG
+     */
+    private void readJpeg() throws IOException {
+        long offset = 2;
+        byte[] segment = new byte[9];
+        for (int i = 0; i < MAX_BOXES && offset + 9 <= length; i++) {
+            file.seek(offset);
+            file.readFully(segment);
+            if ((segment[0] & 0xFF) != 0xFF) return;
+            int marker = segment[1] & 0xFF;
+            int size = uint16(segment, 2);
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = uint16(segment, 5);
+                int width = uint16(segment, 7);
+                media.setResolution(width, height);
+                if (width <= 640 && height <= 480) media.setDlnaProfile("JPEG_SM");
+                else if (width <= 1024 && height <= 768) media.setDlnaProfile("JPEG_MED");
+                else if (width <= 4096 && height <= 4096) media.setDlnaProfile("JPEG_LRG");
+                return;
+            }
+            offset += 2 + size;
+        }
+    }
+
+    /**
+     * STREAMINFO：20 位采样率，36 位总采样数
+     */
+    private void readFlac(byte[] h) {
+        if (h.length < 26) return;
+        int base = 8;
+        long sampleRate = ((h[base + 10] & 0xFFL) << 12) | ((h[base + 11] & 0xFFL) << 4) | ((h[base + 12] & 0xF0L) >> 4);
+        long samples = ((h[base + 13] & 0x0FL) << 32) | uint32(h, base + 14);
+        if (sampleRate > 0 && samples > 0) media.setDurationMillis(samples * 1000 / sampleRate);
+    }
+
+    /**
+     * 标准 44 字节头：fmt 中的 byteRate 换算时长
+     */
+    private void readWav(byte[] h) {
+        if (h.length < 44 || !startsWith(h, 12, 'f', 'm', 't', ' ')) return;
+        long byteRate = uint32le(h, 28);
+        if (byteRate > 0) media.setDurationMillis((length - 44) * 1000 / byteRate);
+    }
+
+    /**
+     * 遍历 box，moov/mvhd 取时长，trak/tkhd 取第一个非零的宽高
+     */
+    private void readMp4Boxes(long start, long end, int depth) throws IOException {
+        long offset = start;
+        byte[] header = new byte[16];
+        for (int i = 0; i < MAX_BOXES && offset + 8 <= end; i++) {
+            file.seek(offset);
+            file.readFully(header, 0, 8);
+            long size = uint32(header, 0);
+            String type = new String(header, 4, 4, ASCII);
+            int headerSize = 8;
+            if (size == 1) {
+                if (offset + 16 > end) return;
+                file.readFully(header, 8, 8);
+                size = (uint32(header, 8) << 32) | uint32(header, 12);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - offset;
+            }
+            if (size < headerSize) return;
+            long body = offset + headerSize;
+            if ("moov".equals(type) || "trak".equals(type)) {
+                if (depth < 2) readMp4Boxes(body, offset + size, depth + 1);
+            } else if ("mvhd".equals(type)) {
+                readMvhd(body);
+            } else if ("tkhd".equals(type) && media.getWidth() <= 0) {
+                readTkhd(body, offset + size);
+            }
+            offset += size;
+        }
+    }
+
+    private void readMvhd(long body) throws IOException {
+        byte[] b = new byte[32];
+        file.seek(body);
+        file.readFully(b);
+        long timescale;
+        long duration;
+        if (b[0] == 1) {
+            timescale = uint32(b, 20);
+            duration = (uint32(b, 24) << 32) | uint32(b, 28);
+        } else {
+            timescale = uint32(b, 12);
+            duration = uint32(b, 16);
+        }
+        if (timescale > 0) media.setDurationMillis(duration * 1000 / timescale);
+    }
+
+    /**
+     * 宽高是 tkhd 最后 8 个字节，16.16 定点数
+     */
+    private void readTkhd(long body, long end) throws IOException {
+        if (end - body < 8) return;
+        byte[] b = new byte[8];
+        file.seek(end - 8);
+        file.readFully(b);
+        int width = (int) (uint32(b, 0) >> 16);
+        int height = (int) (uint32(b, 4) >> 16);
+        if (width > 0 && height > 0) media.setResolution(width, height);
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... prefix) {
+        if (data.length < offset + prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[offset + i] & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int uint16(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static int uint16le(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int int32(byte[] b, int offset) {
+        return (int) uint32(b, offset);
+    }
+
+    private static long uint32(byte[] b, int offset) {
+        return ((b[offset] & 0xFFL) << 24) | ((b[offset + 1] & 0xFFL) << 16) | ((b[offset + 2] & 0xFFL) << 8) | (b[offset + 3] & 0xFFL);
+    }
+
+    private static long uint32le(byte[] b, int offset) {
+        return (b[offset] & 0xFFL) | ((b[offset + 1] & 0xFFL) << 8) | ((b[offset + 2] & 0xFFL) << 16) | ((b[offset + 3] & 0xFFL) << 24);
+    }
+}
@@ -0,0 +1,251 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.support.model.PositionInfo;
+import org.fourthline.cling.support.model.TransportState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 播放进度跟踪：每隔几秒向设备取样一次 GetPositionInfo，两次取样之间按本地单调时钟推算，
+ * 每 {@link #setTickInterval(long) tick} 回调一次当前进度，进度条可以平滑前进而不必每秒查询。
+ * <p>
+ * 传输状态变化(订阅事件或本端命令)、推算到达片尾、取样与推算的偏差超过阈值时立即重新取样；
+ * 出现偏差后缩短取样间隔，直到推算重新准确。其他途径得到的进度(状态缓存的轮询、Seek)同样计入，不重复查询。
+ * <pre>
+ * PositionTracker tracker = controller.trackPosition(device, new PositionTracker.Listener() {
+ *     public void onPositionChanged(Device device, long positionMillis, long durationMillis, TransportState state) {
+ *         ...
+ *     }
+ * });
+ * ...
+ * tracker.stop();
+ * </pre>
+ *
+ * @see DlnaClingController#trackPosition(Device, Listener)
+ */
+public class PositionTracker implements Runnable {
+
+    private static final Logger log = Logger.getLogger(PositionTracker.class.getName());
+
+    /**
+     * 出现偏差后的最短取样间隔
+     */
+    private static final long MIN_SAMPLE_INTERVAL_MILLIS = 1000;
+
+    public interface Listener {
+        /**
+         * 在投屏模块的定时线程中回调，不要做耗时操作
+         *
+         * @param positionMillis 当前进度，未知时为 -1
+         * @param durationMillis 时长，未知时为 -1
+         */
+        void onPositionChanged(@NotNull Device device, long positionMillis, long durationMillis,
+                               @Nullable TransportState state);
+    }
+
+    private final DlnaClingController mController;
+    private final Device mDevice;
+    private final Listener mListener;
+
+    private volatile long mTickMillis = 500;
+    private volatile long mSampleIntervalMillis = 8000;
+    private volatile long mDriftThresholdMillis = 1000;
+    /**
+     * 当前使用的取样间隔，出现偏差时缩短
+     */
+    private volatile long mCurrentIntervalMillis = mSampleIntervalMillis;
+    /**
+     * 早于该时间的取样不可用，需要重新取样
+     */
+    private volatile long mResyncNanos;
+    /**
+     * 取样失败后，该时间前不再取样
+     */
+    private volatile long mRetryNanos;
+    private volatile boolean mSampling;
+    private volatile boolean mStopped;
+    private volatile int mSampleCount;
+    private volatile int mDriftCount;
+
+    @Nullable
+    private ScheduledFuture<?> mTicker;
+    // 以下只在 tick 中访问
+    @Nullable
+    private TransportState mLastState;
+    private long mLastPosition = -1;
+    private long mLastDuration = -1;
+    private boolean mPublished;
+
+    PositionTracker(@NotNull DlnaClingController controller, @NotNull Device device, @NotNull Listener listener) {
+        this.mController = controller;
+        this.mDevice = device;
+        this.mListener = listener;
+        // 开始跟踪前的取样不一定可信，先取样一次
+        this.mResyncNanos = System.nanoTime();
+        this.mRetryNanos = mResyncNanos;
+    }
+
+    synchronized void start() {
+        if (mStopped) return;
+        if (mTicker != null) mTicker.cancel(false);
+        mTicker = DlnaScheduler.get().scheduleWithFixedDelay(this, 0, mTickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止回调和取样
+     */
+    public synchronized void stop() {
+        mStopped = true;
+        if (mTicker != null) mTicker.cancel(false);
+        mTicker = null;
+    }
+
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * 下一个 tick 重新取样
+     */
+    public void resync() {
+        mResyncNanos = System.nanoTime();
+    }
+
+    /**
+     * 回调间隔，默认 500ms，只在本地推算，不产生网络请求
+     */
+    public PositionTracker setTickInterval(long tickMillis) {
+        this.mTickMillis = Math.max(50, tickMillis);
+        synchronized (this) {
+            if (mTicker != null) start();
+        }
+        return this;
+    }
+
+    /**
+     * 正常情况下的取样间隔，默认 8s
+     */
+    public PositionTracker setSampleInterval(long sampleIntervalMillis) {
+        this.mSampleIntervalMillis = Math.max(MIN_SAMPLE_INTERVAL_MILLIS, sampleIntervalMillis);
+        this.mCurrentIntervalMillis = mSampleIntervalMillis;
+        return this;
+    }
+
+    /**
+     * 取样与推算相差超过该值时视为偏差(设备缓冲、倍速、外部 Seek 等)，默认 1s
+     */
+    public PositionTracker setDriftThreshold(long driftThresholdMillis) {
+        this.mDriftThresholdMillis = Math.max(0, driftThresholdMillis);
+        return this;
+    }
+
+    /**
+     * 已发出的取样请求数
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * 检测到偏差的次数
+     */
+    public int getDriftCount() {
+        return mDriftCount;
+    }
+
+    @NotNull
+    public Device getDevice() {
+        return mDevice;
+    }
+
+    @Override
+    public synchronized void run() {
+        if (mStopped) return;
+        RendererState state = mController.getStateCache().get(mDevice);
+        TransportState transportState = state.getTransportState();
+        if (transportState != mLastState) {
+            // 状态变化前的取样不再可用，除非之后已经重新取样
+            if (mPublished) mResyncNanos = later(mResyncNanos, state.getTransportStateNanos());
+            mLastState = transportState;
+        }
+        long position = state.estimatePositionMillis();
+        long duration = state.getDurationMillis();
+        if (transportState == TransportState.PLAYING && duration > 0 && position >= duration) {
+            // 到达片尾，设备可能已停止或切换下一首
+            mResyncNanos = later(mResyncNanos, state.getPositionNanos() + 1);
+        }
+        if (!mSampling && isSampleDue(state)) sample(state);
+
+        if (transportState == TransportState.PLAYING && position >= 0 && position < mLastPosition
+                && mLastPosition - position <= mDriftThresholdMillis && duration == mLastDuration) {
+            // 小幅回退(取样覆盖了推算)时保持不动，等推算追上，进度条不来回跳
+            position = mLastPosition;
+        }
+        if (mPublished && position == mLastPosition && duration == mLastDuration) return;
+        mPublished = true;
+        mLastPosition = position;
+        mLastDuration = duration;
+        try {
+            mListener.onPositionChanged(mDevice, position, duration, transportState);
+        } catch (RuntimeException e) {
+            log.warning("Position listener failed: " + e);
+        }
+    }
+
+    private boolean isSampleDue(RendererState state) {
+        if (System.nanoTime() - mRetryNanos < 0) return false;
+        long sampledNanos = state.getPositionNanos();
+        if (state.getPositionMillis() < 0 || sampledNanos - mResyncNanos < 0) return true;
+        // 有事件维持传输状态时，非播放状态下进度不变，不需要取样
+        if (state.isTransportEvented() && state.getTransportState() != TransportState.PLAYING) return false;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sampledNanos) >= mCurrentIntervalMillis;
+    }
+
+    /**
+     * nanoTime 可能溢出，按差值比较
+     */
+    private static long later(long a, long b) {
+        return a - b < 0 ? b : a;
+    }
+
+    private void sample(final RendererState state) {
+        mSampling = true;
+        mSampleCount++;
+        final long predicted = state.estimatePositionMillis();
+        final boolean playing = state.getTransportState() == TransportState.PLAYING;
+        final long sentNanos = System.nanoTime();
+        if (!state.isTransportEvented() && !state.isTransportStateFresh(mCurrentIntervalMillis)) {
+            mController.getTransportInfoAsync(mDevice);
+        }
+        mController.getPositionInfoAsync(mDevice).addListener(new ActionFuture.Listener<PositionInfo>() {
+            @Override
+            public void onComplete(ActionFuture<PositionInfo> future) {
+                mSampling = false;
+                long reported = future.isSuccess() ? DeviceStateCache.parseTimeMillis(future.getValue().getRelTime()) : -1;
+                if (reported < 0) {
+                    // 失败或设备不报告进度(直播等)时按正常间隔重试，避免被频繁查询
+                    mRetryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mSampleIntervalMillis);
+                    return;
+                }
+                if (predicted < 0 || !playing) {
+                    mCurrentIntervalMillis = mSampleIntervalMillis;
+                    return;
+                }
+                // 设备报告的进度大致对应请求往返的中点
+                long expected = predicted + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentNanos) / 2;
+                if (Math.abs(reported - expected) > mDriftThresholdMillis) {
+                    mDriftCount++;
+                    mCurrentIntervalMillis = Math.max(MIN_SAMPLE_INTERVAL_MILLIS, mSampleIntervalMillis / 4);
+                    log.fine("Position drift " + (reported - expected) + "ms on " + mDevice.getDisplayString());
+                } else {
+                    mCurrentIntervalMillis = mSampleIntervalMillis;
+                }
+            }
+        });
+    }
+}
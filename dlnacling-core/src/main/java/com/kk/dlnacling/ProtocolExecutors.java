@@ -0,0 +1,81 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.protocol.ReceivingAsync;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 投屏命令、SSDP 处理、描述获取各用独立的固定大小线程池，发现设备时大量的描述请求不会阻塞用户的投屏命令。
+ * 收发 socket 的常驻线程、registry 监听等仍使用 cling 默认的线程池
+ */
+public final class ProtocolExecutors {
+
+    private final InstrumentedExecutor controlExecutor =
+            InstrumentedExecutor.prioritized("dlna-control", 8, Thread.NORM_PRIORITY);
+    private final InstrumentedExecutor descriptorExecutor =
+            InstrumentedExecutor.bounded("dlna-descriptor", 2, 32, Thread.MIN_PRIORITY, null);
+    private final InstrumentedExecutor discoveryExecutor;
+    private final Executor asyncExecutor = new Executor() {
+        @Override
+        public void execute(@NotNull Runnable command) {
+            if (command instanceof RetrieveRemoteDescriptors) descriptorExecutor.execute(command);
+            else discoveryExecutor.execute(command);
+        }
+    };
+
+    /**
+     * @param fallback cling 默认的线程池，SSDP 队列满时执行不能丢弃的任务
+     */
+    public ProtocolExecutors(@NotNull final Executor fallback) {
+        discoveryExecutor = InstrumentedExecutor.bounded("dlna-discovery", 3, 64, Thread.NORM_PRIORITY - 1, new Executor() {
+            @Override
+            public void execute(@NotNull Runnable command) {
+                // 收到的 SSDP 消息设备会重发，可以丢弃；发送搜索/广播等其他任务不丢
+                if (!(command instanceof ReceivingAsync)) fallback.execute(command);
+            }
+        });
+    }
+
+    /**
+     * 投屏命令和事件订阅，命令优先
+     */
+    @NotNull
+    public ExecutorService getSyncProtocolExecutorService() {
+        return controlExecutor;
+    }
+
+    /**
+     * SSDP 处理与描述获取
+     */
+    @NotNull
+    public Executor getAsyncProtocolExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * 各线程池的排队、耗时统计
+     */
+    @NotNull
+    public List<InstrumentedExecutor> getExecutors() {
+        return Arrays.asList(controlExecutor, discoveryExecutor, descriptorExecutor);
+    }
+
+    public void shutdown() {
+        controlExecutor.shutdownNow();
+        discoveryExecutor.shutdownNow();
+        descriptorExecutor.shutdownNow();
+    }
+
+    /**
+     * 使用这些线程池的 UpnpServiceConfiguration
+     */
+    public interface Provider {
+        @NotNull
+        ProtocolExecutors getProtocolExecutors();
+    }
+}
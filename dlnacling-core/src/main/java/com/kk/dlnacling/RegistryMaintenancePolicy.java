@@ -0,0 +1,298 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.gena.GENASubscription;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 按需维护 registry：代替 cling 固定间隔（Android 端 BrowserUpnpService 中为 7 秒）的维护线程，
+ * 只在最早的设备过期、本机设备重新广播、事件订阅续订时间点唤醒。
+ * <p>
+ * 开启空闲模式后，没有投屏会话和事件订阅时完全停止维护：离线的设备不会从列表中移除，本机设备不会重新广播
+ */
+public class RegistryMaintenancePolicy {
+
+    private static final Logger log = Logger.getLogger(RegistryMaintenancePolicy.class.getName());
+
+    /**
+     * cling 判断过期与本端计算的时间点有误差，晚一点唤醒保证维护时确实已到期
+     */
+    private static final long GRACE_MILLIS = 1000;
+
+    @Nullable
+    private static final Method MAINTAIN = findMaintain();
+
+    private final UpnpService mUpnpService;
+    private final Map<String, Deadline> mDeadlines = new HashMap<>();
+    private final DefaultRegistryListener mRegistryListener = new DefaultRegistryListener() {
+        @Override
+        public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+            remoteDeviceSeen(device);
+        }
+
+        @Override
+        public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+            remoteDeviceSeen(device);
+        }
+
+        @Override
+        public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
+            removeDeadline("remote/" + device.getIdentity().getUdn());
+        }
+
+        @Override
+        public void localDeviceAdded(Registry registry, LocalDevice device) {
+            Integer maxAge = device.getIdentity().getMaxAgeSeconds();
+            // 本机设备在有效期过半时重新广播
+            if (maxAge != null && maxAge > 0) {
+                putDeadline("local/" + device.getIdentity().getUdn(), maxAge * 500L, true);
+            }
+        }
+
+        @Override
+        public void localDeviceRemoved(Registry registry, LocalDevice device) {
+            removeDeadline("local/" + device.getIdentity().getUdn());
+        }
+    };
+
+    private long mMinIntervalMillis = 1000;
+    private long mMaxIntervalMillis = 60 * 1000L;
+    private boolean mIdleMode;
+    private boolean mSessionActive;
+    private boolean mAttached;
+    private boolean mOnDemand;
+    private long mNextTickMillis = Long.MAX_VALUE;
+    @Nullable
+    private ScheduledFuture<?> mNextTick;
+    private volatile int mMaintenanceCount;
+
+    public RegistryMaintenancePolicy(@NotNull UpnpService upnpService) {
+        this.mUpnpService = upnpService;
+    }
+
+    /**
+     * 两次维护的最小、最大间隔，默认 1 秒、60 秒。最大间隔兜底未经本类登记的订阅的续订
+     */
+    public synchronized void setInterval(long minMillis, long maxMillis) {
+        this.mMinIntervalMillis = Math.max(100, minMillis);
+        this.mMaxIntervalMillis = Math.max(mMinIntervalMillis, maxMillis);
+        rescheduleLocked();
+    }
+
+    /**
+     * 空闲模式：没有投屏会话时停止维护，默认关闭。有事件订阅时照常维护，否则订阅会因没有续订而过期
+     *
+     * @see #setSessionActive(boolean)
+     */
+    public synchronized void setIdleMode(boolean idleMode) {
+        this.mIdleMode = idleMode;
+        rescheduleLocked();
+    }
+
+    /**
+     * 是否有进行中的投屏会话，如选中了设备
+     */
+    public synchronized void setSessionActive(boolean sessionActive) {
+        if (this.mSessionActive == sessionActive) return;
+        this.mSessionActive = sessionActive;
+        // 从空闲恢复时立即维护一次，清理空闲期间过期的设备
+        if (sessionActive && mIdleMode) scheduleTickLocked(0);
+        else rescheduleLocked();
+    }
+
+    /**
+     * 已执行的维护次数
+     */
+    public int getMaintenanceCount() {
+        return mMaintenanceCount;
+    }
+
+    /**
+     * 暂停 cling 的维护线程，改由本类调度
+     */
+    public synchronized void attach() {
+        if (mAttached) return;
+        mAttached = true;
+        Registry registry = mUpnpService.getRegistry();
+        mOnDemand = MAINTAIN != null && registry instanceof RegistryImpl;
+        registry.addListener(mRegistryListener);
+        long now = System.currentTimeMillis();
+        for (RemoteDevice device : registry.getRemoteDevices()) remoteDeviceSeenLocked(device, now);
+        for (LocalDevice device : registry.getLocalDevices()) mRegistryListener.localDeviceAdded(registry, device);
+        if (mOnDemand) {
+            registry.pause();
+            scheduleTickLocked(0);
+        } else {
+            log.warning("Registry maintenance not accessible, keep fixed interval");
+            rescheduleLocked();
+        }
+    }
+
+    /**
+     * 恢复 cling 的固定间隔维护
+     */
+    public synchronized void detach() {
+        if (!mAttached) return;
+        mAttached = false;
+        mUpnpService.getRegistry().removeListener(mRegistryListener);
+        cancelTickLocked();
+        mDeadlines.clear();
+        if (mUpnpService.getRegistry().isPaused()) mUpnpService.getRegistry().resume();
+    }
+
+    /**
+     * 订阅建立后登记续订时间，cling 在有效期过半时续订
+     */
+    public void subscriptionEstablished(@NotNull GENASubscription subscription) {
+        int seconds = subscription.getActualDurationSeconds();
+        if (seconds > 0) putDeadline("subscription/" + subscription.getSubscriptionId(), seconds * 500L, true);
+    }
+
+    public synchronized void subscriptionEnded(@NotNull GENASubscription subscription) {
+        mDeadlines.remove("subscription/" + subscription.getSubscriptionId());
+        // 最后一个订阅结束后可能进入空闲
+        if (mIdleMode) rescheduleLocked();
+    }
+
+    private void remoteDeviceSeen(RemoteDevice device) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            remoteDeviceSeenLocked(device, now);
+        }
+    }
+
+    private void remoteDeviceSeenLocked(RemoteDevice device, long now) {
+        Integer maxAge = device.getIdentity().getMaxAgeSeconds();
+        if (maxAge == null || maxAge <= 0) return;
+        mDeadlines.put("remote/" + device.getIdentity().getUdn(), new Deadline(now + maxAge * 1000L, 0));
+        if (now + maxAge * 1000L + GRACE_MILLIS < mNextTickMillis) rescheduleLocked();
+    }
+
+    private synchronized void putDeadline(String key, long periodMillis, boolean periodic) {
+        long at = System.currentTimeMillis() + periodMillis;
+        mDeadlines.put(key, new Deadline(at, periodic ? periodMillis : 0));
+        if (at + GRACE_MILLIS < mNextTickMillis) rescheduleLocked();
+    }
+
+    private synchronized void removeDeadline(String key) {
+        mDeadlines.remove(key);
+    }
+
+    private boolean idleLocked() {
+        return mIdleMode && !mSessionActive && !hasSubscriptionsLocked();
+    }
+
+    private boolean hasSubscriptionsLocked() {
+        for (String key : mDeadlines.keySet()) {
+            if (key.startsWith("subscription/")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 按当前最早的时间点重新安排下一次维护
+     */
+    private void rescheduleLocked() {
+        if (!mAttached) return;
+        Registry registry = mUpnpService.getRegistry();
+        if (!mOnDemand) {
+            // 无法按需维护时，空闲模式退化为暂停/恢复 cling 的维护线程
+            if (idleLocked() && !registry.isPaused()) registry.pause();
+            else if (!idleLocked() && registry.isPaused()) registry.resume();
+            return;
+        }
+        if (idleLocked()) {
+            cancelTickLocked();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long next = now + mMaxIntervalMillis;
+        for (Deadline deadline : mDeadlines.values()) next = Math.min(next, deadline.at + GRACE_MILLIS);
+        scheduleTickLocked(Math.max(mMinIntervalMillis, next - now));
+    }
+
+    private void scheduleTickLocked(long delayMillis) {
+        if (!mAttached || !mOnDemand) return;
+        cancelTickLocked();
+        mNextTickMillis = System.currentTimeMillis() + delayMillis;
+        mNextTick = DlnaScheduler.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                // 维护中会同步执行待续订的请求，放到 cling 的维护线程池
+                mUpnpService.getConfiguration().getRegistryMaintainerExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                });
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTickLocked() {
+        if (mNextTick != null) mNextTick.cancel(false);
+        mNextTick = null;
+        mNextTickMillis = Long.MAX_VALUE;
+    }
+
+    private void tick() {
+        synchronized (this) {
+            if (!mAttached || idleLocked()) return;
+        }
+        try {
+            //noinspection ConstantConditions
+            MAINTAIN.invoke(mUpnpService.getRegistry());
+            mMaintenanceCount++;
+        } catch (Exception e) {
+            log.warning("Registry maintenance failed: " + e);
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Deadline> iterator = mDeadlines.values().iterator();
+            while (iterator.hasNext()) {
+                Deadline deadline = iterator.next();
+                if (deadline.at > now) continue;
+                // 到期的设备已被移除；周期性的广播、续订从本次维护开始重新计时
+                if (deadline.periodMillis <= 0) iterator.remove();
+                else deadline.at = now + deadline.periodMillis;
+            }
+            mNextTickMillis = Long.MAX_VALUE;
+            rescheduleLocked();
+        }
+    }
+
+    @Nullable
+    private static Method findMaintain() {
+        try {
+            Method method = RegistryImpl.class.getDeclaredMethod("maintain");
+            method.setAccessible(true);
+            return method;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final class Deadline {
+        long at;
+        final long periodMillis;
+
+        Deadline(long at, long periodMillis) {
+            this.at = at;
+            this.periodMillis = periodMillis;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.support.model.Protocol;
+import org.fourthline.cling.support.model.ProtocolInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * 接收设备能播放的格式，来自 ConnectionManager GetProtocolInfo 的 Sink 列表
+ *
+ * @see CapabilityCache
+ */
+public final class RendererCapabilities {
+
+    private static final Logger log = Logger.getLogger(RendererCapabilities.class.getName());
+
+    /**
+     * 不支持
+     */
+    public static final int UNSUPPORTED = 0;
+    /**
+     * 设备声明了通配格式(*、video/*)，或片源格式未知，可能支持
+     */
+    public static final int WILDCARD = 1;
+    /**
+     * MIME 类型一致
+     */
+    public static final int MIME_TYPE = 2;
+    /**
+     * MIME 类型和 DLNA.ORG_PN 都一致
+     */
+    public static final int DLNA_PROFILE = 3;
+
+    private final List<ProtocolInfo> sink;
+    private final long fetchedAt;
+
+    RendererCapabilities(@NotNull List<ProtocolInfo> sink, long fetchedAt) {
+        this.sink = Collections.unmodifiableList(sink);
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * 解析逗号分隔的 protocolInfo 列表，跳过格式错误的项，部分设备的列表中会有不合规范的条目
+     */
+    @NotNull
+    static RendererCapabilities parse(@Nullable String sink) {
+        List<ProtocolInfo> infos = new ArrayList<>();
+        if (sink != null) {
+            for (String item : sink.split(",")) {
+                item = item.trim();
+                if (item.length() == 0) continue;
+                try {
+                    infos.add(new ProtocolInfo(item));
+                } catch (RuntimeException e) {
+                    log.fine("Skip invalid sink protocolInfo: " + item);
+                }
+            }
+        }
+        return new RendererCapabilities(infos, System.currentTimeMillis());
+    }
+
+    @NotNull
+    public List<ProtocolInfo> getSinkProtocolInfo() {
+        return sink;
+    }
+
+    /**
+     * 查询完成的时间
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * 设备没有声明任何格式，不能据此判断是否支持
+     */
+    public boolean isEmpty() {
+        return sink.isEmpty();
+    }
+
+    /**
+     * 片源与设备格式的匹配程度
+     *
+     * @return {@link #UNSUPPORTED}、{@link #WILDCARD}、{@link #MIME_TYPE}、{@link #DLNA_PROFILE}
+     */
+    public int score(@NotNull MediaMetadata media) {
+        if (sink.isEmpty()) return WILDCARD;
+        String mimeType = mimeTypeOf(media);
+        if (mimeType == null) return WILDCARD;
+        String profile = media.getDlnaProfile();
+        int best = UNSUPPORTED;
+        for (ProtocolInfo info : sink) {
+            Protocol protocol = info.getProtocol();
+            if (protocol != Protocol.ALL && protocol != Protocol.HTTP_GET) continue;
+            int score = matchMimeType(info.getContentFormat(), mimeType);
+            if (score == MIME_TYPE && profile != null && profile.equals(profileOf(info.getAdditionalInfo()))) {
+                return DLNA_PROFILE;
+            }
+            best = Math.max(best, score);
+        }
+        return best;
+    }
+
+    public boolean supports(@NotNull MediaMetadata media) {
+        return score(media) != UNSUPPORTED;
+    }
+
+    /**
+     * 从多个片源中选出设备支持的一个：匹配程度最高的，相同时取靠前的
+     *
+     * @param variants 同一内容的不同格式，按优先级排列
+     * @return 都不支持时为 null
+     */
+    @Nullable
+    public MediaMetadata select(@NotNull List<MediaMetadata> variants) {
+        MediaMetadata selected = null;
+        int best = UNSUPPORTED;
+        for (MediaMetadata media : variants) {
+            int score = score(media);
+            if (score > best) {
+                best = score;
+                selected = media;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 片源的 MIME 类型，未设置时按地址的扩展名推断
+     */
+    @Nullable
+    static String mimeTypeOf(@NotNull MediaMetadata media) {
+        String mimeType = media.getMimeType();
+        if (mimeType != null) return mimeType;
+        String url = media.getUrl();
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        return MediaSniffer.mimeTypeForName(url.substring(url.lastIndexOf('/', end - 1) + 1, end));
+    }
+
+    private static int matchMimeType(@Nullable String contentFormat, String mimeType) {
+        if (contentFormat == null) return UNSUPPORTED;
+        String format = baseType(contentFormat);
+        if (format.equals(ProtocolInfo.WILDCARD) || format.equals("*/*")) return WILDCARD;
+        String type = baseType(mimeType);
+        if (format.equals(type)) return MIME_TYPE;
+        if (format.endsWith("/*") && type.startsWith(format.substring(0, format.length() - 1))) return WILDCARD;
+        return UNSUPPORTED;
+    }
+
+    /**
+     * 去掉参数(如 ;codecs=...)并转小写
+     */
+    private static String baseType(String mimeType) {
+        int semicolon = mimeType.indexOf(';');
+        String type = semicolon >= 0 ? mimeType.substring(0, semicolon) : mimeType;
+        return type.trim().toLowerCase(Locale.US);
+    }
+
+    @Nullable
+    private static String profileOf(@Nullable String additionalInfo) {
+        if (additionalInfo == null) return null;
+        for (String param : additionalInfo.split(";")) {
+            if (param.startsWith("DLNA.ORG_PN=")) return param.substring("DLNA.ORG_PN=".length());
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "RendererCapabilities{" + sink.size() + " formats, fetchedAt=" + fetchedAt + '}';
+    }
+}
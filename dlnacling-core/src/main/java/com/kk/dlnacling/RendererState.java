@@ -0,0 +1,165 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.support.model.TransportState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本端记录的设备状态：传输状态、音量、进度，来自 GENA 事件、轮询以及本端发出的命令。
+ * 每项都记录更新时间，由订阅事件维持的值始终视为最新
+ *
+ * @see DeviceStateCache
+ */
+public class RendererState {
+
+    @Nullable
+    private volatile TransportState transportState;
+    private volatile long transportStateNanos;
+    private volatile boolean transportEvented;
+
+    private volatile int volume = -1;
+    private volatile long volumeNanos;
+    private volatile boolean volumeEvented;
+
+    private volatile long positionMillis = -1;
+    private volatile long durationMillis = -1;
+    private volatile long positionNanos;
+    private volatile boolean absTimeSeek;
+
+    @Nullable
+    public TransportState getTransportState() {
+        return transportState;
+    }
+
+    void setTransportState(@Nullable TransportState transportState) {
+        this.transportState = transportState;
+        this.transportStateNanos = System.nanoTime();
+    }
+
+    /**
+     * 传输状态是否可信：有订阅事件维持，或在 maxAgeMillis 内更新过
+     */
+    public boolean isTransportStateFresh(long maxAgeMillis) {
+        return transportState != null && (transportEvented || ageMillis(transportStateNanos) <= maxAgeMillis);
+    }
+
+    boolean isTransportEvented() {
+        return transportEvented;
+    }
+
+    void setTransportEvented(boolean transportEvented) {
+        this.transportEvented = transportEvented;
+    }
+
+    /**
+     * 音量，未知时为 -1
+     */
+    public int getVolume() {
+        return volume;
+    }
+
+    void setVolume(int volume) {
+        this.volume = volume;
+        this.volumeNanos = System.nanoTime();
+    }
+
+    void invalidateVolume() {
+        this.volume = -1;
+    }
+
+    public boolean isVolumeFresh(long maxAgeMillis) {
+        return volume >= 0 && (volumeEvented || ageMillis(volumeNanos) <= maxAgeMillis);
+    }
+
+    boolean isVolumeEvented() {
+        return volumeEvented;
+    }
+
+    void setVolumeEvented(boolean volumeEvented) {
+        this.volumeEvented = volumeEvented;
+    }
+
+    /**
+     * 最近一次取样的进度，未知时为 -1
+     */
+    public long getPositionMillis() {
+        return positionMillis;
+    }
+
+    /**
+     * 时长，未知时为 -1，0 表示设备报告不支持进度（直播等）
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    void setPosition(long positionMillis, long durationMillis) {
+        this.positionMillis = positionMillis;
+        this.durationMillis = durationMillis;
+        this.positionNanos = System.nanoTime();
+    }
+
+    void setPositionMillis(long positionMillis) {
+        this.positionMillis = positionMillis;
+        this.positionNanos = System.nanoTime();
+    }
+
+    void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * 进度的取样时间，System.nanoTime()
+     */
+    long getPositionNanos() {
+        return positionNanos;
+    }
+
+    long getTransportStateNanos() {
+        return transportStateNanos;
+    }
+
+    public boolean isPositionFresh(long maxAgeMillis) {
+        return positionMillis >= 0 && ageMillis(positionNanos) <= maxAgeMillis;
+    }
+
+    /**
+     * 按取样后经过的时间推算当前进度，仅在播放状态下前进，不超过时长
+     */
+    public long estimatePositionMillis() {
+        long position = positionMillis;
+        if (position < 0) return -1;
+        if (transportState == TransportState.PLAYING) {
+            position += ageMillis(positionNanos);
+            long duration = durationMillis;
+            if (duration > 0) position = Math.min(position, duration);
+        }
+        return position;
+    }
+
+    /**
+     * 设备拒绝过 REL_TIME 的 Seek，只使用 ABS_TIME
+     */
+    boolean isAbsTimeSeek() {
+        return absTimeSeek;
+    }
+
+    void setAbsTimeSeek(boolean absTimeSeek) {
+        this.absTimeSeek = absTimeSeek;
+    }
+
+    private static long ageMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "RendererState{" +
+                "transportState=" + transportState +
+                ", volume=" + volume +
+                ", position=" + positionMillis +
+                ", duration=" + durationMillis +
+                '}';
+    }
+}
@@ -0,0 +1,133 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Seek 的目标。按时间的目标发送前限制在 [0, 时长) 内，时长未知时只限制不小于 0
+ *
+ * @see DlnaClingController#seekAsync(org.fourthline.cling.model.meta.Device, SeekTarget)
+ */
+public final class SeekTarget {
+
+    static final String REL_TIME = "REL_TIME";
+    static final String ABS_TIME = "ABS_TIME";
+    static final String REL_COUNT = "REL_COUNT";
+    static final String DLNA_REL_BYTE = "X_DLNA_REL_BYTE";
+
+    enum Kind {
+        /**
+         * 曲目内的时间点
+         */
+        POSITION,
+        /**
+         * 相对当前进度
+         */
+        OFFSET,
+        /**
+         * 时长的百分比
+         */
+        PERCENT,
+        /**
+         * 计数或字节，不换算
+         */
+        COUNT
+    }
+
+    private final Kind kind;
+    private final String unit;
+    private final long value;
+    private final double percent;
+
+    private SeekTarget(Kind kind, String unit, long value, double percent) {
+        this.kind = kind;
+        this.unit = unit;
+        this.value = value;
+        this.percent = percent;
+    }
+
+    /**
+     * 跳转到曲目内的时间点(REL_TIME)，设备只支持 ABS_TIME 时自动改用 ABS_TIME
+     */
+    @NotNull
+    public static SeekTarget position(long millis) {
+        return new SeekTarget(Kind.POSITION, REL_TIME, millis, 0);
+    }
+
+    /**
+     * 从当前进度前进(正)或后退(负)
+     */
+    @NotNull
+    public static SeekTarget offset(long deltaMillis) {
+        return new SeekTarget(Kind.OFFSET, REL_TIME, deltaMillis, 0);
+    }
+
+    /**
+     * 跳转到时长的百分比，0~100，时长未知时先查询
+     */
+    @NotNull
+    public static SeekTarget percent(double percent) {
+        return new SeekTarget(Kind.PERCENT, REL_TIME, 0, Math.max(0, Math.min(100, percent)));
+    }
+
+    /**
+     * 跳转到整个媒体内的时间点(ABS_TIME)，单曲目时与 {@link #position(long)} 相同
+     */
+    @NotNull
+    public static SeekTarget absTime(long millis) {
+        return new SeekTarget(Kind.POSITION, ABS_TIME, millis, 0);
+    }
+
+    /**
+     * 按计数跳转(REL_COUNT)，计数的含义由设备决定，通常为字节
+     */
+    @NotNull
+    public static SeekTarget relCount(long count) {
+        return new SeekTarget(Kind.COUNT, REL_COUNT, count, 0);
+    }
+
+    /**
+     * 按字节偏移跳转(X_DLNA_REL_BYTE)，用于不支持时间定位的片源
+     */
+    @NotNull
+    public static SeekTarget bytes(long offset) {
+        return new SeekTarget(Kind.COUNT, DLNA_REL_BYTE, offset, 0);
+    }
+
+    @NotNull
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Seek 的 Unit 参数
+     */
+    @NotNull
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * 时间点、偏移(毫秒)或计数
+     */
+    public long getValue() {
+        return value;
+    }
+
+    public double getPercent() {
+        return percent;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case OFFSET:
+                return "SeekTarget{" + (value < 0 ? "" : "+") + TimeCode.formatWithFraction(value) + '}';
+            case PERCENT:
+                return "SeekTarget{" + percent + "%}";
+            case COUNT:
+                return "SeekTarget{" + unit + ' ' + value + '}';
+            default:
+                return "SeekTarget{" + unit + ' ' + TimeCode.formatWithFraction(value) + '}';
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.binding.staging.MutableAction;
+import org.fourthline.cling.binding.staging.MutableService;
+import org.fourthline.cling.binding.staging.MutableStateVariable;
+import org.fourthline.cling.model.types.ServiceType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已解析的服务描述(SCPD)，按 (服务类型, 版本, 内容摘要) 缓存。
+ * <p>
+ * 同型号的设备反复上线时描述内容不变，命中后直接用缓存的 action/stateVariable 构建服务，不再解析 XML。
+ * 缓存的列表构建后只读，每次 build 都会生成新的 Action/StateVariable，可以在多个设备间共用
+ */
+public final class ServiceDescriptorCache {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile ServiceDescriptorCache sInstance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+        }
+    };
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private int capacity = DEFAULT_CAPACITY;
+
+    private ServiceDescriptorCache() {
+    }
+
+    @NotNull
+    public static ServiceDescriptorCache get() {
+        if (sInstance == null) {
+            synchronized (ServiceDescriptorCache.class) {
+                if (sInstance == null) sInstance = new ServiceDescriptorCache();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 最多缓存的描述数，默认 64
+     */
+    public void setCapacity(int capacity) {
+        synchronized (entries) {
+            this.capacity = Math.max(0, capacity);
+            if (entries.size() > this.capacity) entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @param descriptorXml 已 trim 的描述
+     * @return 缓存的键，服务类型未知时为 null，此时不缓存
+     */
+    @Nullable
+    static String key(@Nullable ServiceType serviceType, @NotNull String descriptorXml) {
+        if (serviceType == null) return null;
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(descriptorXml.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(96);
+        builder.append(serviceType.getNamespace()).append(':').append(serviceType.getType())
+                .append(':').append(serviceType.getVersion()).append('#');
+        for (byte b : digest) builder.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        return builder.toString();
+    }
+
+    /**
+     * 命中时把缓存的 action/stateVariable 填入 descriptor
+     *
+     * @return 是否命中
+     */
+    boolean apply(@Nullable String key, @NotNull MutableService descriptor) {
+        Entry entry = null;
+        if (key != null) {
+            synchronized (entries) {
+                entry = entries.get(key);
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return false;
+        }
+        hitCount.incrementAndGet();
+        descriptor.actions = entry.actions;
+        descriptor.stateVariables = entry.stateVariables;
+        return true;
+    }
+
+    /**
+     * 解析并构建成功后调用，之后不能再修改 descriptor 的列表
+     */
+    void put(@Nullable String key, @NotNull MutableService descriptor) {
+        if (key == null) return;
+        Entry entry = new Entry(descriptor.actions, descriptor.stateVariables);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private static final class Entry {
+        final List<MutableAction> actions;
+        final List<MutableStateVariable> stateVariables;
+
+        Entry(List<MutableAction> actions, List<MutableStateVariable> stateVariables) {
+            this.actions = actions;
+            this.stateVariables = stateVariables;
+        }
+    }
+}
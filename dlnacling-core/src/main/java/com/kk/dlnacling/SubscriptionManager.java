@@ -0,0 +1,443 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.controlpoint.ControlPoint;
+import org.fourthline.cling.controlpoint.SubscriptionCallback;
+import org.fourthline.cling.model.gena.CancelReason;
+import org.fourthline.cling.model.gena.GENASubscription;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.state.StateVariableValue;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDN;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 共享的 GENA 事件订阅：同一设备的同一服务只保持一个订阅，事件分发给所有监听。
+ * <p>
+ * 订阅在第一个监听加入时建立、最后一个监听取消时结束；续订由 {@link RegistryMaintenancePolicy}
+ * 在有效期过半时执行。订阅失败、续订失败(设备重启后不认识原来的 SID)时按退避间隔重新订阅，
+ * 设备下线后暂停，重新上线时立即重新订阅
+ * <pre>
+ * SubscriptionManager.Subscription subscription = controller.getSubscriptionManager()
+ *         .subscribe(device, new UDAServiceType("AVTransport"), new SubscriptionManager.EventListener() {
+ *             public void onEvent(Service service, Map&lt;String, StateVariableValue&gt; values) {
+ *                 ...
+ *             }
+ *         });
+ * ...
+ * subscription.cancel();
+ * </pre>
+ */
+public class SubscriptionManager {
+
+    private static final Logger log = Logger.getLogger(SubscriptionManager.class.getName());
+
+    private final DlnaClingController mController;
+    private final Map<Key, Channel> mChannels = new HashMap<>();
+
+    private volatile int mDurationSeconds = 1800;
+    private volatile long mMinRetryMillis = 1000;
+    private volatile long mMaxRetryMillis = 60 * 1000L;
+
+    SubscriptionManager(DlnaClingController controller) {
+        this.mController = controller;
+    }
+
+    /**
+     * 订阅设备的服务，已有订阅时直接加入
+     *
+     * @return 不再需要时调用 {@link Subscription#cancel()}；设备没有该服务时为 null
+     */
+    @Nullable
+    public Subscription subscribe(@NotNull Device device, @NotNull ServiceType serviceType, @NotNull EventListener listener) {
+        Service service = device.findService(serviceType);
+        if (service == null) return null;
+        Key key = new Key(device.getIdentity().getUdn(), serviceType);
+        Channel channel;
+        synchronized (this) {
+            channel = mChannels.get(key);
+            if (channel == null) {
+                channel = new Channel(key, service);
+                mChannels.put(key, channel);
+            }
+            channel.listeners.add(listener);
+        }
+        channel.start(listener);
+        return new Subscription(channel, listener);
+    }
+
+    /**
+     * 请求的订阅时长，默认 1800 秒，设备可能返回更短的时长
+     */
+    public void setDurationSeconds(int durationSeconds) {
+        this.mDurationSeconds = Math.max(60, durationSeconds);
+    }
+
+    /**
+     * 重新订阅的退避间隔，默认 1 秒起，每次失败翻倍，最长 60 秒
+     */
+    public void setRetryInterval(long minMillis, long maxMillis) {
+        this.mMinRetryMillis = Math.max(100, minMillis);
+        this.mMaxRetryMillis = Math.max(mMinRetryMillis, maxMillis);
+    }
+
+    /**
+     * 当前保持的订阅数(按设备、服务)
+     */
+    public synchronized int getSubscriptionCount() {
+        return mChannels.size();
+    }
+
+    /**
+     * 设备上线或重新上线：服务对象可能已更换，按新的描述立即重新订阅
+     */
+    void deviceAdded(@NotNull Device device) {
+        for (Channel channel : channelsOf(device)) {
+            Service service = device.findService(channel.key.serviceType);
+            if (service != null) channel.rebind(service);
+        }
+    }
+
+    /**
+     * 设备下线，暂停订阅和重试，监听保留
+     */
+    void deviceRemoved(@NotNull Device device) {
+        for (Channel channel : channelsOf(device)) channel.suspend();
+    }
+
+    private synchronized List<Channel> channelsOf(Device device) {
+        UDN udn = device.getIdentity().getUdn();
+        List<Channel> channels = new ArrayList<>();
+        for (Channel channel : mChannels.values()) {
+            if (channel.key.udn.equals(udn)) channels.add(channel);
+        }
+        return channels;
+    }
+
+    private void release(Channel channel, EventListener listener) {
+        synchronized (this) {
+            channel.listeners.remove(listener);
+            if (!channel.listeners.isEmpty() || mChannels.get(channel.key) != channel) return;
+            mChannels.remove(channel.key);
+        }
+        channel.close();
+    }
+
+    /**
+     * 事件监听，在 cling 的事件线程中回调
+     */
+    public abstract static class EventListener {
+
+        /**
+         * 收到事件，包括订阅建立后的初始事件
+         *
+         * @param values 本次事件中的状态变量，LastChange 只包含变化的部分
+         */
+        public abstract void onEvent(@NotNull Service service, @NotNull Map<String, StateVariableValue> values);
+
+        /**
+         * 订阅建立或失效。失效期间收不到事件，需要时自行轮询；加入已建立的订阅时立即回调一次
+         */
+        public void onSubscriptionChanged(@NotNull Service service, boolean active) {
+        }
+
+        /**
+         * 设备报告丢失了事件，状态可能已变化
+         */
+        public void onEventsMissed(@NotNull Service service, int count) {
+        }
+    }
+
+    /**
+     * 一个监听的订阅
+     */
+    public final class Subscription {
+        private final Channel channel;
+        private final EventListener listener;
+        private boolean cancelled;
+
+        Subscription(Channel channel, EventListener listener) {
+            this.channel = channel;
+            this.listener = listener;
+        }
+
+        /**
+         * 订阅当前是否有效
+         */
+        public boolean isActive() {
+            return !cancelled && channel.isActive();
+        }
+
+        public synchronized void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            release(channel, listener);
+        }
+    }
+
+    private final class Channel {
+        final Key key;
+        final List<EventListener> listeners = new CopyOnWriteArrayList<>();
+        Service service;
+        @Nullable
+        SubscriptionCallback callback;
+        @Nullable
+        GENASubscription subscription;
+        @Nullable
+        ScheduledFuture<?> retry;
+        long retryMillis;
+        boolean active;
+        boolean suspended;
+        boolean closed;
+
+        Channel(Key key, Service service) {
+            this.key = key;
+            this.service = service;
+        }
+
+        synchronized boolean isActive() {
+            return active;
+        }
+
+        /**
+         * 第一个监听加入时订阅，已建立时通知新监听
+         */
+        void start(EventListener listener) {
+            boolean notify;
+            Service current;
+            synchronized (this) {
+                if (callback == null && retry == null && !suspended) subscribeLocked();
+                notify = active;
+                current = service;
+            }
+            if (notify) listener.onSubscriptionChanged(current, true);
+        }
+
+        void rebind(Service service) {
+            Runnable ending;
+            synchronized (this) {
+                if (closed) return;
+                this.service = service;
+                suspended = false;
+                retryMillis = 0;
+                ending = detachLocked();
+                subscribeLocked();
+            }
+            ending.run();
+        }
+
+        void suspend() {
+            boolean wasActive;
+            Runnable ending;
+            synchronized (this) {
+                suspended = true;
+                wasActive = active;
+                ending = detachLocked();
+            }
+            ending.run();
+            if (wasActive) notifyActive(false);
+        }
+
+        void close() {
+            Runnable ending;
+            synchronized (this) {
+                closed = true;
+                ending = detachLocked();
+            }
+            ending.run();
+        }
+
+        private void subscribeLocked() {
+            ControlPoint controlPoint = mController.getControlPoint();
+            if (controlPoint == null || closed) return;
+            callback = new Callback(this, service);
+            // 异步执行，不在此处获取回调的锁
+            controlPoint.execute(callback);
+        }
+
+        /**
+         * 摘下当前订阅并取消重试，不通知监听。
+         * <p>
+         * 返回的结束操作必须在释放本对象的锁之后执行：cling 持有回调的锁调用 established、eventReceived
+         * 等方法，这些方法会获取本对象的锁，持锁调用 {@link SubscriptionCallback#end()} 会反向加锁而死锁
+         */
+        @NotNull
+        private Runnable detachLocked() {
+            if (retry != null) retry.cancel(false);
+            retry = null;
+            final SubscriptionCallback ending = callback;
+            final GENASubscription ended = subscription;
+            callback = null;
+            subscription = null;
+            active = false;
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (ended != null) mController.onSubscriptionEnded(ended);
+                    if (ending != null) ending.end();
+                }
+            };
+        }
+
+        void onEstablished(SubscriptionCallback source, GENASubscription established) {
+            synchronized (this) {
+                if (source != callback) return;
+                subscription = established;
+                active = true;
+                retryMillis = 0;
+            }
+            mController.onSubscriptionEstablished(established);
+            boolean detached;
+            synchronized (this) {
+                detached = subscription != established;
+            }
+            if (detached) {
+                // 登记续订期间已被摘下，撤销登记
+                mController.onSubscriptionEnded(established);
+                return;
+            }
+            notifyActive(true);
+        }
+
+        /**
+         * 订阅失败或结束：设备在线且仍有监听时退避后重新订阅
+         */
+        void onLost(SubscriptionCallback source, @Nullable GENASubscription lost, String reason) {
+            if (lost != null) mController.onSubscriptionEnded(lost);
+            boolean wasActive;
+            synchronized (this) {
+                if (source != callback) return;
+                callback = null;
+                subscription = null;
+                wasActive = active;
+                active = false;
+                if (!closed && !suspended) scheduleRetryLocked(reason);
+            }
+            if (wasActive) notifyActive(false);
+        }
+
+        private void scheduleRetryLocked(String reason) {
+            retryMillis = retryMillis == 0 ? mMinRetryMillis : Math.min(mMaxRetryMillis, retryMillis * 2);
+            log.fine("Resubscribe " + key + " in " + retryMillis + "ms: " + reason);
+            retry = DlnaScheduler.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Channel.this) {
+                        retry = null;
+                        if (!closed && !suspended && callback == null) subscribeLocked();
+                    }
+                }
+            }, retryMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void onEvent(SubscriptionCallback source, GENASubscription subscription) {
+            Service current;
+            synchronized (this) {
+                if (source != callback) return;
+                current = service;
+            }
+            Map<String, StateVariableValue> values = subscription.getCurrentValues();
+            if (values == null) values = Collections.emptyMap();
+            for (EventListener listener : listeners) {
+                try {
+                    listener.onEvent(current, values);
+                } catch (RuntimeException e) {
+                    log.warning("Event listener failed: " + e);
+                }
+            }
+        }
+
+        void onEventsMissed(SubscriptionCallback source, int count) {
+            Service current;
+            synchronized (this) {
+                if (source != callback) return;
+                current = service;
+            }
+            for (EventListener listener : listeners) listener.onEventsMissed(current, count);
+        }
+
+        private void notifyActive(boolean value) {
+            Service current;
+            synchronized (this) {
+                current = service;
+            }
+            for (EventListener listener : listeners) listener.onSubscriptionChanged(current, value);
+        }
+    }
+
+    private final class Callback extends SubscriptionCallback {
+        private final Channel channel;
+
+        Callback(Channel channel, Service service) {
+            super(service, mDurationSeconds);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void established(GENASubscription subscription) {
+            log.fine("Subscription established: " + subscription);
+            channel.onEstablished(this, subscription);
+        }
+
+        @Override
+        protected void failed(GENASubscription subscription, UpnpResponse responseStatus, Exception exception, String defaultMsg) {
+            channel.onLost(this, subscription, defaultMsg);
+        }
+
+        @Override
+        protected void ended(GENASubscription subscription, CancelReason reason, UpnpResponse responseStatus) {
+            // 主动结束时 channel 已不再指向本回调，不会重新订阅
+            channel.onLost(this, subscription, String.valueOf(reason));
+        }
+
+        @Override
+        protected void eventReceived(GENASubscription subscription) {
+            channel.onEvent(this, subscription);
+        }
+
+        @Override
+        protected void eventsMissed(GENASubscription subscription, int numberOfMissedEvents) {
+            channel.onEventsMissed(this, numberOfMissedEvents);
+        }
+    }
+
+    private static final class Key {
+        final UDN udn;
+        final ServiceType serviceType;
+
+        Key(UDN udn, ServiceType serviceType) {
+            this.udn = udn;
+            this.serviceType = serviceType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return udn.equals(key.udn) && serviceType.equals(key.serviceType);
+        }
+
+        @Override
+        public int hashCode() {
+            return udn.hashCode() * 31 + serviceType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return udn + "/" + serviceType.getType();
+        }
+    }
+}
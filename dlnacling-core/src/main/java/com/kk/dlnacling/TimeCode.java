@@ -0,0 +1,181 @@
+package com.kk.dlnacling;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * UPnP AV 的时间格式 [+|-]H+:MM:SS[.F+] 或 [+|-]H+:MM:SS[.F0/F1]，与毫秒互转。
+ * <p>
+ * 解析直接遍历字符，不创建中间对象，小时数不限(超过 24 小时的直播录像等)，可以在进度回调中频繁调用
+ */
+public final class TimeCode {
+
+    /**
+     * 无法解析，或设备返回 NOT_IMPLEMENTED
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private TimeCode() {
+    }
+
+    /**
+     * @return 毫秒，可能为负；格式错误时为 {@link #UNKNOWN}
+     */
+    public static long parseMillis(@Nullable CharSequence text) {
+        if (text == null) return UNKNOWN;
+        int end = text.length();
+        int i = 0;
+        while (i < end && text.charAt(i) == ' ') i++;
+        while (end > i && text.charAt(end - 1) == ' ') end--;
+        if (i == end) return UNKNOWN;
+
+        boolean negative = false;
+        char sign = text.charAt(i);
+        if (sign == '+' || sign == '-') {
+            negative = sign == '-';
+            i++;
+        }
+        // H+
+        long hours = 0;
+        int start = i;
+        while (i < end && isDigit(text.charAt(i))) {
+            hours = hours * 10 + (text.charAt(i++) - '0');
+            if (hours > Integer.MAX_VALUE) return UNKNOWN;
+        }
+        if (i == start || i >= end || text.charAt(i++) != ':') return UNKNOWN;
+        // MM、SS 各两位，部分设备只返回一位
+        int minutes = parseSexagesimal(text, i, end);
+        if (minutes < 0) return UNKNOWN;
+        i += minutes >>> 16;
+        if (i >= end || text.charAt(i++) != ':') return UNKNOWN;
+        int seconds = parseSexagesimal(text, i, end);
+        if (seconds < 0) return UNKNOWN;
+        i += seconds >>> 16;
+
+        long millis = ((hours * 60 + (minutes & 0xFFFF)) * 60 + (seconds & 0xFFFF)) * 1000;
+        if (i < end) {
+            if (text.charAt(i++) != '.') return UNKNOWN;
+            long fraction = parseFraction(text, i, end);
+            if (fraction < 0) return UNKNOWN;
+            millis += fraction;
+        }
+        return negative ? -millis : millis;
+    }
+
+    /**
+     * 只接受非负值，用于进度和时长
+     *
+     * @return 毫秒，格式错误或为负时为 -1
+     */
+    public static long parsePositionMillis(@Nullable CharSequence text) {
+        long millis = parseMillis(text);
+        return millis < 0 ? -1 : millis;
+    }
+
+    /**
+     * 一到两位数字，0~59
+     *
+     * @return 低 16 位为值，高 16 位为读取的字符数；格式错误时为 -1
+     */
+    private static int parseSexagesimal(CharSequence text, int i, int end) {
+        if (i >= end || !isDigit(text.charAt(i))) return -1;
+        int value = text.charAt(i) - '0';
+        int length = 1;
+        if (i + 1 < end && isDigit(text.charAt(i + 1))) {
+            value = value * 10 + (text.charAt(i + 1) - '0');
+            length = 2;
+        }
+        if (value > 59) return -1;
+        return length << 16 | value;
+    }
+
+    /**
+     * F+ 或 F0/F1(F0 &lt; F1)，转换为毫秒，超过毫秒精度的部分舍去
+     */
+    private static long parseFraction(CharSequence text, int i, int end) {
+        int slash = -1;
+        for (int j = i; j < end; j++) {
+            if (text.charAt(j) == '/') {
+                slash = j;
+                break;
+            }
+        }
+        if (slash < 0) {
+            if (i == end) return -1;
+            long millis = 0;
+            int scale = 100;
+            for (int j = i; j < end; j++) {
+                char c = text.charAt(j);
+                if (!isDigit(c)) return -1;
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+            return millis;
+        }
+        long numerator = parseDigits(text, i, slash);
+        long denominator = parseDigits(text, slash + 1, end);
+        if (numerator < 0 || denominator <= 0 || numerator >= denominator) return -1;
+        return numerator * 1000 / denominator;
+    }
+
+    private static long parseDigits(CharSequence text, int i, int end) {
+        if (i >= end || end - i > 9) return -1;
+        long value = 0;
+        for (int j = i; j < end; j++) {
+            char c = text.charAt(j);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * H+:MM:SS，不足一秒的部分舍去。Seek 的目标使用该格式，部分设备不接受小数
+     */
+    @NotNull
+    public static String format(long millis) {
+        return append(new StringBuilder(12), millis, false).toString();
+    }
+
+    /**
+     * H+:MM:SS.FFF，用于 res@duration 等需要精确值的地方
+     */
+    @NotNull
+    public static String formatWithFraction(long millis) {
+        return append(new StringBuilder(16), millis, true).toString();
+    }
+
+    /**
+     * 追加到 builder，负值带 - 号
+     */
+    @NotNull
+    public static StringBuilder append(@NotNull StringBuilder builder, long millis, boolean fraction) {
+        if (millis < 0) {
+            builder.append('-');
+            // Long.MIN_VALUE 取反仍为负，按最大值处理
+            millis = millis == Long.MIN_VALUE ? Long.MAX_VALUE : -millis;
+        }
+        long seconds = millis / 1000;
+        builder.append(seconds / 3600).append(':');
+        appendTwoDigits(builder, seconds / 60 % 60);
+        builder.append(':');
+        appendTwoDigits(builder, seconds % 60);
+        if (fraction) {
+            long rest = millis % 1000;
+            builder.append('.');
+            if (rest < 100) builder.append('0');
+            if (rest < 10) builder.append('0');
+            builder.append(rest);
+        }
+        return builder;
+    }
+
+    private static void appendTwoDigits(StringBuilder builder, long value) {
+        if (value < 10) builder.append('0');
+        builder.append(value);
+    }
+}
@@ -0,0 +1,95 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.support.model.DIDLObject;
+import org.fourthline.cling.support.model.ProtocolInfo;
+import org.fourthline.cling.support.model.Res;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+public class UpnpUtil {
+
+    public static UDN uniqueSystemIdentifier(String salt) {
+        StringBuilder systemSalt = new StringBuilder();
+        systemSalt.append(deviceModel());
+        systemSalt.append(deviceManufacturer());
+
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(systemSalt.toString().getBytes());
+            return new UDN(new UUID(new BigInteger(-1, hash).longValue(), salt.hashCode()));
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Android 上为 Build.MODEL，JVM 上为主机名
+     */
+    public static String deviceModel() {
+        String model = androidBuildField("MODEL");
+        if (model != null) return model;
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "JVM";
+        }
+    }
+
+    /**
+     * Android 上为 Build.MANUFACTURER，JVM 上为 java.vendor
+     */
+    public static String deviceManufacturer() {
+        String manufacturer = androidBuildField("MANUFACTURER");
+        return manufacturer != null ? manufacturer : System.getProperty("java.vendor", "unknown");
+    }
+
+    /**
+     * 核心模块不依赖 Android，通过反射读取
+     */
+    private static String androidBuildField(String name) {
+        try {
+            Object value = Class.forName("android.os.Build").getField(name).get(null);
+            return value == null ? null : value.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static final int IMAGE_TYPE = 0;
+    public static final int VIDEO_TYPE = 1;
+    public static final int AUDIO_TYPE = 2;
+
+    /**
+     * @param duration 时长 H+:MM:SS，未知时为空
+     * @see MediaMetadata
+     */
+    public static String pushMediaToRender(String url, String id, String name, String duration, int ItemType) {
+        MediaMetadata media = new MediaMetadata(url, ItemType)
+                .setId(id)
+                .setTitle(name)
+                .setDurationMillis(DeviceStateCache.parseTimeMillis(duration));
+        return media.toDidl();
+    }
+
+    static String createItemMetadata(DIDLObject item) {
+        return createItemMetadata(item, System.currentTimeMillis());
+    }
+
+    static String createItemMetadata(DIDLObject item, long dateMillis) {
+        DidlWriter writer = DidlWriter.obtain()
+                .beginItem(item.getId(), item.getParentID(), item.isRestricted(), item.getTitle(), item.getCreator(),
+                        item.getClazz().getValue())
+                .date(dateMillis);
+        Res res = item.getFirstResource();
+        if (res != null) {
+            ProtocolInfo pi = res.getProtocolInfo();
+            // resolution, extra info, not adding yet
+            writer.res(pi == null ? null : DidlWriter.protocolInfo(pi), res.getResolution(), res.getDuration(), res.getValue());
+        }
+        return writer.endItem().finish();
+    }
+}
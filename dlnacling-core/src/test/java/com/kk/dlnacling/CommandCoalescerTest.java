@@ -0,0 +1,83 @@
+package com.kk.dlnacling;
+
+import com.kk.dlnacling.testing.StubMediaRenderer;
+import com.kk.dlnacling.testing.StubRendererHost;
+import com.kk.dlnacling.testing.StubRendererOptions;
+import com.kk.dlnacling.testing.StubSsdpResponder;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.meta.Device;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求完成后移除空闲队列
+ */
+public class CommandCoalescerTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private StubRendererHost host;
+    private StubMediaRenderer renderer;
+    private StubSsdpResponder responder;
+    private UpnpService controlPoint;
+
+    @Before
+    public void setUp() throws Exception {
+        host = new StubRendererHost();
+        renderer = host.addRenderer("Stub Renderer", new StubRendererOptions());
+        responder = new StubSsdpResponder(host);
+        responder.start();
+        controlPoint = responder.createControlPoint();
+    }
+
+    @After
+    public void tearDown() {
+        controlPoint.shutdown();
+        responder.shutdown();
+        host.shutdown();
+    }
+
+    @Test
+    public void removeIdleLane() throws Exception {
+        DlnaClingController controller = new DlnaClingController();
+        controller.initService(controlPoint, null);
+        controller.stopDiscovery();
+        Device device = host.connect(controlPoint, TIMEOUT_MILLIS).get(0);
+        CommandCoalescer coalescer = new CommandCoalescer(controller);
+        try {
+            int volume = renderer.getVolume();
+            coalescer.setVolume(device, 5).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(Math.min(100, volume + 5), renderer.getVolume());
+            assertEquals(0, coalescer.getLaneCount());
+
+            // 移除后再次调节使用新队列
+            coalescer.setVolume(device, -5).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(0, coalescer.getLaneCount());
+            assertEquals(2, coalescer.getRequestCount());
+        } finally {
+            controller.stopMaintenance();
+        }
+    }
+
+    @Test
+    public void removeLaneAfterLocalFailure() throws Exception {
+        // 未初始化投屏服务，查询基准值直接失败
+        CommandCoalescer coalescer = new CommandCoalescer(new DlnaClingController());
+        try {
+            coalescer.seek(renderer.getDevice(), 10).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Seek without service");
+        } catch (ExecutionException expected) {
+            // 投屏服务异常
+        }
+        assertEquals(0, coalescer.getLaneCount());
+        assertEquals(1, coalescer.getCommandCount());
+    }
+}
@@ -0,0 +1,67 @@
+package com.kk.dlnacling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceHealthTest {
+
+    private static final String PLAY = "Play";
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        DeviceHealth health = new DeviceHealth(new ActionPolicy().setFailureThreshold(2).setOpenMillis(60000, 60000));
+        assertTrue(health.tryAcquire());
+        health.onNoResponse(PLAY);
+        assertEquals(DeviceHealth.State.CLOSED, health.getState());
+        assertTrue(health.tryAcquire());
+        health.onNoResponse(PLAY);
+        assertEquals(DeviceHealth.State.OPEN, health.getState());
+        assertFalse(health.tryAcquire());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() {
+        DeviceHealth health = halfOpen();
+        assertTrue(health.tryAcquire());
+        assertFalse(health.tryAcquire());
+        health.onResponse(PLAY, 20);
+        assertEquals(DeviceHealth.State.CLOSED, health.getState());
+        assertTrue(health.tryAcquire());
+        assertTrue(health.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeReopens() {
+        DeviceHealth health = halfOpen();
+        assertTrue(health.tryAcquire());
+        health.onNoResponse(PLAY);
+        assertEquals(DeviceHealth.State.HALF_OPEN, health.getState());
+        assertEquals(3, health.getConsecutiveFailures());
+    }
+
+    @Test
+    public void localFailureReleasesProbe() {
+        DeviceHealth health = halfOpen();
+        assertTrue(health.tryAcquire());
+        // 探测请求因服务未连接等本地错误失败（PRECONDITION_FAILED），控制器按取消处理
+        health.onCancelled();
+        assertEquals(DeviceHealth.State.HALF_OPEN, health.getState());
+        assertEquals(2, health.getConsecutiveFailures());
+        assertTrue(health.tryAcquire());
+        assertFalse(health.tryAcquire());
+    }
+
+    /**
+     * 熔断时长为 0，熔断后立即进入半开
+     */
+    private static DeviceHealth halfOpen() {
+        DeviceHealth health = new DeviceHealth(new ActionPolicy().setFailureThreshold(2).setOpenMillis(0, 0));
+        health.onNoResponse(PLAY);
+        health.onNoResponse(PLAY);
+        assertEquals(DeviceHealth.State.HALF_OPEN, health.getState());
+        return health;
+    }
+}
@@ -0,0 +1,117 @@
+package com.kk.dlnacling;
+
+import org.fourthline.cling.support.model.DIDLObject;
+import org.fourthline.cling.support.model.ProtocolInfo;
+import org.fourthline.cling.support.model.Res;
+import org.fourthline.cling.support.model.item.AudioItem;
+import org.fourthline.cling.support.model.item.ImageItem;
+import org.fourthline.cling.support.model.item.VideoItem;
+import org.junit.Test;
+import org.seamless.util.MimeType;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link DidlWriter} 的输出与原先按 String.format 拼接的 createItemMetadata 逐字节一致
+ */
+public class DidlWriterTest {
+
+    private static final long DATE = 1600000000000L;
+    private static final String URL = "http://192.168.1.23:8192/media/video/3f9a2c.mp4";
+    private static final String CREATOR = "unknow";
+
+    @Test
+    public void imageItem() {
+        assertLegacy(new ImageItem("1", "0", "photo", CREATOR, res()));
+    }
+
+    @Test
+    public void videoItem() {
+        assertLegacy(new VideoItem("2", "0", "movie", CREATOR, res()));
+    }
+
+    @Test
+    public void audioItem() {
+        assertLegacy(new AudioItem("3", "0", "song", CREATOR, res()));
+    }
+
+    @Test
+    public void resolutionAndDuration() {
+        Res res = res();
+        res.setResolution("1920x1080");
+        res.setDuration("1:02:03.000");
+        assertLegacy(new VideoItem("4", "0", "movie", CREATOR, res));
+        res.setResolution("");
+        assertLegacy(new VideoItem("4", "0", "movie", CREATOR, res));
+    }
+
+    @Test
+    public void creator() {
+        assertLegacy(new AudioItem("5", "0", "song", "a<b>c", res()));
+        assertLegacy(new AudioItem("5", "0", "song", null, res()));
+    }
+
+    @Test
+    public void withoutResource() {
+        assertLegacy(new VideoItem("6", "0", "movie", CREATOR));
+    }
+
+    private static Res res() {
+        return new Res(new MimeType(ProtocolInfo.WILDCARD, ProtocolInfo.WILDCARD), 0L, URL);
+    }
+
+    private static void assertLegacy(DIDLObject item) {
+        assertEquals(legacyMetadata(item, new Date(DATE)), UpnpUtil.createItemMetadata(item, DATE));
+    }
+
+    /**
+     * 原先的 UpnpUtil.createItemMetadata，当前时间改为参数
+     */
+    private static String legacyMetadata(DIDLObject item, Date now) {
+        StringBuilder metadata = new StringBuilder();
+        metadata.append(DidlWriter.DIDL_LITE_HEADER);
+
+        metadata.append(String.format("<item id=\"%s\" parentID=\"%s\" restricted=\"%s\">", item.getId(), item.getParentID(), item.isRestricted() ? "1" : "0"));
+
+        metadata.append(String.format("<dc:title>%s</dc:title>", item.getTitle()));
+        String creator = item.getCreator();
+        if (creator != null) {
+            creator = creator.replaceAll("<", "_");
+            creator = creator.replaceAll(">", "_");
+        }
+        metadata.append(String.format("<upnp:artist>%s</upnp:artist>", creator));
+        metadata.append(String.format("<upnp:class>%s</upnp:class>", item.getClazz().getValue()));
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.getDefault());
+        String time = sdf.format(now);
+        metadata.append(String.format("<dc:date>%s</dc:date>", time));
+
+        Res res = item.getFirstResource();
+        if (res != null) {
+            String protocolinfo = "";
+            ProtocolInfo pi = res.getProtocolInfo();
+            if (pi != null) {
+                protocolinfo = String.format("protocolInfo=\"%s:%s:%s:%s\"", pi.getProtocol(), pi.getNetwork(), pi.getContentFormatMimeType(), pi
+                        .getAdditionalInfo());
+            }
+            String resolution = "";
+            if (res.getResolution() != null && res.getResolution().length() > 0) {
+                resolution = String.format("resolution=\"%s\"", res.getResolution());
+            }
+            String duration = "";
+            if (res.getDuration() != null && res.getDuration().length() > 0) {
+                duration = String.format("duration=\"%s\"", res.getDuration());
+            }
+            metadata.append(String.format("<res %s %s %s>", protocolinfo, resolution, duration));
+            metadata.append(res.getValue());
+            metadata.append("</res>");
+        }
+        metadata.append("</item>");
+        metadata.append(DidlWriter.DIDL_LITE_FOOTER);
+        return metadata.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.kk.dlnacling;
+
+import com.kk.dlnacling.testing.StubMediaRenderer;
+import com.kk.dlnacling.testing.StubRendererHost;
+import com.kk.dlnacling.testing.StubRendererOptions;
+import com.kk.dlnacling.testing.StubSsdpResponder;
+
+import org.fourthline.cling.UpnpService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通过回环地址上的 {@link StubSsdpResponder} 发现 {@link StubRendererHost} 中的渲染器
+ */
+public class DiscoverySchedulerTest {
+
+    private static final String MEDIA_RENDERER = "urn:schemas-upnp-org:device:MediaRenderer:1";
+    private static final String AV_TRANSPORT = "urn:schemas-upnp-org:service:AVTransport:1";
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private StubRendererHost host;
+    private StubMediaRenderer renderer;
+    private StubSsdpResponder responder;
+    private UpnpService controlPoint;
+    private DiscoveryScheduler scheduler;
+    private final CountDownLatch found = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        host = new StubRendererHost();
+        renderer = host.addRenderer("Stub Renderer", new StubRendererOptions());
+        responder = new StubSsdpResponder(host);
+        responder.start();
+        controlPoint = responder.createControlPoint();
+        scheduler = new DiscoveryScheduler(controlPoint);
+        // 每批 2 次，批间隔 200ms 起加倍，测试内能走完几批
+        scheduler.setBurst(2, 50);
+        scheduler.setInterval(200, 1000);
+        scheduler.setMxSeconds(1);
+        scheduler.setListener(new DiscoveryScheduler.Listener() {
+            @Override
+            public void onFirstRenderer(long elapsedMillis) {
+                found.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        controlPoint.shutdown();
+        responder.shutdown();
+        host.shutdown();
+    }
+
+    @Test
+    public void findRenderer() throws Exception {
+        scheduler.start();
+        assertTrue(found.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertNotNull(controlPoint.getRegistry().getRemoteDevice(renderer.getUdn(), true));
+        assertTrue(scheduler.getTimeToFirstRenderer() >= 0);
+        assertTrue(responder.getSearchTargets().contains(MEDIA_RENDERER));
+        assertTrue(responder.getSearchTargets().contains(AV_TRANSPORT));
+        assertEquals(1, responder.getLastMx());
+    }
+
+    @Test
+    public void retryLostSearches() throws Exception {
+        // 第一批 2 次 x 2 个目标全部丢失，靠下一批发现
+        responder.drop(4);
+        scheduler.start();
+        assertTrue(found.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(responder.getSearchCount() > 4);
+        assertTrue(scheduler.getSearchCount() >= responder.getSearchCount());
+    }
+
+    @Test
+    public void stopSearching() throws Exception {
+        responder.drop(Integer.MAX_VALUE);
+        scheduler.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (responder.getSearchCount() < 8) {
+            assertTrue("Second burst not sent", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        scheduler.stop();
+        // 等已交给 cling 的搜索发完
+        Thread.sleep(200);
+        int count = responder.getSearchCount();
+        Thread.sleep(1000);
+        assertEquals(count, responder.getSearchCount());
+        assertEquals(-1, scheduler.getTimeToFirstRenderer());
+    }
+}
@@ -0,0 +1,87 @@
+package com.kk.dlnacling;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalMediaServerTest {
+
+    private LocalMediaServer server;
+    private File file;
+    private MediaMetadata media;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalMediaServer();
+        file = File.createTempFile("movie", ".mp4");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{0, 0, 0, 16, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm', 0, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+        media = MediaMetadata.fromFile(file, "");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        file.delete();
+    }
+
+    @Test
+    public void randomIds() {
+        String path = server.register(file, media);
+        assertTrue(path, path.matches("/media/[0-9a-f]{32}/movie.*\\.mp4"));
+        assertEquals(path, server.register(file, media));
+        assertTrue(server.isRegistered(path));
+        assertFalse(server.isRegistered("/media/1/" + file.getName()));
+    }
+
+    @Test
+    public void unpublishInvalidatesPath() throws IOException {
+        String path = server.register(file, media);
+        String baseUrl = server.getBaseUrl(InetAddress.getLoopbackAddress());
+        assertEquals(200, status(baseUrl + path));
+
+        long generation = server.getGeneration();
+        server.unpublish(file);
+        assertFalse(server.isRegistered(path));
+        assertTrue(server.getGeneration() > generation);
+        assertEquals(404, status(baseUrl + path));
+
+        // 重新登记换用新 id，旧地址仍然无效
+        String republished = server.register(file, media);
+        assertNotEquals(path, republished);
+        assertTrue(server.isRegistered(republished));
+        assertEquals(200, status(baseUrl + republished));
+        assertEquals(404, status(baseUrl + path));
+
+        generation = server.getGeneration();
+        server.unpublishAll();
+        assertFalse(server.isRegistered(republished));
+        assertTrue(server.getGeneration() > generation);
+    }
+
+    private static int status(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("HEAD");
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
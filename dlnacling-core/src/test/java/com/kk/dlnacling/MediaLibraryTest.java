@@ -0,0 +1,164 @@
+package com.kk.dlnacling;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 三字母组搜索、分页和搜索条件解析
+ */
+public class MediaLibraryTest {
+
+    private static final byte[] MP4 = {0, 0, 0, 16, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm', 0, 0, 0, 0};
+    private static final byte[] MP3 = {'I', 'D', '3', 4, 0, 0, 0, 0, 0, 0};
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+            0, 0, 0, 13, 'I', 'H', 'D', 'R', 0, 0, 0, 16, 0, 0, 0, 16};
+
+    private File dir;
+    private MediaLibrary library;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("media", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        write("Star Wars.mp4", MP4);
+        write("Star Trek.mp4", MP4);
+        write("Startup Stories.mp4", MP4);
+        write("Wall-E.mp4", MP4);
+        write("Starlight.mp3", MP3);
+        write("stars.png", PNG);
+        write("notes.txt", "not media".getBytes("US-ASCII"));
+        library = new MediaLibrary();
+        assertEquals(6, library.scan(dir));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void containsUsesTrigrams() {
+        assertEquals(Arrays.asList("star trek", "star wars", "starlight", "stars", "startup stories"),
+                search(MediaLibrary.ROOT_ID, "dc:title contains \"star\""));
+        assertEquals(Arrays.asList("star trek", "star wars", "startup stories"),
+                search(MediaLibrary.VIDEO_CONTAINER_ID, "dc:title contains \"STAR\""));
+        assertEquals(Arrays.asList("star wars"), search(MediaLibrary.ROOT_ID, "dc:title contains \"wars\""));
+        // star wars 含有 sta、tar、ars 三组但不含 stars，逐项确认后排除
+        assertEquals(Arrays.asList("stars"), search(MediaLibrary.ROOT_ID, "dc:title contains \"stars\""));
+        assertEquals(new ArrayList<String>(), search(MediaLibrary.ROOT_ID, "dc:title contains \"xyz\""));
+        assertEquals(Arrays.asList("wall-e"), search(MediaLibrary.ROOT_ID, "dc:title = \"Wall-E\""));
+    }
+
+    @Test
+    public void shortQueryScansChildren() {
+        assertEquals(Arrays.asList("star trek", "star wars", "starlight", "stars", "startup stories"),
+                search(MediaLibrary.ROOT_ID, "dc:title contains \"st\""));
+        assertEquals(Arrays.asList("starlight", "stars"), search(MediaLibrary.ROOT_ID, "dc:title doesNotContain \" \" and dc:title contains \"s\""));
+    }
+
+    @Test
+    public void indexFollowsChanges() {
+        library.remove(new File(dir, "Star Wars.mp4"));
+        assertEquals(Arrays.asList("star trek", "startup stories"),
+                search(MediaLibrary.VIDEO_CONTAINER_ID, "dc:title contains \"star\""));
+        assertEquals(new ArrayList<String>(), search(MediaLibrary.ROOT_ID, "dc:title contains \"wars\""));
+        assertEquals(5, library.size());
+    }
+
+    @Test
+    public void browsePaging() {
+        int[] total = new int[1];
+        assertEquals(Arrays.asList("star trek", "star wars"), titles(library.children(MediaLibrary.VIDEO_CONTAINER_ID, 0, 2, total)));
+        assertEquals(4, total[0]);
+        assertEquals(Arrays.asList("startup stories", "wall-e"), titles(library.children(MediaLibrary.VIDEO_CONTAINER_ID, 2, 2, total)));
+        assertEquals(new ArrayList<String>(), titles(library.children(MediaLibrary.VIDEO_CONTAINER_ID, 4, 2, total)));
+        assertEquals(4, total[0]);
+        // RequestedCount 为 0 时返回 StartingIndex 之后的全部
+        assertEquals(Arrays.asList("star wars", "startup stories", "wall-e"), titles(library.children(MediaLibrary.VIDEO_CONTAINER_ID, 1, 0, total)));
+        assertEquals(1, library.getChildCount(MediaLibrary.AUDIO_CONTAINER_ID));
+        assertEquals(3, library.getChildCount(MediaLibrary.ROOT_ID));
+    }
+
+    @Test
+    public void searchPaging() {
+        int[] total = new int[1];
+        List<MediaLibrary.LibraryItem> page = library.search(MediaLibrary.ROOT_ID, "dc:title contains \"star\"", 3, 10, total);
+        assertEquals(Arrays.asList("stars", "startup stories"), titles(page));
+        assertEquals(5, total[0]);
+        page = library.search(MediaLibrary.ROOT_ID, "dc:title contains \"star\"", 1, 2, total);
+        assertEquals(Arrays.asList("star wars", "starlight"), titles(page));
+        assertEquals(5, total[0]);
+    }
+
+    @Test
+    public void parseCriteria() {
+        assertEquals(6, search(MediaLibrary.ROOT_ID, "*").size());
+        assertEquals(6, search(MediaLibrary.ROOT_ID, "  ").size());
+        assertEquals(Arrays.asList("starlight"),
+                search(MediaLibrary.ROOT_ID, "dc:title contains \"star\" and upnp:class derivedfrom \"object.item.audioItem\""));
+        assertEquals(Arrays.asList("star trek", "wall-e"),
+                search(MediaLibrary.ROOT_ID, "dc:title = \"wall-e\" or dc:title contains \"trek\""));
+        assertEquals(Arrays.asList("star trek", "star wars"),
+                search(MediaLibrary.ROOT_ID, "(dc:title contains \"wars\" or dc:title contains \"trek\") and upnp:class derivedfrom \"object.item.videoItem\""));
+        assertEquals(Arrays.asList("stars"), search(MediaLibrary.ROOT_ID, "upnp:class = \"object.item.imageItem\""));
+        assertEquals(5, search(MediaLibrary.ROOT_ID, "upnp:class != \"object.item.imageItem\"").size());
+        assertEquals(6, search(MediaLibrary.ROOT_ID, "dc:title exists true").size());
+        assertEquals(0, search(MediaLibrary.ROOT_ID, "dc:date exists true").size());
+        assertEquals(new ArrayList<String>(), search(MediaLibrary.ROOT_ID, "dc:title contains \"a\\\"b\""));
+    }
+
+    @Test
+    public void rejectInvalidCriteria() {
+        String[] invalid = {
+                "dc:title contains star",
+                "dc:title like \"star\"",
+                "(dc:title contains \"star\"",
+                "dc:title contains \"star",
+                "dc:title contains \"star\" trailing",
+                "dc:title",
+        };
+        for (String criteria : invalid) {
+            try {
+                library.search(MediaLibrary.ROOT_ID, criteria, 0, 0, new int[1]);
+                fail("Accepted " + criteria);
+            } catch (IllegalArgumentException expected) {
+                // 由 ContentDirectory 转为 UNSUPPORTED_SEARCH_CRITERIA
+            }
+        }
+    }
+
+    private List<String> search(String containerId, String criteria) {
+        return titles(library.search(containerId, criteria, 0, 0, new int[1]));
+    }
+
+    private static List<String> titles(List<MediaLibrary.LibraryItem> items) {
+        List<String> titles = new ArrayList<>(items.size());
+        for (MediaLibrary.LibraryItem item : items) titles.add(item.titleKey);
+        return titles;
+    }
+
+    private void write(String name, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+}
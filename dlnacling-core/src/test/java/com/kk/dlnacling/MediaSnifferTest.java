@@ -0,0 +1,38 @@
+package com.kk.dlnacling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MediaSnifferTest {
+
+    @Test
+    public void mpegAudioFrame() {
+        // MPEG-1 Layer III
+        assertEquals("audio/mpeg", MediaSniffer.mimeType(bytes(0xFF, 0xFB, 0x90, 0x64)));
+        // MPEG-2 Layer III
+        assertEquals("audio/mpeg", MediaSniffer.mimeType(bytes(0xFF, 0xF3, 0x90, 0x64)));
+        assertEquals("audio/mpeg", MediaSniffer.mimeType(bytes('I', 'D', '3', 4, 0)));
+    }
+
+    @Test
+    public void adtsIsNotMpegAudio() {
+        // MPEG-4 / MPEG-2 AAC ADTS，layer 为 00
+        assertEquals("audio/aac", MediaSniffer.mimeType(bytes(0xFF, 0xF1, 0x50, 0x80)));
+        assertEquals("audio/aac", MediaSniffer.mimeType(bytes(0xFF, 0xF9, 0x50, 0x80)));
+        assertEquals("audio/aac", MediaSniffer.mimeTypeForName("song.AAC"));
+    }
+
+    @Test
+    public void unknownHeader() {
+        assertNull(MediaSniffer.mimeType(bytes(0xFF)));
+        assertNull(MediaSniffer.mimeType(bytes('n', 'o', 'p', 'e')));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) bytes[i] = (byte) values[i];
+        return bytes;
+    }
+}
@@ -0,0 +1,58 @@
+package com.kk.dlnacling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SeekTargetTest {
+
+    private static final long DURATION = 60000;
+
+    @Test
+    public void clampToStart() {
+        assertEquals(0, DlnaClingController.clampSeekMillis(-5000, DURATION));
+        assertEquals(0, DlnaClingController.clampSeekMillis(-5000, -1));
+    }
+
+    @Test
+    public void clampBeforeEnd() {
+        assertEquals(30000, DlnaClingController.clampSeekMillis(30000, DURATION));
+        assertEquals(59000, DlnaClingController.clampSeekMillis(59000, DURATION));
+        assertEquals(59000, DlnaClingController.clampSeekMillis(DURATION, DURATION));
+        assertEquals(59000, DlnaClingController.clampSeekMillis(120000, DURATION));
+        // 时长不足结束余量时只能跳到开头
+        assertEquals(0, DlnaClingController.clampSeekMillis(500, 800));
+    }
+
+    @Test
+    public void unknownDurationNotClamped() {
+        assertEquals(7200000, DlnaClingController.clampSeekMillis(7200000, -1));
+    }
+
+    @Test
+    public void resolveOffset() {
+        assertEquals(15000, DlnaClingController.resolve(SeekTarget.offset(10000), 5000, DURATION));
+        assertEquals(0, DlnaClingController.clampSeekMillis(
+                DlnaClingController.resolve(SeekTarget.offset(-10000), 5000, DURATION), DURATION));
+        assertEquals(59000, DlnaClingController.clampSeekMillis(
+                DlnaClingController.resolve(SeekTarget.offset(10000), 55000, DURATION), DURATION));
+    }
+
+    @Test
+    public void resolvePercent() {
+        assertEquals(30000, DlnaClingController.resolve(SeekTarget.percent(50), 0, DURATION));
+        assertEquals(0, DlnaClingController.resolve(SeekTarget.percent(-10), 0, DURATION));
+        assertEquals(59000, DlnaClingController.clampSeekMillis(
+                DlnaClingController.resolve(SeekTarget.percent(150), 0, DURATION), DURATION));
+    }
+
+    @Test
+    public void units() {
+        assertEquals(SeekTarget.REL_TIME, SeekTarget.position(1000).getUnit());
+        assertEquals(SeekTarget.ABS_TIME, SeekTarget.absTime(1000).getUnit());
+        assertEquals(SeekTarget.REL_COUNT, SeekTarget.relCount(1024).getUnit());
+        assertEquals(SeekTarget.DLNA_REL_BYTE, SeekTarget.bytes(1024).getUnit());
+        assertEquals("SeekTarget{+0:00:10.000}", SeekTarget.offset(10000).toString());
+        assertEquals("SeekTarget{-0:00:10.000}", SeekTarget.offset(-10000).toString());
+    }
+}
@@ -0,0 +1,90 @@
+package com.kk.dlnacling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeCodeTest {
+
+    @Test
+    public void parseBasic() {
+        assertEquals(0, TimeCode.parseMillis("0:00:00"));
+        assertEquals(3723000, TimeCode.parseMillis("1:02:03"));
+        assertEquals(3723000, TimeCode.parseMillis("01:02:03"));
+        assertEquals(5000, TimeCode.parseMillis(" 0:00:05 "));
+    }
+
+    @Test
+    public void parseHoursBeyondOneDay() {
+        assertEquals(100 * 3600 * 1000L, TimeCode.parseMillis("100:00:00"));
+        assertEquals((25 * 3600 + 59 * 60 + 59) * 1000L, TimeCode.parseMillis("25:59:59"));
+    }
+
+    @Test
+    public void parseSingleDigitMinutesAndSeconds() {
+        assertEquals(62000, TimeCode.parseMillis("0:1:2"));
+        assertEquals(3605000, TimeCode.parseMillis("1:00:5"));
+    }
+
+    @Test
+    public void parseDecimalFraction() {
+        assertEquals(1500, TimeCode.parseMillis("0:00:01.5"));
+        assertEquals(1250, TimeCode.parseMillis("0:00:01.25"));
+        assertEquals(1007, TimeCode.parseMillis("0:00:01.007"));
+        // 超过毫秒的精度舍去
+        assertEquals(1123, TimeCode.parseMillis("0:00:01.123456"));
+    }
+
+    @Test
+    public void parseRatioFraction() {
+        assertEquals(1250, TimeCode.parseMillis("0:00:01.1/4"));
+        assertEquals(1333, TimeCode.parseMillis("0:00:01.1/3"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:01.4/4"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:01.1/0"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:01./4"));
+    }
+
+    @Test
+    public void parseSign() {
+        assertEquals(5000, TimeCode.parseMillis("+0:00:05"));
+        assertEquals(-5000, TimeCode.parseMillis("-0:00:05"));
+        assertEquals(-1, TimeCode.parsePositionMillis("-0:00:05"));
+        assertEquals(5000, TimeCode.parsePositionMillis("+0:00:05"));
+    }
+
+    @Test
+    public void parseInvalid() {
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis(null));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis(""));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("NOT_IMPLEMENTED"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis(":00:00"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:60:00"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:60"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:00."));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:00:00x"));
+        assertEquals(TimeCode.UNKNOWN, TimeCode.parseMillis("0:000:00"));
+        assertEquals(-1, TimeCode.parsePositionMillis("NOT_IMPLEMENTED"));
+    }
+
+    @Test
+    public void format() {
+        assertEquals("0:00:00", TimeCode.format(0));
+        assertEquals("1:02:03", TimeCode.format(3723456));
+        assertEquals("100:00:00", TimeCode.format(100 * 3600 * 1000L));
+        assertEquals("-0:00:05", TimeCode.format(-5000));
+        assertEquals("1:02:03.456", TimeCode.formatWithFraction(3723456));
+        assertEquals("0:00:00.005", TimeCode.formatWithFraction(5));
+        assertEquals("0:00:00.050", TimeCode.formatWithFraction(50));
+    }
+
+    @Test
+    public void roundTrip() {
+        long[] values = {0, 1, 999, 1000, 59999, 60000, 3599999, 3600000, 86399999, 86400000, 100 * 3600 * 1000L + 1};
+        for (long millis : values) {
+            assertEquals(millis, TimeCode.parseMillis(TimeCode.formatWithFraction(millis)));
+            assertEquals(-millis, TimeCode.parseMillis(TimeCode.formatWithFraction(-millis)));
+            assertEquals(millis - millis % 1000, TimeCode.parseMillis(TimeCode.format(millis)));
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.kk.dlnacling.testing;
+
+import com.kk.dlnacling.TimeCode;
+
+import org.fourthline.cling.binding.annotations.AnnotationLocalServiceBinder;
+import org.fourthline.cling.model.DefaultServiceManager;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.DeviceIdentity;
+import org.fourthline.cling.model.meta.Icon;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.meta.ManufacturerDetails;
+import org.fourthline.cling.model.meta.ModelDetails;
+import org.fourthline.cling.model.types.ErrorCode;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.model.types.UnsignedIntegerFourBytes;
+import org.fourthline.cling.model.types.UnsignedIntegerTwoBytes;
+import org.fourthline.cling.support.avtransport.AVTransportException;
+import org.fourthline.cling.support.avtransport.AbstractAVTransportService;
+import org.fourthline.cling.support.avtransport.lastchange.AVTransportLastChangeParser;
+import org.fourthline.cling.support.avtransport.lastchange.AVTransportVariable;
+import org.fourthline.cling.support.connectionmanager.ConnectionManagerService;
+import org.fourthline.cling.support.lastchange.LastChangeAwareServiceManager;
+import org.fourthline.cling.support.model.Channel;
+import org.fourthline.cling.support.model.DeviceCapabilities;
+import org.fourthline.cling.support.model.MediaInfo;
+import org.fourthline.cling.support.model.PositionInfo;
+import org.fourthline.cling.support.model.ProtocolInfos;
+import org.fourthline.cling.support.model.SeekMode;
+import org.fourthline.cling.support.model.StorageMedium;
+import org.fourthline.cling.support.model.TransportAction;
+import org.fourthline.cling.support.model.TransportInfo;
+import org.fourthline.cling.support.model.TransportSettings;
+import org.fourthline.cling.support.model.TransportState;
+import org.fourthline.cling.support.model.TransportStatus;
+import org.fourthline.cling.support.renderingcontrol.AbstractAudioRenderingControl;
+import org.fourthline.cling.support.renderingcontrol.RenderingControlException;
+import org.fourthline.cling.support.renderingcontrol.lastchange.ChannelVolume;
+import org.fourthline.cling.support.renderingcontrol.lastchange.RenderingControlLastChangeParser;
+import org.fourthline.cling.support.renderingcontrol.lastchange.RenderingControlVariable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟的 MediaRenderer，实现 AVTransport、RenderingControl、ConnectionManager，与 {@link com.kk.dlnacling.SwitchPower} 一样使用注解绑定。
+ * 命令按 {@link StubRendererOptions} 延迟、随机失败，用于没有电视时的压测和延迟测试，一般由 {@link StubRendererHost} 批量托管
+ */
+public final class StubMediaRenderer {
+
+    /**
+     * 任何片源都按 1 小时处理
+     */
+    private static final long DURATION_MILLIS = 60 * 60 * 1000L;
+    private static final String NOT_IMPLEMENTED = "NOT_IMPLEMENTED";
+    private static final UnsignedIntegerFourBytes INSTANCE_ID = new UnsignedIntegerFourBytes(0);
+    private static final ProtocolInfos SINK_PROTOCOL_INFO = new ProtocolInfos(
+            "http-get:*:video/mp4:*,http-get:*:video/x-matroska:*,http-get:*:application/vnd.apple.mpegurl:*," +
+                    "http-get:*:audio/mpeg:*,http-get:*:audio/mp4:*,http-get:*:image/jpeg:*,http-get:*:image/png:*");
+
+    private final StubRendererOptions options;
+    private final LocalDevice device;
+    private final Transport transport = new Transport();
+    private final Volume volume = new Volume();
+    private final LastChangeAwareServiceManager<Transport> transportManager;
+    private final LastChangeAwareServiceManager<Volume> volumeManager;
+    private final Random random = new Random();
+    private final AtomicLong actionCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private String uri = "";
+    private String metadata = "";
+    private TransportState transportState = TransportState.NO_MEDIA_PRESENT;
+    private long transitionEnd;
+    private long positionMillis;
+    private long playingSince = -1;
+    private int volumeLevel = 50;
+    private boolean mute;
+
+    public StubMediaRenderer(@NotNull String friendlyName, @NotNull StubRendererOptions options) throws ValidationException {
+        this.options = options;
+        AnnotationLocalServiceBinder binder = new AnnotationLocalServiceBinder();
+
+        LocalService<Transport> transportService = binder.read(Transport.class);
+        transportManager = new LastChangeAwareServiceManager<Transport>(transportService, new AVTransportLastChangeParser()) {
+            @Override
+            protected Transport createServiceImplementation() {
+                return transport;
+            }
+        };
+        transportService.setManager(transportManager);
+
+        LocalService<Volume> volumeService = binder.read(Volume.class);
+        volumeManager = new LastChangeAwareServiceManager<Volume>(volumeService, new RenderingControlLastChangeParser()) {
+            @Override
+            protected Volume createServiceImplementation() {
+                return volume;
+            }
+        };
+        volumeService.setManager(volumeManager);
+
+        LocalService<ConnectionManagerService> connectionManager = binder.read(ConnectionManagerService.class);
+        connectionManager.setManager(new DefaultServiceManager<ConnectionManagerService>(connectionManager, null) {
+            @Override
+            protected ConnectionManagerService createServiceImplementation() {
+                return new ConnectionManagerService(null, SINK_PROTOCOL_INFO);
+            }
+        });
+
+        device = new LocalDevice(new DeviceIdentity(new UDN(UUID.randomUUID())), new UDADeviceType("MediaRenderer", 1),
+                new DeviceDetails(friendlyName, new ManufacturerDetails("DlnaCling"), new ModelDetails("StubMediaRenderer")),
+                (Icon) null, new LocalService[]{transportService, volumeService, connectionManager});
+    }
+
+    @NotNull
+    public LocalDevice getDevice() {
+        return device;
+    }
+
+    @NotNull
+    public UDN getUdn() {
+        return device.getIdentity().getUdn();
+    }
+
+    @NotNull
+    public StubRendererOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 收到的命令数，包括失败的
+     */
+    public long getActionCount() {
+        return actionCount.get();
+    }
+
+    /**
+     * 按失败率模拟失败的命令数，不包括兼容性问题导致的错误
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @NotNull
+    public synchronized TransportState getTransportState() {
+        return currentState();
+    }
+
+    @NotNull
+    public synchronized String getUri() {
+        return uri;
+    }
+
+    public synchronized int getVolume() {
+        return volumeLevel;
+    }
+
+    /**
+     * 发送积累的 LastChange 事件，由 {@link StubRendererHost} 定时调用
+     */
+    public void fireLastChange() {
+        if (options.hasQuirk(StubRendererOptions.Quirk.NO_EVENTS)) return;
+        synchronized (this) {
+            // 过渡状态到期后也要通知
+            currentState();
+        }
+        transportManager.fireLastChange();
+        volumeManager.fireLastChange();
+    }
+
+    /**
+     * 模拟处理耗时
+     *
+     * @return 本次命令是否应按失败率失败
+     */
+    private boolean simulateAction() {
+        actionCount.incrementAndGet();
+        long delay = options.getLatencyMillis();
+        if (options.getJitterMillis() > 0) delay += (long) (random.nextDouble() * options.getJitterMillis());
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (options.getFailureRate() > 0 && random.nextDouble() < options.getFailureRate()) {
+            failureCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 当前状态，TRANSITIONING 到期后转为 PLAYING
+     */
+    private TransportState currentState() {
+        if (transportState == TransportState.TRANSITIONING && System.currentTimeMillis() >= transitionEnd) {
+            setState(TransportState.PLAYING);
+        }
+        return transportState;
+    }
+
+    private void setState(TransportState state) {
+        long now = System.currentTimeMillis();
+        if (transportState == TransportState.PLAYING) positionMillis = positionAt(now);
+        playingSince = state == TransportState.PLAYING ? now : -1;
+        if (state == TransportState.STOPPED || state == TransportState.NO_MEDIA_PRESENT) positionMillis = 0;
+        transportState = state;
+        transport.getLastChange().setEventedValue(INSTANCE_ID, new AVTransportVariable.TransportState(state));
+    }
+
+    private long positionAt(long now) {
+        long position = positionMillis + (playingSince >= 0 ? now - playingSince : 0);
+        return Math.min(position, DURATION_MILLIS);
+    }
+
+    private TransportAction[] currentTransportActions() {
+        switch (currentState()) {
+            case PLAYING:
+                return new TransportAction[]{TransportAction.Stop, TransportAction.Pause, TransportAction.Seek};
+            case PAUSED_PLAYBACK:
+                return new TransportAction[]{TransportAction.Stop, TransportAction.Play, TransportAction.Seek};
+            case STOPPED:
+                return new TransportAction[]{TransportAction.Play, TransportAction.Seek};
+            default:
+                return new TransportAction[0];
+        }
+    }
+
+    public class Transport extends AbstractAVTransportService {
+
+        private void simulate() throws AVTransportException {
+            if (simulateAction()) throw new AVTransportException(ErrorCode.ACTION_FAILED, "Simulated failure");
+        }
+
+        @Override
+        public UnsignedIntegerFourBytes[] getCurrentInstanceIds() {
+            return new UnsignedIntegerFourBytes[]{INSTANCE_ID};
+        }
+
+        @Override
+        public void setAVTransportURI(UnsignedIntegerFourBytes instanceId, String currentURI, String currentURIMetaData)
+                throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                if (options.hasQuirk(StubRendererOptions.Quirk.REJECT_METADATA)
+                        && currentURIMetaData != null && currentURIMetaData.length() > 0) {
+                    throw new AVTransportException(714, "Illegal MIME-type");
+                }
+                if (options.hasQuirk(StubRendererOptions.Quirk.STOP_BEFORE_URI) && currentState() == TransportState.PLAYING) {
+                    throw new AVTransportException(705, "Transport is locked");
+                }
+                uri = currentURI == null ? "" : currentURI;
+                metadata = currentURIMetaData == null ? "" : currentURIMetaData;
+                setState(TransportState.STOPPED);
+            }
+        }
+
+        @Override
+        public void setNextAVTransportURI(UnsignedIntegerFourBytes instanceId, String nextURI, String nextURIMetaData)
+                throws AVTransportException {
+            simulate();
+        }
+
+        @Override
+        public MediaInfo getMediaInfo(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                return new MediaInfo(uri, metadata);
+            }
+        }
+
+        @Override
+        public TransportInfo getTransportInfo(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                return new TransportInfo(currentState(), TransportStatus.OK, "1");
+            }
+        }
+
+        @Override
+        public PositionInfo getPositionInfo(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                if (options.hasQuirk(StubRendererOptions.Quirk.NO_POSITION_INFO) || uri.length() == 0) {
+                    return new PositionInfo(0, NOT_IMPLEMENTED, metadata, uri, NOT_IMPLEMENTED, NOT_IMPLEMENTED,
+                            Integer.MAX_VALUE, Integer.MAX_VALUE);
+                }
+                currentState();
+                String position = TimeCode.format(positionAt(System.currentTimeMillis()));
+                return new PositionInfo(1, TimeCode.format(DURATION_MILLIS), metadata, uri, position, position,
+                        Integer.MAX_VALUE, Integer.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public DeviceCapabilities getDeviceCapabilities(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            return new DeviceCapabilities(new StorageMedium[]{StorageMedium.NETWORK});
+        }
+
+        @Override
+        public TransportSettings getTransportSettings(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            return new TransportSettings();
+        }
+
+        @Override
+        public void stop(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                if (uri.length() > 0) setState(TransportState.STOPPED);
+            }
+        }
+
+        @Override
+        public void play(UnsignedIntegerFourBytes instanceId, String speed) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                if (uri.length() == 0) throw new AVTransportException(701, "Transition not available");
+                if (currentState() == TransportState.PLAYING) return;
+                if (options.getTransitionMillis() > 0) {
+                    transitionEnd = System.currentTimeMillis() + options.getTransitionMillis();
+                    setState(TransportState.TRANSITIONING);
+                } else {
+                    setState(TransportState.PLAYING);
+                }
+            }
+        }
+
+        @Override
+        public void pause(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                if (currentState() != TransportState.PLAYING) throw new AVTransportException(701, "Transition not available");
+                setState(TransportState.PAUSED_PLAYBACK);
+            }
+        }
+
+        @Override
+        public void record(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            throw new AVTransportException(ErrorCode.OPTIONAL_ACTION, "Record not supported");
+        }
+
+        @Override
+        public void seek(UnsignedIntegerFourBytes instanceId, String unit, String target) throws AVTransportException {
+            simulate();
+            SeekMode mode;
+            try {
+                mode = SeekMode.valueOrExceptionOf(unit);
+            } catch (IllegalArgumentException e) {
+                mode = null;
+            }
+            if (mode != SeekMode.ABS_TIME && (mode != SeekMode.REL_TIME
+                    || options.hasQuirk(StubRendererOptions.Quirk.ABS_TIME_SEEK_ONLY))) {
+                throw new AVTransportException(710, "Seek mode not supported");
+            }
+            long millis = TimeCode.parseMillis(target);
+            if (millis < 0 || millis > DURATION_MILLIS) throw new AVTransportException(711, "Illegal seek target");
+            synchronized (StubMediaRenderer.this) {
+                if (uri.length() == 0) throw new AVTransportException(701, "Transition not available");
+                long now = System.currentTimeMillis();
+                positionMillis = millis;
+                if (playingSince >= 0) playingSince = now;
+            }
+        }
+
+        @Override
+        public void next(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            throw new AVTransportException(701, "Transition not available");
+        }
+
+        @Override
+        public void previous(UnsignedIntegerFourBytes instanceId) throws AVTransportException {
+            simulate();
+            throw new AVTransportException(701, "Transition not available");
+        }
+
+        @Override
+        public void setPlayMode(UnsignedIntegerFourBytes instanceId, String newPlayMode) throws AVTransportException {
+            simulate();
+        }
+
+        @Override
+        public void setRecordQualityMode(UnsignedIntegerFourBytes instanceId, String newRecordQualityMode)
+                throws AVTransportException {
+            simulate();
+        }
+
+        @Override
+        protected TransportAction[] getCurrentTransportActions(UnsignedIntegerFourBytes instanceId) throws Exception {
+            synchronized (StubMediaRenderer.this) {
+                return currentTransportActions();
+            }
+        }
+    }
+
+    public class Volume extends AbstractAudioRenderingControl {
+
+        private void simulate() throws RenderingControlException {
+            if (simulateAction()) throw new RenderingControlException(ErrorCode.ACTION_FAILED, "Simulated failure");
+        }
+
+        @Override
+        public UnsignedIntegerFourBytes[] getCurrentInstanceIds() {
+            return new UnsignedIntegerFourBytes[]{INSTANCE_ID};
+        }
+
+        @Override
+        protected Channel[] getCurrentChannels() {
+            return new Channel[]{Channel.Master};
+        }
+
+        @Override
+        public boolean getMute(UnsignedIntegerFourBytes instanceId, String channelName) throws RenderingControlException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                return mute;
+            }
+        }
+
+        @Override
+        public void setMute(UnsignedIntegerFourBytes instanceId, String channelName, boolean desiredMute)
+                throws RenderingControlException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                mute = desiredMute;
+            }
+        }
+
+        @Override
+        public UnsignedIntegerTwoBytes getVolume(UnsignedIntegerFourBytes instanceId, String channelName)
+                throws RenderingControlException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                return new UnsignedIntegerTwoBytes(volumeLevel);
+            }
+        }
+
+        @Override
+        public void setVolume(UnsignedIntegerFourBytes instanceId, String channelName, UnsignedIntegerTwoBytes desiredVolume)
+                throws RenderingControlException {
+            simulate();
+            synchronized (StubMediaRenderer.this) {
+                volumeLevel = (int) Math.min(100, desiredVolume.getValue());
+                getLastChange().setEventedValue(INSTANCE_ID,
+                        new RenderingControlVariable.Volume(new ChannelVolume(Channel.Master, volumeLevel)));
+            }
+        }
+    }
+}
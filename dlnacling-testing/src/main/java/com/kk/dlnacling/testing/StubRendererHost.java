@@ -0,0 +1,216 @@
+package com.kk.dlnacling.testing;
+
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceImpl;
+import org.fourthline.cling.model.NetworkAddress;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.protocol.ProtocolFactory;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.RouterException;
+import org.fourthline.cling.transport.RouterImpl;
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * 在一个只绑定回环地址的 UpnpService 中托管多个 {@link StubMediaRenderer}，共用一个 HTTP 端口，
+ * 一台机器上可以启动几百个渲染器对 {@link com.kk.dlnacling.DlnaClingController} 压测。回环网卡通常没有组播，
+ * 控制端通过 {@link #connect(UpnpService, long)} 按描述地址直接添加
+ * <pre>
+ * StubRendererHost host = new StubRendererHost();
+ * host.addRenderers(200, new StubRendererOptions().setLatencyMillis(30).setJitterMillis(20).setFailureRate(0.01));
+ * List&lt;RemoteDevice&gt; devices = host.connect(controller.getUpnpService(), 10000);
+ * ...
+ * host.shutdown();
+ * </pre>
+ */
+public final class StubRendererHost {
+    private static final Logger log = Logger.getLogger(StubRendererHost.class.getName());
+
+    private static final long EVENT_INTERVAL_MILLIS = 200;
+
+    private final List<StubMediaRenderer> renderers = new CopyOnWriteArrayList<>();
+    private UpnpService upnpService;
+    private ScheduledExecutorService eventScheduler;
+    private ScheduledFuture<?> eventTask;
+
+    /**
+     * 启动托管的 UpnpService，添加渲染器时会自动调用
+     */
+    @NotNull
+    public synchronized UpnpService start() {
+        if (upnpService != null) return upnpService;
+        upnpService = new UpnpServiceImpl(new LoopbackConfiguration()) {
+            @Override
+            protected Router createRouter(ProtocolFactory protocolFactory, Registry registry) {
+                return new RouterImpl(getConfiguration(), protocolFactory) {
+                    @Override
+                    public void handleStartFailure(InitializationException ex) throws InitializationException {
+                        // 组播不可用时 HTTP 服务仍然可用
+                        log.warning("Stub renderers started without multicast: " + ex);
+                    }
+                };
+            }
+        };
+        eventScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "stub-renderer-events");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        eventTask = eventScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (StubMediaRenderer renderer : renderers) {
+                    try {
+                        renderer.fireLastChange();
+                    } catch (RuntimeException e) {
+                        log.warning("Fire LastChange failed: " + e);
+                    }
+                }
+            }
+        }, EVENT_INTERVAL_MILLIS, EVENT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return upnpService;
+    }
+
+    @NotNull
+    public StubMediaRenderer addRenderer(@NotNull String friendlyName, @NotNull StubRendererOptions options)
+            throws ValidationException {
+        StubMediaRenderer renderer = new StubMediaRenderer(friendlyName, options);
+        start().getRegistry().addDevice(renderer.getDevice());
+        renderers.add(renderer);
+        return renderer;
+    }
+
+    /**
+     * 添加 count 个参数相同的渲染器，名称为 Stub Renderer 1..n
+     */
+    @NotNull
+    public List<StubMediaRenderer> addRenderers(int count, @NotNull StubRendererOptions options) throws ValidationException {
+        List<StubMediaRenderer> added = new ArrayList<>(count);
+        int offset = renderers.size();
+        for (int i = 0; i < count; i++) {
+            added.add(addRenderer("Stub Renderer " + (offset + i + 1), options));
+        }
+        return added;
+    }
+
+    /**
+     * 模拟设备下线
+     */
+    public void removeRenderer(@NotNull StubMediaRenderer renderer) {
+        if (!renderers.remove(renderer)) return;
+        UpnpService service;
+        synchronized (this) {
+            service = upnpService;
+        }
+        if (service != null) service.getRegistry().removeDevice(renderer.getDevice());
+    }
+
+    @NotNull
+    public List<StubMediaRenderer> getRenderers() {
+        return Collections.unmodifiableList(renderers);
+    }
+
+    @NotNull
+    public URL getDescriptorUrl(@NotNull StubMediaRenderer renderer) throws RouterException, IOException {
+        UpnpService service = start();
+        NetworkAddress address = streamServer(service);
+        return new URL("http", address.getAddress().getHostAddress(), address.getPort(),
+                service.getConfiguration().getNamespace().getDescriptorPath(renderer.getDevice()).toString());
+    }
+
+    /**
+     * 按描述地址把所有渲染器加入控制端的 registry，与发现设备后的处理相同
+     *
+     * @return 与 {@link #getRenderers()} 顺序一致的远程设备
+     */
+    @NotNull
+    public List<RemoteDevice> connect(@NotNull UpnpService controlPoint, long timeoutMillis)
+            throws RouterException, IOException, InterruptedException, TimeoutException {
+        NetworkAddress address = streamServer(start());
+        List<StubMediaRenderer> snapshot = new ArrayList<>(renderers);
+        for (StubMediaRenderer renderer : snapshot) {
+            if (controlPoint.getRegistry().getRemoteDevice(renderer.getUdn(), true) != null) continue;
+            RemoteDeviceIdentity identity = new RemoteDeviceIdentity(renderer.getUdn(),
+                    renderer.getDevice().getIdentity().getMaxAgeSeconds(), getDescriptorUrl(renderer), null, address.getAddress());
+            new RetrieveRemoteDescriptors(controlPoint, new RemoteDevice(identity)).run();
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<RemoteDevice> devices = new ArrayList<>(snapshot.size());
+        for (StubMediaRenderer renderer : snapshot) {
+            RemoteDevice device;
+            while ((device = controlPoint.getRegistry().getRemoteDevice(renderer.getUdn(), true)) == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TimeoutException("Stub renderer not added: " + getDescriptorUrl(renderer));
+                }
+                Thread.sleep(10);
+            }
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    public synchronized void shutdown() {
+        if (eventTask != null) eventTask.cancel(false);
+        eventTask = null;
+        if (eventScheduler != null) eventScheduler.shutdown();
+        eventScheduler = null;
+        renderers.clear();
+        if (upnpService != null) upnpService.shutdown();
+        upnpService = null;
+    }
+
+    private static NetworkAddress streamServer(UpnpService service) throws RouterException {
+        List<NetworkAddress> servers = service.getRouter().getActiveStreamServers(null);
+        if (servers.isEmpty()) throw new RouterException("Stub renderer host has no active stream server");
+        return servers.get(0);
+    }
+
+    /**
+     * 只使用回环地址，随机端口
+     */
+    static class LoopbackConfiguration extends DefaultUpnpServiceConfiguration {
+
+        @Override
+        protected NetworkAddressFactory createNetworkAddressFactory(int streamListenPort) {
+            return new NetworkAddressFactoryImpl(streamListenPort) {
+                @Override
+                protected boolean isUsableNetworkInterface(NetworkInterface iface) throws Exception {
+                    return iface.isUp() && iface.isLoopback();
+                }
+
+                @Override
+                protected boolean isUsableAddress(NetworkInterface networkInterface, InetAddress address) {
+                    return address instanceof Inet4Address && address.isLoopbackAddress();
+                }
+            };
+        }
+    }
+}
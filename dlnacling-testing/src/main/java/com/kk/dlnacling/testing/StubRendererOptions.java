@@ -0,0 +1,109 @@
+package com.kk.dlnacling.testing;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 模拟渲染器的响应延迟、失败率和兼容性问题
+ *
+ * @see StubMediaRenderer
+ */
+public class StubRendererOptions {
+
+    private long latencyMillis;
+    private long jitterMillis;
+    private double failureRate;
+    private long transitionMillis;
+    private final EnumSet<Quirk> quirks = EnumSet.noneOf(Quirk.class);
+
+    /**
+     * 每个命令固定的处理耗时，默认 0
+     */
+    public StubRendererOptions setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+        return this;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * 在固定耗时上随机增加 0~jitterMillis，默认 0
+     */
+    public StubRendererOptions setJitterMillis(long jitterMillis) {
+        this.jitterMillis = Math.max(0, jitterMillis);
+        return this;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * 命令随机失败的概率 0~1，失败时返回 UPnP 错误 501 Action Failed，默认 0
+     */
+    public StubRendererOptions setFailureRate(double failureRate) {
+        this.failureRate = Math.min(1, Math.max(0, failureRate));
+        return this;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * SetAVTransportURI/Play 之后处于 TRANSITIONING 的时间，默认 0
+     */
+    public StubRendererOptions setTransitionMillis(long transitionMillis) {
+        this.transitionMillis = Math.max(0, transitionMillis);
+        return this;
+    }
+
+    public long getTransitionMillis() {
+        return transitionMillis;
+    }
+
+    public StubRendererOptions addQuirk(@NotNull Quirk quirk) {
+        quirks.add(quirk);
+        return this;
+    }
+
+    @NotNull
+    public Set<Quirk> getQuirks() {
+        return Collections.unmodifiableSet(quirks);
+    }
+
+    public boolean hasQuirk(@NotNull Quirk quirk) {
+        return quirks.contains(quirk);
+    }
+
+    /**
+     * 实际设备上常见的不规范行为
+     */
+    public enum Quirk {
+        /**
+         * 播放中拒绝 SetAVTransportURI(705 Transport is locked)，必须先 Stop
+         */
+        STOP_BEFORE_URI,
+        /**
+         * 只支持 ABS_TIME 跳转，REL_TIME 返回 710 Seek mode not supported
+         */
+        ABS_TIME_SEEK_ONLY,
+        /**
+         * GetPositionInfo 的进度和时长为 NOT_IMPLEMENTED
+         */
+        NO_POSITION_INFO,
+        /**
+         * 拒绝带 DIDL-Lite 元数据的 SetAVTransportURI(714 Illegal MIME-type)
+         */
+        REJECT_METADATA,
+        /**
+         * 不发送 LastChange 事件，只能轮询状态
+         */
+        NO_EVENTS
+    }
+}
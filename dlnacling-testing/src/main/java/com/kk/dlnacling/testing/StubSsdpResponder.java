@@ -0,0 +1,214 @@
+package com.kk.dlnacling.testing;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceImpl;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.protocol.ProtocolFactory;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.RouterException;
+import org.fourthline.cling.transport.RouterImpl;
+import org.fourthline.cling.transport.spi.DatagramIO;
+import org.fourthline.cling.transport.spi.MulticastReceiver;
+import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 回环地址上的 SSDP 应答端：按 {@link StubRendererHost} 中的渲染器回复 M-SEARCH，LOCATION 指向托管的描述地址。
+ * 回环网卡通常没有组播，{@link #createControlPoint()} 创建的控制端把发往组播地址的 M-SEARCH 改发到本应答端，
+ * 其余发现流程（解析应答、下载描述、加入 registry）与真实网络相同
+ * <pre>
+ * StubSsdpResponder responder = new StubSsdpResponder(host);
+ * responder.start();
+ * UpnpService controlPoint = responder.createControlPoint();
+ * new DiscoveryScheduler(controlPoint).start();
+ * ...
+ * controlPoint.shutdown();
+ * responder.shutdown();
+ * </pre>
+ */
+public final class StubSsdpResponder {
+    private static final Logger log = Logger.getLogger(StubSsdpResponder.class.getName());
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final int MAX_AGE_SECONDS = 1800;
+
+    private final StubRendererHost host;
+    private final List<String> searchTargets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger dropCount = new AtomicInteger();
+    private volatile int lastMx = -1;
+    private DatagramSocket socket;
+    private Thread thread;
+
+    public StubSsdpResponder(@NotNull StubRendererHost host) {
+        this.host = host;
+    }
+
+    public synchronized void start() throws SocketException {
+        if (socket != null) return;
+        final DatagramSocket bound = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socket = bound;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive(bound);
+            }
+        }, "stub-ssdp-responder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @NotNull
+    public synchronized InetSocketAddress getAddress() {
+        if (socket == null) throw new IllegalStateException("Stub SSDP responder not started");
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    /**
+     * 丢弃接下来的 count 个 M-SEARCH，模拟 UDP 丢包
+     */
+    public void drop(int count) {
+        dropCount.set(Math.max(0, count));
+    }
+
+    /**
+     * 收到的 M-SEARCH 的 ST，按接收顺序，包括被丢弃的
+     */
+    @NotNull
+    public List<String> getSearchTargets() {
+        return Collections.unmodifiableList(searchTargets);
+    }
+
+    public int getSearchCount() {
+        return searchTargets.size();
+    }
+
+    /**
+     * 最近一个 M-SEARCH 的 MX，还没有收到时为 -1
+     */
+    public int getLastMx() {
+        return lastMx;
+    }
+
+    /**
+     * 创建只绑定回环地址的控制端，M-SEARCH 发给本应答端，需自行 shutdown
+     */
+    @NotNull
+    public UpnpService createControlPoint() {
+        final InetSocketAddress responder = getAddress();
+        return new UpnpServiceImpl(new StubRendererHost.LoopbackConfiguration() {
+            @Override
+            public MulticastReceiver createMulticastReceiver(NetworkAddressFactory networkAddressFactory) {
+                // 控制端只需单播收应答
+                return null;
+            }
+        }) {
+            @Override
+            protected Router createRouter(ProtocolFactory protocolFactory, Registry registry) {
+                return new RouterImpl(getConfiguration(), protocolFactory) {
+                    @Override
+                    public void send(OutgoingDatagramMessage msg) throws RouterException {
+                        DatagramPacket packet = getConfiguration().getDatagramProcessor().write(msg);
+                        packet.setSocketAddress(responder);
+                        // 从 cling 自己的 DatagramIO 发出，应答才能回到控制端
+                        lock(readLock);
+                        try {
+                            for (DatagramIO datagramIO : datagramIOs.values()) datagramIO.send(packet);
+                        } finally {
+                            unlock(readLock);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    public synchronized void shutdown() {
+        if (socket != null) socket.close();
+        socket = null;
+        if (thread != null) thread.interrupt();
+        thread = null;
+    }
+
+    private void receive(DatagramSocket socket) {
+        byte[] buffer = new byte[8192];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                respond(socket, packet, new String(packet.getData(), packet.getOffset(), packet.getLength(), US_ASCII));
+            } catch (IOException | RouterException e) {
+                if (!socket.isClosed()) log.warning("Stub SSDP responder failed: " + e);
+            }
+        }
+    }
+
+    private void respond(DatagramSocket socket, DatagramPacket request, String message) throws IOException, RouterException {
+        String[] lines = message.split("\r\n");
+        if (!lines[0].startsWith("M-SEARCH ")) return;
+        String st = header(lines, "ST");
+        if (st == null || !"\"ssdp:discover\"".equals(header(lines, "MAN"))) return;
+        String mx = header(lines, "MX");
+        lastMx = mx != null && mx.matches("\\d+") ? Integer.parseInt(mx) : -1;
+        searchTargets.add(st);
+        // 只有接收线程修改，不会减到负数
+        if (dropCount.get() > 0) {
+            dropCount.decrementAndGet();
+            return;
+        }
+
+        for (StubMediaRenderer renderer : new ArrayList<>(host.getRenderers())) {
+            String usn = usn(renderer.getDevice(), st);
+            if (usn == null) continue;
+            String response = "HTTP/1.1 200 OK\r\n"
+                    + "CACHE-CONTROL: max-age=" + MAX_AGE_SECONDS + "\r\n"
+                    + "EXT:\r\n"
+                    + "LOCATION: " + host.getDescriptorUrl(renderer) + "\r\n"
+                    + "SERVER: Stub/1.0 UPnP/1.0 StubSsdpResponder/1.0\r\n"
+                    + "ST: " + st + "\r\n"
+                    + "USN: " + usn + "\r\n"
+                    + "\r\n";
+            byte[] bytes = response.getBytes(US_ASCII);
+            socket.send(new DatagramPacket(bytes, bytes.length, request.getSocketAddress()));
+        }
+    }
+
+    /**
+     * 设备匹配搜索目标时返回应答的 USN，否则为 null
+     */
+    private static String usn(LocalDevice device, String st) {
+        String udn = device.getIdentity().getUdn().toString();
+        if ("ssdp:all".equals(st) || "upnp:rootdevice".equals(st)) return udn + "::upnp:rootdevice";
+        if (udn.equals(st)) return udn;
+        if (device.getType().toString().equals(st)) return udn + "::" + st;
+        for (LocalService service : device.getServices()) {
+            if (service.getServiceType().toString().equals(st)) return udn + "::" + st;
+        }
+        return null;
+    }
+
+    private static String header(String[] lines, String name) {
+        String prefix = name.toUpperCase(Locale.ENGLISH) + ":";
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].toUpperCase(Locale.ENGLISH).startsWith(prefix)) return lines[i].substring(prefix.length()).trim();
+        }
+        return null;
+    }
+}
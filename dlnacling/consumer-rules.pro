@@ -0,0 +1,4 @@
+# RegistryMaintenancePolicy 通过反射调用
+-keepclassmembers class org.fourthline.cling.registry.RegistryImpl {
+    void maintain();
+}
@@ -4,8 +4,9 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Handler;
 import android.os.IBinder;
-
+import android.os.Looper;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
@@ -17,19 +18,33 @@ import org.fourthline.cling.model.action.ActionInvocation;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.meta.Device;
 import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.types.UDAServiceType;
 import org.fourthline.cling.registry.RegistryListener;
 import org.fourthline.cling.support.avtransport.callback.Stop;
+import org.fourthline.cling.support.model.TransportState;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 public class DlnaClingObserver implements LifecycleObserver {
 
+    private static final String SNAPSHOT_FILE = "dlna_devices";
+
     private final Context mContext;
     private final ServiceConnection mUpnpServiceConnection;
     @Nullable
     private Device selectionDevice; // 选中的设备
 
     private final DlnaClingController mController;
+    private final CommandCoalescer mCoalescer;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final DeviceIndex mDeviceIndex;
+    @Nullable
+    private PositionTracker mPositionTracker;
 
     /**
      * 需要自己调用 onCreate、onDestroy 方法
@@ -43,22 +58,35 @@ public class DlnaClingObserver implements LifecycleObserver {
 
     /**
      * @param context          上下文对象，用于服务绑定
-     * @param registryListener 设备变化监听
+     * @param registryListener 设备变化监听，为空时设备列表通过 {@link #getDeviceIndex()} 获取
      * @param owner            fragment，activity 生命周期绑定，如果为空，则需要自己调用 onCreate、onDestroy 方法
      */
-    public DlnaClingObserver(Context context, final RegistryListener registryListener, @Nullable LifecycleOwner owner) {
+    public DlnaClingObserver(Context context, @Nullable final RegistryListener registryListener, @Nullable LifecycleOwner owner) {
         this.mContext = context;
         if (owner != null) owner.getLifecycle().addObserver(this);
         mController = new DlnaClingController();
+        mController.setSnapshotStore(new DeviceSnapshotStore(new File(context.getCacheDir(), SNAPSHOT_FILE)));
+        mCoalescer = new CommandCoalescer(mController);
+        mDeviceIndex = new DeviceIndex(new UDAServiceType("AVTransport"), new Executor() {
+            @Override
+            public void execute(@NotNull Runnable command) {
+                mMainHandler.post(command);
+            }
+        });
         mUpnpServiceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
-                if (iBinder instanceof AndroidUpnpService)
-                    mController.initService((AndroidUpnpService) iBinder, registryListener);
+                if (iBinder instanceof AndroidUpnpService) {
+                    mController.initService(((AndroidUpnpService) iBinder).get(), registryListener);
+                    mDeviceIndex.attach(((AndroidUpnpService) iBinder).getRegistry());
+                }
             }
 
             @Override
             public void onServiceDisconnected(ComponentName componentName) {
+                mDeviceIndex.detach();
+                mController.stopDiscovery();
+                mController.stopMaintenance();
                 mController.setUpnpService(null);
             }
         };
@@ -72,6 +100,12 @@ public class DlnaClingObserver implements LifecycleObserver {
 
     @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
     public void onDestroy() {
+        stopPositionTracking();
+        mDeviceIndex.detach();
+        mController.getStateCache().untrackAll();
+        mController.stopDiscovery();
+        mController.stopMaintenance();
+        mController.stopMediaServer();
         Service transportService = getTransportService();
         if (transportService == null) return;
         execute(new Stop(transportService) {
@@ -87,8 +121,42 @@ public class DlnaClingObserver implements LifecycleObserver {
         return selectionDevice;
     }
 
+    /**
+     * 选中设备，同时开始跟踪其状态（订阅事件/轮询），相对调节不再需要先查询
+     */
     public void setSelectionDevice(@Nullable Device device) {
+        if (selectionDevice != null && !selectionDevice.equals(device)) {
+            mController.getStateCache().untrack(selectionDevice);
+            stopPositionTracking();
+        }
         this.selectionDevice = device;
+        if (device != null) mController.getStateCache().track(device);
+        mController.setSessionActive(device != null);
+    }
+
+    /**
+     * 空闲模式：没有选中设备时停止 registry 维护，离线设备不再从列表移除，适合常驻的场景
+     *
+     * @see RegistryMaintenancePolicy
+     */
+    public void setIdleMaintenance(boolean idleMaintenance) {
+        mController.setIdleMaintenance(idleMaintenance);
+    }
+
+    /**
+     * 开启流水线投屏，缩短首帧时间
+     *
+     * @see DlnaClingController#setPipelinedCast(boolean)
+     */
+    public void setPipelinedCast(boolean pipelinedCast) {
+        mController.setPipelinedCast(pipelinedCast);
+    }
+
+    /**
+     * 投屏各阶段耗时监听
+     */
+    public void setCastTimingListener(@Nullable DlnaClingController.CastTimingListener listener) {
+        mController.setCastTimingListener(listener);
     }
 
     /**
@@ -96,28 +164,131 @@ public class DlnaClingObserver implements LifecycleObserver {
      *
      * @param url 片源地址
      */
-    public void autoPlay(String url, int itemType, final ExecuteCallback callback) {
+    public void autoPlay(String url, int itemType, final DlnaClingController.ExecuteCallback callback) {
         mController.autoPlay(selectionDevice, url, itemType, callback);
     }
 
     /**
-     * 视频进度调节
+     * 视频进度调节，连续调节会合并发送
      *
      * @param seconds  移动秒数，正数：快进；负数：快退
      * @param callback 投屏结果回调
      */
-    public void seek(int seconds, final ExecuteCallback callback) {
-        mController.seek(selectionDevice, seconds, callback);
+    public void seek(int seconds, final DlnaClingController.ExecuteCallback callback) {
+        mCoalescer.seek(selectionDevice, seconds).addCallback(callback);
     }
 
     /**
-     * 音量调节
+     * 音量调节，连续调节会合并发送
      *
      * @param volume   音量调节数，正/负，最小0，最大100
      * @param callback 投屏结果回调
      */
-    public void setVolume(final int volume, final DlnaClingObserver.ExecuteCallback callback) {
-        mController.setVolume(selectionDevice, volume, callback);
+    public void setVolume(final int volume, final DlnaClingController.ExecuteCallback callback) {
+        mCoalescer.setVolume(selectionDevice, volume).addCallback(callback);
+    }
+
+    /**
+     * 播放视频，返回可组合、限时、取消的结果
+     *
+     * @see DlnaClingController#autoPlayAsync(Device, String, int)
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(String url, int itemType) {
+        return mController.autoPlayAsync(selectionDevice, url, itemType);
+    }
+
+    /**
+     * 投屏本地文件
+     *
+     * @see DlnaClingController#autoPlayAsync(Device, File)
+     */
+    public void autoPlay(@NotNull File file, final DlnaClingController.ExecuteCallback callback) {
+        mController.autoPlayAsync(selectionDevice, file).addCallback(callback);
+    }
+
+    public ActionFuture<ActionInvocation> autoPlayAsync(@NotNull File file) {
+        return mController.autoPlayAsync(selectionDevice, file);
+    }
+
+    /**
+     * 带完整片源信息投屏
+     *
+     * @see DlnaClingController#autoPlayAsync(Device, MediaMetadata)
+     */
+    public ActionFuture<ActionInvocation> autoPlayAsync(@NotNull MediaMetadata media) {
+        return mController.autoPlayAsync(selectionDevice, media);
+    }
+
+    /**
+     * 同一片源同时投到多个设备，不影响当前选中的设备
+     *
+     * @see DlnaClingController#autoPlay(Collection, String, int, GroupCastOptions)
+     */
+    public ActionFuture<List<GroupCastResult>> autoPlay(Collection<Device> devices, String url, int itemType,
+                                                        @Nullable GroupCastOptions options) {
+        return mController.autoPlay(devices, url, itemType, options);
+    }
+
+    /**
+     * @see CommandCoalescer#seek(Device, int)
+     */
+    public ActionFuture<ActionInvocation> seekAsync(int seconds) {
+        return mCoalescer.seek(selectionDevice, seconds);
+    }
+
+    /**
+     * 按时间点、百分比、字节等方式跳转，不参与合并
+     *
+     * @see DlnaClingController#seekAsync(Device, SeekTarget)
+     */
+    public ActionFuture<ActionInvocation> seekAsync(@NotNull SeekTarget target) {
+        return mController.seekAsync(selectionDevice, target);
+    }
+
+    /**
+     * @see CommandCoalescer#setVolume(Device, int)
+     */
+    public ActionFuture<ActionInvocation> setVolumeAsync(int volume) {
+        return mCoalescer.setVolume(selectionDevice, volume);
+    }
+
+    /**
+     * 跟踪选中设备的播放进度，在主线程回调，替代每秒查询 GetPositionInfo。
+     * 切换设备后停止，需要重新调用
+     *
+     * @see DlnaClingController#trackPosition(Device, PositionTracker.Listener)
+     */
+    @Nullable
+    public PositionTracker trackPosition(@NotNull final PositionTracker.Listener listener) {
+        stopPositionTracking();
+        if (selectionDevice == null) return null;
+        mPositionTracker = mController.trackPosition(selectionDevice, new PositionTracker.Listener() {
+            @Override
+            public void onPositionChanged(@NotNull final Device device, final long positionMillis, final long durationMillis,
+                                          @Nullable final TransportState state) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 停止或切换设备前已派发的回调不再通知
+                        if (mPositionTracker == null || !device.equals(selectionDevice)) return;
+                        listener.onPositionChanged(device, positionMillis, durationMillis, state);
+                    }
+                });
+            }
+        });
+        return mPositionTracker;
+    }
+
+    public void stopPositionTracking() {
+        if (mPositionTracker != null) mPositionTracker.stop();
+        mPositionTracker = null;
+    }
+
+    /**
+     * 连续调节的合并，可设置合并窗口、查看合并数量
+     */
+    public CommandCoalescer getCoalescer() {
+        return mCoalescer;
     }
 
     /**
@@ -131,6 +302,21 @@ public class DlnaClingObserver implements LifecycleObserver {
         mController.execute(callback);
     }
 
+    /**
+     * 投屏设备列表，按帧合并 registry 事件后在主线程回调差异
+     */
+    @NotNull
+    public DeviceIndex getDeviceIndex() {
+        return mDeviceIndex;
+    }
+
+    /**
+     * 投屏控制，用于同时操作多个设备等
+     */
+    public DlnaClingController getController() {
+        return mController;
+    }
+
     /**
      * 得到传输服务
      */
@@ -149,24 +335,18 @@ public class DlnaClingObserver implements LifecycleObserver {
         return mController.getControlService(selectionDevice);
     }
 
-    public interface ExecuteCallback {
-        void success(ActionInvocation invocation);
-
-        void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg);
+    /**
+     * @deprecated 使用 {@link DlnaClingController.ExecuteCallback}
+     */
+    @Deprecated
+    public interface ExecuteCallback extends DlnaClingController.ExecuteCallback {
     }
 
-    public abstract static class SimpleExecuteCallback implements ExecuteCallback {
-
-        public abstract void callback(boolean success);
-
-        @Override
-        public void success(ActionInvocation invocation) {
-            callback(true);
-        }
-
-        @Override
-        public void failure(ActionInvocation invocation, UpnpResponse operation, String defaultMsg) {
-            callback(false);
-        }
+    /**
+     * @deprecated 使用 {@link DlnaClingController.SimpleExecuteCallback}
+     */
+    @Deprecated
+    public abstract static class SimpleExecuteCallback extends DlnaClingController.SimpleExecuteCallback
+            implements ExecuteCallback {
     }
 }